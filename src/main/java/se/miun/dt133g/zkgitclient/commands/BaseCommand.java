@@ -18,12 +18,10 @@ import java.util.Scanner;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * The {@code BaseCommand} class provides common functionality for all command classes.
@@ -35,7 +33,7 @@ public abstract class BaseCommand {
 
     protected final UserCredentials credentials = UserCredentials.getInstance();
     protected final CurrentUserRepo currentRepo = CurrentUserRepo.getInstance();
-    protected EncryptionHandler rsaSignHandler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_RSA_SIGNATURE);
+    protected EncryptionHandler rsaSignHandler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_RSA_SIGNATURE);
     protected final Utils utils = Utils.getInstance();
     protected final ConnectionManager conn = ConnectionManager.INSTANCE;
     private final Scanner scanner = new Scanner(System.in);
@@ -50,6 +48,15 @@ public abstract class BaseCommand {
          return conn.sendPostRequest(postData);
     }
 
+    /**
+     * Sends a POST request to the server with the provided data without waiting for the response.
+     * @param postData The data to send in the POST request.
+     * @return A future completed with the server response as a string.
+     */
+    protected CompletableFuture<String> prepareAndSendPostRequestAsync(final Map<String, String> postData) {
+        return conn.sendPostRequestAsync(postData);
+    }
+
     /**
      * Sends a GET POST request to the server with the provided data.
      * @param postData The data to send in the GET POST request.
@@ -131,6 +138,17 @@ public abstract class BaseCommand {
      * @param commandArguments The command arguments containing user credentials.
      */
     protected void extractUserCredentials(final Map<String, String> commandArguments) {
+        extractUserCredentials(commandArguments, currentRepo);
+    }
+
+    /**
+     * Extracts user credentials from the given command arguments and sets them
+     * into the user credentials and the given repository context.
+     * @param commandArguments The command arguments containing user credentials.
+     * @param repoContext The repository context receiving repository related values.
+     */
+    protected void extractUserCredentials(final Map<String, String> commandArguments,
+                                          final CurrentUserRepo repoContext) {
         Map<String, Consumer<String>> setters = Map.of(AppConfig.CREDENTIAL_ENC_ACCESS_TOKEN,
                                                        credentials::setEncAccessToken,
                                                        AppConfig.CREDENTIAL_ENC_PRIV_RSA_KEY,
@@ -140,9 +158,9 @@ public abstract class BaseCommand {
                                                        AppConfig.CREDENTIAL_USERNAME,
                                                        credentials::setUsername,
                                                        AppConfig.DB_IV,
-                                                       currentRepo::setIv,
+                                                       repoContext::setIv,
                                                        AppConfig.REPO_SIGNATURE,
-                                                       currentRepo::setRepoSignature);
+                                                       repoContext::setRepoSignature);
 
          setters.forEach((key, setter) ->
                          Optional.ofNullable(commandArguments.get(key)).ifPresent(setter));
@@ -154,26 +172,9 @@ public abstract class BaseCommand {
     /**
      * Extracts key-value pairs from the server response string and maps them into a {@link Map}.
      * @param response The server response string to parse.
-     * @return A {@link Map} containing the extracted key-value pairs.
+     * @return An unmodifiable {@link Map} containing the extracted key-value pairs.
      */
     protected Map<String, String> extractResponseToMap(final String response) {
-        Pattern pattern = Pattern.compile(AppConfig.REGEX_COMMAND_RESPONSE);
-
-        return Stream.of(response)
-            .map(r -> r.startsWith(AppConfig.FORWARD_CURLY_BRACKET) && r.endsWith(AppConfig.BACKWARD_CURLY_BRACKET)
-                 ? r.substring(1, r.length() - 1)
-                 : r)
-            .flatMap(r -> Stream.of(r.split(AppConfig.COMMA_SEPARATOR)))
-            .map(String::trim)
-            .map(pair -> {
-                    Matcher matcher = pattern.matcher(pair);
-                    if (matcher.matches()) {
-                        return Map.entry(matcher.group(1), matcher.group(2));
-                    } else {
-                        return null;
-                    }
-                })
-            .filter(entry -> entry != null)
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        return Response.parse(response).asMap();
     }
 }
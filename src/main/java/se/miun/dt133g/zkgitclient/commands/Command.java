@@ -1,5 +1,9 @@
 package se.miun.dt133g.zkgitclient.commands;
 
+import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
+
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface representing a command that can be executed.
  * Any command implementation must provide the logic for the execution of the command.
@@ -14,4 +18,24 @@ public interface Command {
      */
     String execute();
 
+    /**
+     * Executes the command within the given repository context.
+     * Commands that operate on a repository override this method; all other commands ignore the context.
+     * @param currentRepo the repository context of the request.
+     * @return a String representing the result of the command execution.
+     */
+    default String execute(CurrentUserRepo currentRepo) {
+        return execute();
+    }
+
+    /**
+     * Starts the command within the given repository context and returns its result once available.
+     * Commands waiting on the network override this method to overlap the round trip with other work,
+     * such as reading user input or deriving keys; all other commands complete before returning.
+     * @param currentRepo the repository context of the request.
+     * @return a future completed with the result of the command execution.
+     */
+    default CompletableFuture<String> executeAsync(CurrentUserRepo currentRepo) {
+        return CompletableFuture.completedFuture(execute(currentRepo));
+    }
 }
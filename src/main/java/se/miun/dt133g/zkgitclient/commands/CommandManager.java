@@ -18,12 +18,18 @@ import se.miun.dt133g.zkgitclient.commands.account.RequestNewUser;
 import se.miun.dt133g.zkgitclient.commands.account.RequestUserDeletion;
 import se.miun.dt133g.zkgitclient.commands.account.RequestUserPrivChange;
 import se.miun.dt133g.zkgitclient.commands.account.RequestRepoDeletion;
+import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -67,37 +73,48 @@ public final class CommandManager extends BaseCommand {
      * @return A map containing the latest command response data.
      */
     public Map<String, String> executeCommand(final String commandName) {
+        return executeCommand(commandName, currentRepo);
+    }
+
+    /**
+     * Executes the specified command within the given repository context and returns the latest
+     * response as a map of key-value pairs. The context is passed on to every command in the chain.
+     * @param commandName The name of the command to execute.
+     * @param repoContext The repository context of the request.
+     * @return A map containing the latest command response data.
+     */
+    public Map<String, String> executeCommand(final String commandName, final CurrentUserRepo repoContext) {
         Command command = commandMap.get(commandName);
-        Map<String, String> latestResponseMap = new HashMap<>();
+        Map<String, String> latestResponseMap = Collections.emptyMap();
 
         LOGGER.fine("Executing command: " + commandName);
 
+        String stepName = commandName;
         while (command != null) {
-            String response = command.execute();
+            repoContext.reportProgress(stepName);
+            String response = awaitResponse(command.executeAsync(repoContext));
             if (AppConfig.COMMAND_EXIT.equals(response)) {
                 break;
             }
 
-            latestResponseMap = extractResponseToMap(response);
+            Response latestResponse = Response.parse(response);
+            latestResponseMap = latestResponse.asMap();
+            Optional<String> error = latestResponse.error();
 
-            for (Map.Entry<String, String> entry : latestResponseMap.entrySet()) {
-                if (latestResponseMap.containsKey(AppConfig.ERROR_KEY)) {
-                    LOGGER.warning("Key: " + entry.getKey() + ", Value: " + entry.getValue());
-                } else if (latestResponseMap.containsKey(AppConfig.COMMAND_SUCCESS)) {
-                    LOGGER.fine("Key: " + entry.getKey() + ", Value: " + entry.getValue());
-                } else {
-                    LOGGER.finest("Key: " + entry.getKey() + ", Value: " + entry.getValue());
+            Level level = error.isPresent() ? Level.WARNING : latestResponse.isSuccess() ? Level.FINE : Level.FINEST;
+            if (LOGGER.isLoggable(level)) {
+                for (Map.Entry<String, String> entry : latestResponseMap.entrySet()) {
+                    LOGGER.log(level, "Key: " + entry.getKey() + ", Value: " + entry.getValue());
                 }
             }
 
-            if (latestResponseMap.containsKey(AppConfig.COMMAND_SUCCESS)
-                || (latestResponseMap.containsKey(AppConfig.ERROR_KEY)
-                 && !latestResponseMap.containsValue("Connection failure"))) {
+            if (latestResponse.isSuccess()
+                || (error.isPresent() && !latestResponseMap.containsValue(AppConfig.ERROR_CONNECTION))) {
                 ConnectionManager.INSTANCE.setServerConnectivity(true);
             }
 
-            if (latestResponseMap.containsKey(AppConfig.ERROR_KEY)) {
-                String errorMessage = latestResponseMap.get(AppConfig.ERROR_KEY);
+            if (error.isPresent()) {
+                String errorMessage = error.get();
                 if (!errorMessage.contains("No user")
                     && !errorMessage.contains("CommandManager")
                     && !errorMessage.contains("No valid login")) {
@@ -107,15 +124,30 @@ public final class CommandManager extends BaseCommand {
                 }
             }
 
-            command = Optional.ofNullable(latestResponseMap.get(AppConfig.COMMAND_KEY))
+            stepName = latestResponse.nextCommand().orElse(null);
+            command = Optional.ofNullable(stepName)
                 .map(commandMap::get)
                 .orElse(null);
 
             if (command != null) {
-                extractUserCredentials(latestResponseMap);
+                extractUserCredentials(latestResponseMap, repoContext);
             }
         }
 
         return latestResponseMap;
     }
+
+    /**
+     * Waits for the result of a command.
+     * @param result the pending result.
+     * @return the result, or an error response if the command failed.
+     */
+    private String awaitResponse(final CompletableFuture<String> result) {
+        try {
+            return result.join();
+        } catch (CompletionException | CancellationException e) {
+            LOGGER.severe("Command failed: " + e.getMessage());
+            return createErrorResponse(AppConfig.ERROR_CONNECTION);
+        }
+    }
 }
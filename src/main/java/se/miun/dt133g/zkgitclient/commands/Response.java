@@ -0,0 +1,196 @@
+package se.miun.dt133g.zkgitclient.commands;
+
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A command response in the {@code {key=value, ...}} wire format of the server and of the commands.
+ * The response is read in a single pass without regular expressions. A comma only separates two pairs
+ * when it is followed by a key and an equals sign, or trails the last pair, so values may contain commas.
+ * A comma or backslash preceded by a backslash is always part of the value, which is how
+ * {@link se.miun.dt133g.zkgitclient.support.Utils#mapToString(Map)} writes them. Text that is not a pair,
+ * such as the output of a command that does not answer in the wire format, is skipped. Keys appearing
+ * twice keep their last value.
+ * @author Leif Rogell
+ */
+public final class Response {
+
+    private static final Response EMPTY = new Response(Collections.emptyMap());
+    private static final ThreadLocal<StringBuilder> VALUE_BUFFER = ThreadLocal.withInitial(StringBuilder::new);
+    private static final char ESCAPE = '\\';
+    private static final char SEPARATOR = ',';
+    private static final char ASSIGNMENT = '=';
+
+    private final Map<String, String> fields;
+
+    /**
+     * Creates a response.
+     * @param fields the pairs of the response.
+     */
+    private Response(final Map<String, String> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Reads a response.
+     * @param response the response in the wire format, optionally enclosed in curly brackets.
+     * @return the response, empty if the text is null or holds no pairs.
+     */
+    public static Response parse(final String response) {
+        if (response == null || response.isEmpty()) {
+            return EMPTY;
+        }
+        int start = 0;
+        int end = response.length();
+        if (response.startsWith(AppConfig.FORWARD_CURLY_BRACKET)
+            && response.endsWith(AppConfig.BACKWARD_CURLY_BRACKET) && end > 1) {
+            start++;
+            end--;
+        }
+
+        Map<String, String> fields = new LinkedHashMap<>();
+        StringBuilder value = VALUE_BUFFER.get();
+        int position = start;
+        while (position < end) {
+            int keyStart = skipWhitespace(response, position, end);
+            int keyEnd = skipWordCharacters(response, keyStart, end);
+            int assignment = skipWhitespace(response, keyEnd, end);
+            boolean pair = keyEnd > keyStart && assignment < end && response.charAt(assignment) == ASSIGNMENT;
+
+            value.setLength(0);
+            position = pair ? assignment + 1 : position;
+            while (position < end) {
+                char c = response.charAt(position);
+                if (c == ESCAPE && position + 1 < end
+                    && (response.charAt(position + 1) == SEPARATOR || response.charAt(position + 1) == ESCAPE)) {
+                    value.append(response.charAt(position + 1));
+                    position += 2;
+                } else if (c == SEPARATOR && startsPair(response, position + 1, end)) {
+                    break;
+                } else {
+                    value.append(c);
+                    position++;
+                }
+            }
+            if (pair) {
+                fields.put(response.substring(keyStart, keyEnd), trim(value));
+            }
+            position++;
+        }
+        return fields.isEmpty() ? EMPTY : new Response(Collections.unmodifiableMap(fields));
+    }
+
+    /**
+     * Checks whether the command succeeded.
+     * @return true if the response holds the {@link AppConfig#COMMAND_SUCCESS} key.
+     */
+    public boolean isSuccess() {
+        return fields.containsKey(AppConfig.COMMAND_SUCCESS);
+    }
+
+    /**
+     * Returns the error of the response.
+     * @return the value of the {@link AppConfig#ERROR_KEY} key, or empty if the response is not an error.
+     */
+    public Optional<String> error() {
+        return Optional.ofNullable(fields.get(AppConfig.ERROR_KEY));
+    }
+
+    /**
+     * Returns the command the response asks to run next.
+     * @return the value of the {@link AppConfig#COMMAND_KEY} key, or empty if the chain ends here.
+     */
+    public Optional<String> nextCommand() {
+        return Optional.ofNullable(fields.get(AppConfig.COMMAND_KEY));
+    }
+
+    /**
+     * Returns the value of a key.
+     * @param key the key.
+     * @return the value, or null if the response does not hold the key.
+     */
+    public String get(final String key) {
+        return fields.get(key);
+    }
+
+    /**
+     * Returns the pairs of the response.
+     * @return an unmodifiable map in the order of the response.
+     */
+    public Map<String, String> asMap() {
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        return fields.toString();
+    }
+
+    /**
+     * Checks whether a key followed by an equals sign, or nothing but whitespace, follows a comma.
+     * @param text the response.
+     * @param position the position after a comma.
+     * @param end the end of the pairs.
+     * @return true if the comma separates two pairs or trails the last one.
+     */
+    private static boolean startsPair(final String text, final int position, final int end) {
+        int keyStart = skipWhitespace(text, position, end);
+        if (keyStart == end) {
+            return true;
+        }
+        int keyEnd = skipWordCharacters(text, keyStart, end);
+        int assignment = skipWhitespace(text, keyEnd, end);
+        return keyEnd > keyStart && assignment < end && text.charAt(assignment) == ASSIGNMENT;
+    }
+
+    /**
+     * Skips whitespace.
+     * @param text the response.
+     * @param position the position to start at.
+     * @param end the end of the pairs.
+     * @return the position of the first character that is not whitespace, or the end.
+     */
+    private static int skipWhitespace(final String text, final int position, final int end) {
+        int i = position;
+        while (i < end && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Skips the characters a key consists of: letters, digits and underscores.
+     * @param text the response.
+     * @param position the position to start at.
+     * @param end the end of the pairs.
+     * @return the position of the first character that is not part of a key, or the end.
+     */
+    private static int skipWordCharacters(final String text, final int position, final int end) {
+        int i = position;
+        while (i < end && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the contents of a buffer without leading and trailing whitespace.
+     * @param buffer the buffer.
+     * @return the trimmed contents.
+     */
+    private static String trim(final StringBuilder buffer) {
+        int start = 0;
+        int end = buffer.length();
+        while (start < end && Character.isWhitespace(buffer.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(buffer.charAt(end - 1))) {
+            end--;
+        }
+        return buffer.substring(start, end);
+    }
+}
@@ -17,6 +17,6 @@ import java.util.logging.Logger;
 public abstract class BaseCommandAccount extends BaseCommandLogin {
 
     private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
-    protected EncryptionHandler aesHandler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_AES);
+    protected EncryptionHandler aesHandler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_AES);
 
 }
@@ -29,9 +29,9 @@ public final class RequestNewUser extends BaseCommandAccount implements Command
     private GenerateEncryptionKeys genEncKeys = new GenerateEncryptionKeys();
     private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
     private Utils utils = Utils.getInstance();
-    private EncryptionHandler pbkdf2Handler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_PBKDF2);
-    private EncryptionHandler aesHandler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_AES);
-    private EncryptionHandler rsaHandler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_RSA);
+    private EncryptionHandler pbkdf2Handler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_PBKDF2);
+    private EncryptionHandler aesHandler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_AES);
+    private EncryptionHandler rsaHandler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_RSA);
 
     private final String ERROR_MESSAGE = "Could not create a new user";
     private String privRsaKey;
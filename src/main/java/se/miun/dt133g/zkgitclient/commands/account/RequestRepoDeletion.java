@@ -56,6 +56,8 @@ public final class RequestRepoDeletion extends BaseCommandAccount implements Com
      */
     private String requestRepoDeletion() {
 
+        aesHandler.setAesKey(credentials.getAesKey());
+        aesHandler.setIv(credentials.getIv());
         aesHandler.setInput(currentRepo.getRepoName());
         aesHandler.encrypt();
 
@@ -18,6 +18,6 @@ public abstract class BaseCommandFiles extends BaseCommand {
 
     private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
     protected FileUtils fileUtils = FileUtils.getInstance();
-    protected EncryptionHandler aesHandler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_AES);
+    protected EncryptionHandler aesHandler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_AES);
 
 }
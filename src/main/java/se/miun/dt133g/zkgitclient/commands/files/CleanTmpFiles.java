@@ -3,6 +3,7 @@ package se.miun.dt133g.zkgitclient.commands.files;
 import se.miun.dt133g.zkgitclient.commands.Command;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
+import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
 
 import java.util.logging.Logger;
 
@@ -25,13 +26,25 @@ public final class CleanTmpFiles extends BaseCommandFiles implements Command {
      */
     @Override
     public String execute() {
+        return execute(currentRepo);
+    }
+
+    /**
+     * Executes the command to clean the temporary files of the given repository context.
+     * @param repo the repository context whose temporary files are removed.
+     * @return a JSON-like string indicating success or failure of the operation.
+     */
+    @Override
+    public String execute(final CurrentUserRepo repo) {
 
         try {
-            aesHandler.setInput(currentRepo.getRepoName() + AppConfig.ZIP_SUFFIX);
+            aesHandler.setAesKey(credentials.getAesKey());
+            aesHandler.setIv(credentials.getIv());
+            aesHandler.setInput(repo.getRepoName() + AppConfig.ZIP_SUFFIX);
             aesHandler.encrypt();
-            currentRepo.setEncFileName(utils.base64ToHex(aesHandler.getOutput()));
+            repo.setEncFileName(utils.base64ToHex(aesHandler.getOutput()));
 
-            fileUtils.cleanTmpFiles();
+            fileUtils.cleanTmpFiles(repo);
             return "{" + AppConfig.COMMAND_SUCCESS + "="
                 + AppConfig.NONE + ",}";
 
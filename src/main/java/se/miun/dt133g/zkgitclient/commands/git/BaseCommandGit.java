@@ -1,53 +1,89 @@
 package se.miun.dt133g.zkgitclient.commands.git;
 
 import se.miun.dt133g.zkgitclient.commands.BaseCommand;
+import se.miun.dt133g.zkgitclient.compression.CompressionCodec;
 import se.miun.dt133g.zkgitclient.crypto.EncryptionHandler;
 import se.miun.dt133g.zkgitclient.crypto.EncryptionFactory;
 import se.miun.dt133g.zkgitclient.crypto.StreamEncryptionHandler;
 import se.miun.dt133g.zkgitclient.crypto.StreamEncryptionFactory;
+import se.miun.dt133g.zkgitclient.dedup.ChunkDeduplicator;
+import se.miun.dt133g.zkgitclient.dedup.LocalChunkStore;
+import se.miun.dt133g.zkgitclient.delta.DeltaApplier;
+import se.miun.dt133g.zkgitclient.delta.DeltaBundle;
+import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.FileUtils;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
+import se.miun.dt133g.zkgitclient.support.Pipeline;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
 
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.io.FileInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 /**
  * Base class for Git-related commands, providing encryption utilities, file processing functions,
  * and other common methods used by commands related to Git operations.
+ * Git commands operate on the repository context passed to {@link #execute(CurrentUserRepo)}.
  * @author Leif Rogell
  */
 public abstract class BaseCommandGit extends BaseCommand {
 
     private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
-    protected StreamEncryptionHandler aesStreamHandler =
-        StreamEncryptionFactory.getStreamEncryptionHandler(AppConfig.CRYPTO_AES_STREAM);
-    protected EncryptionHandler aesHandler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_AES);
-    protected EncryptionHandler aesFileHandler = EncryptionFactory.getEncryptionHandler("fileAes");
-    protected EncryptionHandler sha256Handler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_SHA_256);
-    protected EncryptionHandler ivHandler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_IV);
+    protected EncryptionHandler aesHandler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_AES);
+    protected EncryptionHandler aesFileHandler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_AES_FILE);
+    protected EncryptionHandler sha256Handler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_SHA_256);
+    protected EncryptionHandler ivHandler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_IV);
     protected FileUtils fileUtils = FileUtils.getInstance();
 
+    /**
+     * Executes the command within the shared repository context.
+     * @return the result of the command execution.
+     */
+    public String execute() {
+        return execute(currentRepo);
+    }
+
+    /**
+     * Executes the command within the given repository context.
+     * @param repo the repository context of the request.
+     * @return the result of the command execution.
+     */
+    public abstract String execute(CurrentUserRepo repo);
+
+    /**
+     * Returns the IV used for the repository archive. The IV received from the remote server
+     * for the repository takes precedence over the IV of the account.
+     * @param repo the repository context of the request.
+     * @return the IV as a byte array.
+     */
+    protected byte[] resolveRepoIv(final CurrentUserRepo repo) {
+        return Optional.ofNullable(repo.getIv())
+            .map(utils::ivArrayToByteArray)
+            .orElseGet(credentials::getIv);
+    }
+
     /**
      * Encrypts a given input string using AES encryption and returns the encrypted file name.
      * @param input the string to be encrypted
+     * @param repo the repository context receiving the encrypted file name
      * @return an Optional containing the encrypted file name, or empty if encryption fails
      */
-    protected Optional<String> performEncryption(final String input) {
+    protected Optional<String> performEncryption(final String input, final CurrentUserRepo repo) {
         try {
             aesHandler.setIv(credentials.getIv());
             aesHandler.setAesKey(credentials.getAesKey());
             aesHandler.setInput(input);
             aesHandler.encrypt();
             String encFileName = utils.base64ToHex(aesHandler.getOutput());
-            currentRepo.setEncFileName(encFileName);
+            repo.setEncFileName(encFileName);
             return Optional.of(encFileName);
         } catch (Exception e) {
             LOGGER.severe("Encryption failed: " + e.getMessage());
@@ -56,68 +92,86 @@ public abstract class BaseCommandGit extends BaseCommand {
     }
 
     /**
-     * Performs compression, encryption, and file transfer in separate threads.
-     * The method compresses a directory, encrypts the compressed file, and then sends the encrypted
-     * file via a post request.
+     * Performs compression, encryption, and file transfer as concurrent stages of a {@link Pipeline}.
+     * The method compresses a directory, encrypts the compressed stream in parallel chunks, and sends
+     * the encrypted stream via a post request. A failure of any stage cancels the others. The throughput
+     * of every stage is logged. With {@link AppConfig#DEDUP_ENABLED} the archive is deduplicated into
+     * chunks and only its chunk manifest is encrypted and sent.
      * @param sourceDirPath the path of the source directory to be compressed
      * @param postData the data to be sent in the post request
      * @param fileName the name of the file being encrypted and transferred
+     * @param iv the IV used to encrypt the repository archive
+     * @param codec the codec compressing the repository archive
      * @return a response indicating success or failure of the operation
      */
     protected String performFileEncryption(final String sourceDirPath,
                                            final Map<String, String> postData,
-                                           final String fileName) {
+                                           final String fileName,
+                                           final byte[] iv,
+                                           final CompressionCodec codec) {
 
         LOGGER.fine("Initializing compression and encryption of the repo");
+        return performUpload(AppConfig.STAGE_COMPRESS,
+                             (in, out) -> fileUtils.zipDirectoryStream(sourceDirPath, out, codec),
+                             postData, fileName, iv);
+    }
 
-        try (PipedOutputStream zipOutputStream = new PipedOutputStream();
-             PipedInputStream encryptInputStream = new PipedInputStream(zipOutputStream);
-             PipedOutputStream encryptOutputStream = new PipedOutputStream();
-             PipedInputStream transferInputStream = new PipedInputStream(encryptOutputStream)) {
-
-            Thread zipThread = new Thread(() -> {
-                    LOGGER.finest("Starting compression thread");
-                    try {
-                        fileUtils.zipDirectoryStream(sourceDirPath, zipOutputStream);
-                        zipOutputStream.close();
-                    } catch (IOException e) {
-                        LOGGER.severe("Zipping failed: " + e.getMessage());
-                    }
-            });
-
-            Thread encryptThread = new Thread(() -> {
-                    LOGGER.finest("Starting encryption thread");
-                    try {
-                        aesStreamHandler.setAesKey(credentials.getAesKey());
-                        aesStreamHandler.setIv(credentials.getIv());
-                        aesStreamHandler.encryptStream(encryptInputStream, encryptOutputStream);
-                        encryptOutputStream.close();
-                    } catch (Exception e) {
-                        LOGGER.severe("Encryption failed: " + e.getMessage());
-                    }
-            });
-
-            final String[] responseHolder = new String[1];
-            Thread transferThread = new Thread(() -> {
-                    LOGGER.finest("Starting file transfer thread");
-                    try {
-                        responseHolder[0] = prepareAndSendFilePostRequest(postData, transferInputStream, fileName);
-                    } catch (Exception e) {
-                        LOGGER.severe("File transfer failed: " + e.getMessage());
-                    }
-            });
-
-            zipThread.start();
-            encryptThread.start();
-            transferThread.start();
-
-            zipThread.join();
-            encryptThread.join();
-            transferThread.join();
-
-            LOGGER.fine("Successfully compressed and encrypted the repo" + responseHolder[0]);
-            return responseHolder[0];
-        } catch (Exception e) {
+    /**
+     * Sends the changes of a repository since a commit as an encrypted delta bundle. The bundle is written,
+     * encrypted and sent as concurrent stages of a {@link Pipeline}, like a full archive.
+     * @param repository the local repository
+     * @param base the commit the remote repository is at
+     * @param postData the data to be sent in the post request
+     * @param fileName the name of the file being encrypted and transferred
+     * @param iv the IV used to encrypt the repository archive
+     * @return a response indicating success or failure of the operation
+     */
+    protected String performDeltaEncryption(final Repository repository,
+                                            final ObjectId base,
+                                            final Map<String, String> postData,
+                                            final String fileName,
+                                            final byte[] iv) {
+
+        LOGGER.fine("Initializing delta bundle and encryption of the repo since " + base.name());
+        return performUpload(AppConfig.STAGE_BUNDLE,
+                             (in, out) -> DeltaBundle.write(repository, base, out),
+                             postData, fileName, iv);
+    }
+
+    /**
+     * Runs the source, encryption and upload stages of a repository file.
+     * @param sourceStage the name of the stage producing the plaintext
+     * @param source the stage producing the plaintext
+     * @param postData the data to be sent in the post request
+     * @param fileName the name of the file being encrypted and transferred
+     * @param iv the IV used to encrypt the repository file
+     * @return a response indicating success or failure of the operation
+     */
+    private String performUpload(final String sourceStage,
+                                 final Pipeline.Stage source,
+                                 final Map<String, String> postData,
+                                 final String fileName,
+                                 final byte[] iv) {
+        StreamEncryptionHandler aesStreamHandler =
+            StreamEncryptionFactory.newStreamEncryptionHandler(AppConfig.CRYPTO_AES_STREAM);
+        aesStreamHandler.setAesKey(credentials.getAesKey());
+        aesStreamHandler.setIv(iv);
+        AtomicReference<String> response = new AtomicReference<>();
+
+        Pipeline pipeline = new Pipeline().addStage(sourceStage, source);
+        if (AppConfig.DEDUP_ENABLED) {
+            pipeline.addStage(AppConfig.STAGE_DEDUP, (in, out) -> ChunkDeduplicator.deduplicate(
+                                  in, out, credentials.getAesKey(), LocalChunkStore.getInstance()));
+        }
+        pipeline.addStage(AppConfig.STAGE_ENCRYPT, aesStreamHandler::encryptStream)
+            .addStage(AppConfig.STAGE_UPLOAD,
+                      (in, out) -> response.set(prepareAndSendFilePostRequest(postData, in, fileName)));
+        try {
+            pipeline.run();
+            LOGGER.info("Push throughput " + pipeline.report());
+            LOGGER.fine("Successfully compressed and encrypted the repo" + response.get());
+            return response.get();
+        } catch (IOException e) {
             LOGGER.severe("Encryption failed: " + e.getMessage());
             return AppConfig.ERROR_KEY;
         }
@@ -125,76 +179,87 @@ public abstract class BaseCommandGit extends BaseCommand {
 
     /**
      * Decrypts a file, decompresses it, and saves the result in a specified output directory.
-     * This method reads an encrypted file, decrypts it, and then decompresses the resulting data.
+     * Reading, decryption and decompression run as concurrent stages of a {@link Pipeline}.
      * @param inputFile the encrypted file to be decrypted
      * @param outputDir the directory to save the decompressed files
+     * @param repo the repository context of the request
      * @return a response indicating success or failure of the operation
      */
     protected String performFileDecryption(final File inputFile,
-                                           final String outputDir) {
-        LOGGER.fine("Initializing decryption and decompression");
-
-        try (PipedOutputStream streamWriterOutputStream = new PipedOutputStream();
-             PipedInputStream decryptInputStream = new PipedInputStream(streamWriterOutputStream);
-             PipedOutputStream decryptOutputStream = new PipedOutputStream();
-             PipedInputStream unzipInputStream = new PipedInputStream(decryptOutputStream)) {
-
-            final CountDownLatch latch = new CountDownLatch(1);
-
-            Thread streamWriterThread = new Thread(() -> {
-                    try (FileInputStream encryptedFileStream = new FileInputStream(inputFile)) {
-                        byte[] buffer = new byte[4 * AppConfig.ONE_KB];
-                        int bytesRead;
-                        while ((bytesRead = encryptedFileStream.read(buffer)) != -1) {
-                            LOGGER.finest("bytesRead (streamWriter): " + bytesRead);
-                            streamWriterOutputStream.write(buffer, 0, bytesRead);
-                            streamWriterOutputStream.flush();
-                        }
-                        streamWriterOutputStream.flush();
-                        LOGGER.finest("File reading and writing to the piped stream completed.");
-                    } catch (IOException e) {
-                        LOGGER.severe("Failed to write to piped output stream: " + e.getMessage());
-                    }
-            });
-
-            Thread decryptThread = new Thread(() -> {
-                    LOGGER.finest("Starting decryption thread");
-                    try {
-                        aesStreamHandler.setAesKey(credentials.getAesKey());
-                        aesStreamHandler.setIv(credentials.getIv());
-                        aesStreamHandler.decryptStream(decryptInputStream, decryptOutputStream);
-                        //latch.countDown();
-                        LOGGER.finest("Decryption complete, stream closed");
-                    } catch (Exception e) {
-                        LOGGER.severe("Decryption failed: " + e.getMessage());
-                    }
-            });
-
-            Thread unzipThread = new Thread(() -> {
-                    LOGGER.finest("Starting decompression thread");
-                    try {
-                        latch.await();
-                        fileUtils.unzipDirectoryStream(unzipInputStream);
-                        decryptOutputStream.close();
-                        LOGGER.finest("Unzipping complete, stream closed");
-                    } catch (Exception e) {
-                        LOGGER.severe("Decompression failed: " + e.getMessage());
-                    }
-            });
-
-            //streamWriterThread.start();
-            decryptThread.start();
-            unzipThread.start();
-
-            //streamWriterThread.join();
-            decryptThread.join();
-            unzipThread.join();
-
-            //latch.await();
-
-            LOGGER.fine("Successfully decrypted and decompressed the file");
+                                           final String outputDir,
+                                           final CurrentUserRepo repo) {
+        LOGGER.fine("Initializing decryption and decompression of " + inputFile);
+
+        try (InputStream fileStream = Files.newInputStream(inputFile.toPath())) {
+            return performDecryption(AppConfig.STAGE_READ, fileStream, repo, AppConfig.STAGE_DECOMPRESS,
+                                     (in, out) -> fileUtils.unzipDirectoryStream(in, repo));
+        } catch (IOException e) {
+            LOGGER.severe("Could not read encrypted file: " + e.getMessage());
+            return AppConfig.ERROR_KEY;
+        }
+    }
+
+    /**
+     * Decrypts and decompresses an encrypted repository archive while it is being received.
+     * The archive is never written to disk; only the decompressed files are.
+     * @param encryptedStream the encrypted archive, typically the response stream of the server
+     * @param repo the repository context of the request
+     * @return a response indicating success or failure of the operation
+     */
+    protected String performStreamDecryption(final InputStream encryptedStream,
+                                             final CurrentUserRepo repo) {
+        LOGGER.fine("Initializing streaming decryption and decompression");
+        return performDecryption(AppConfig.STAGE_DOWNLOAD, encryptedStream, repo, AppConfig.STAGE_DECOMPRESS,
+                                 (in, out) -> fileUtils.unzipDirectoryStream(in, repo));
+    }
+
+    /**
+     * Decrypts an encrypted delta segment while it is being received and stages it in an applier.
+     * @param encryptedStream the encrypted segment, typically the response stream of the server
+     * @param repo the repository context of the request
+     * @param applier the applier receiving the delta bundle of the segment
+     * @return a response indicating success or failure of the operation
+     */
+    protected String performDeltaDecryption(final InputStream encryptedStream,
+                                            final CurrentUserRepo repo,
+                                            final DeltaApplier applier) {
+        LOGGER.fine("Initializing streaming decryption of a delta segment");
+        return performDecryption(AppConfig.STAGE_DOWNLOAD, encryptedStream, repo, AppConfig.STAGE_APPLY,
+                                 (in, out) -> applier.apply(in));
+    }
+
+    /**
+     * Runs the source, decryption and sink stages of an encrypted archive. A decrypted chunk
+     * manifest is reassembled into its archive before it reaches the sink.
+     * @param sourceStage the name of the stage reading the archive
+     * @param encryptedStream the encrypted archive
+     * @param repo the repository context of the request
+     * @param sinkStage the name of the stage consuming the decrypted archive
+     * @param sink the stage consuming the decrypted archive
+     * @return a response indicating success or failure of the operation
+     */
+    private String performDecryption(final String sourceStage,
+                                     final InputStream encryptedStream,
+                                     final CurrentUserRepo repo,
+                                     final String sinkStage,
+                                     final Pipeline.Stage sink) {
+        StreamEncryptionHandler aesStreamHandler =
+            StreamEncryptionFactory.newStreamEncryptionHandler(AppConfig.CRYPTO_AES_STREAM);
+        aesStreamHandler.setAesKey(credentials.getAesKey());
+        aesStreamHandler.setIv(resolveRepoIv(repo));
+
+        Pipeline pipeline = new Pipeline()
+            .addStage(sourceStage, (in, out) -> encryptedStream.transferTo(out))
+            .addStage(AppConfig.STAGE_DECRYPT, aesStreamHandler::decryptStream)
+            .addStage(AppConfig.STAGE_REASSEMBLE,
+                      (in, out) -> ChunkDeduplicator.reassemble(in, out, LocalChunkStore.getInstance()))
+            .addStage(sinkStage, sink);
+        try {
+            pipeline.run();
+            LOGGER.info("Fetch throughput " + pipeline.report());
+            LOGGER.fine("Successfully decrypted and decompressed the repo");
             return "Success";
-        } catch (Exception e) {
+        } catch (IOException e) {
             LOGGER.severe("Decryption process failed: " + e.getMessage());
             return AppConfig.ERROR_KEY;
         }
@@ -1,15 +1,22 @@
 package se.miun.dt133g.zkgitclient.commands.git;
 
 import se.miun.dt133g.zkgitclient.commands.Command;
+import se.miun.dt133g.zkgitclient.delta.DeltaApplier;
+import se.miun.dt133g.zkgitclient.delta.DeltaBundle;
+import se.miun.dt133g.zkgitclient.delta.DeltaChain;
+import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
 
+import org.eclipse.jgit.lib.Repository;
+
 import java.io.InputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.logging.Logger;
@@ -17,7 +24,7 @@ import java.util.logging.Logger;
 /**
  * Command to retrieve and process repository files from a remote server.
  * This command checks repository updates, retrieves the repository file,
- * decrypts and decompresses it, and then saves it locally.
+ * decrypts and decompresses it while it is being received, and then saves it locally.
  * @author Leif Rogell
  */
 public final class GetRepoFile extends BaseCommandGit implements Command {
@@ -28,96 +35,211 @@ public final class GetRepoFile extends BaseCommandGit implements Command {
     /**
      * Executes the command to retrieve and process the repository file.
      * It checks for repository updates, retrieves the file, decrypts,
-     * decompresses, and saves it locally.
+     * decompresses, and saves it locally. With {@link AppConfig#DELTA_FETCH_ENABLED} the delta segments
+     * pushed after the snapshot are followed; a repository whose signature is in the chain only receives
+     * the segments after it, and a full download is done when it is not or the chain is broken. The fetch
+     * fails if the segments following a full download cannot be applied. With
+     * {@link AppConfig#FETCH_RANGED} a full download is fetched with parallel, resumable range requests.
+     * @param repo the repository context of the request.
      * @return a response indicating success or failure of the operation.
      */
     @Override
-    public String execute() {
+    public String execute(final CurrentUserRepo repo) {
 
         LOGGER.info("Preparing to get repo file from remote server");
 
         Map<String, String> responseMap = new HashMap<>();
-        Map<String, String> infoResponse = extractResponseToMap(getRepoFileInfo.execute());
+        Map<String, String> infoResponse = extractResponseToMap(getRepoFileInfo.execute(repo));
         LOGGER.finest("Remote Signature: " + infoResponse.get(AppConfig.DB_REPO_HASH));
-        LOGGER.finest("Current Signature: " + currentRepo.getRepoSignature());
+        LOGGER.finest("Current Signature: " + repo.getRepoSignature());
         LOGGER.finest(infoResponse.get(AppConfig.DB_IV));
 
+        String localSignature = repo.getRepoSignature();
+        DeltaChain chain;
         try {
-            if (currentRepo.getRepoSignature().contains(infoResponse.get(AppConfig.DB_REPO_HASH))) {
+            chain = resolveChain(repo, infoResponse.get(AppConfig.DB_REPO_HASH));
+            if (localSignature.contains(chain.getTip())) {
                 responseMap.put(AppConfig.COMMAND_SUCCESS, AppConfig.STATUS_REPO_UPTODATE);
                 return utils.mapToString(responseMap);
             } else if (infoResponse.get(AppConfig.DB_IV) == null) {
                 ivHandler.encrypt();
-                credentials.setIv(ivHandler.getOutput());
+                repo.setIv(ivHandler.getOutput());
                 responseMap.put(AppConfig.COMMAND_SUCCESS, AppConfig.STATUS_REPO_NEW);
                 return utils.mapToString(responseMap);
             } else {
-                currentRepo.setRepoSignature(infoResponse.get(AppConfig.DB_REPO_HASH));
-                credentials.setIv(infoResponse.get(AppConfig.DB_IV));
+                repo.setRepoSignature(chain.getSnapshot());
+                repo.setIv(infoResponse.get(AppConfig.DB_IV));
             }
         } catch (NullPointerException e) {
             LOGGER.severe("Could not retrieve repo info from remote");
             return AppConfig.NONE;
         }
 
-        sha256Handler.setInput(currentRepo.getRepoName()
-                               .replace(AppConfig.ZIP_SUFFIX, AppConfig.NONE));
-        sha256Handler.encrypt();
+        int position = chainPosition(chain, localSignature);
+        if (position >= 0 && fetchSegments(repo, chain, position)) {
+            responseMap.put(AppConfig.COMMAND_SUCCESS, AppConfig.NONE);
+            return utils.mapToString(responseMap);
+        }
 
-        return performEncryption(currentRepo.getRepoName())
+        String nameHash = hashRepoFileName(repo.getRepoName());
+
+        return performEncryption(repo.getRepoName(), repo)
             .map(encFileName -> {
-                    Map<String, String> postData = new HashMap<>();
-                    postData.put(AppConfig.COMMAND_KEY,
-                                 AppConfig.COMMAND_REQUEST_REPO_FILE);
-                    postData.put(AppConfig.CREDENTIAL_ACCOUNT_NR,
-                                 credentials.getAccountNumber());
-                    postData.put(AppConfig.CREDENTIAL_USERNAME,
-                                 credentials.getUsername());
-                    postData.put(AppConfig.CREDENTIAL_ACCESS_TOKEN,
-                                 credentials.getAccessToken());
-                    postData.put(AppConfig.REPO_NAME_HASH,
-                                 sha256Handler.getOutput());
-                    postData.put(AppConfig.REPO_SIGNATURE,
-                                 currentRepo.getRepoSignature());
-
-                    File file = Paths.get(System.getProperty(AppConfig.JAVA_TMP),
-                                          sha256Handler.getOutput()).toFile();
-                    InputStream fileStream = prepareAndSendGetPostRequest(postData);
+                    InputStream fileStream = AppConfig.FETCH_RANGED
+                        ? conn.sendRangedGetPostRequest(createFilePostData(nameHash, repo),
+                                                        Paths.get(System.getProperty(AppConfig.JAVA_TMP),
+                                                                  AppConfig.TMP_PREFIX + repo.getRepoName()
+                                                                  + AppConfig.PART_SUFFIX),
+                                                        repo.getRepoSignature())
+                        : prepareAndSendGetPostRequest(createFilePostData(nameHash, repo));
                     if (fileStream == null) {
                         LOGGER.severe("Could not retrieve input stream");
+                        return createErrorResponse(AppConfig.ERROR_CONNECTION);
                     }
 
-                    try (FileOutputStream fos = new FileOutputStream(file)) {
-                        byte[] buffer = new byte[4 * AppConfig.ONE_KB];
-                        int bytesRead;
-                        while ((bytesRead = fileStream.read(buffer)) != -1) {
-                            fos.write(buffer, 0, bytesRead);
-                        }
-                    } catch (Exception e) {
-                        LOGGER.severe("Could not write file: " + e.getMessage());
+                    String result;
+                    try (InputStream remoteStream = fileStream) {
+                        result = AppConfig.FETCH_VIA_TEMP_FILE
+                            ? fetchViaTempFile(remoteStream, nameHash, repo)
+                            : performStreamDecryption(remoteStream, repo);
+                    } catch (IOException e) {
+                        LOGGER.severe("Could not receive repo file: " + e.getMessage());
+                        result = AppConfig.ERROR_KEY;
+                    }
+                    if (AppConfig.ERROR_KEY.equals(result)) {
+                        return createErrorResponse(AppConfig.ERROR_DECRYPTION);
+                    }
+                    if (!chain.getSegments().isEmpty() && !fetchSegments(repo, chain, 0)) {
+                        LOGGER.severe("Could not apply the delta segments after snapshot " + chain.getSnapshot());
+                        return createErrorResponse(AppConfig.ERROR_DELTA_SEGMENTS);
                     }
 
-                    aesFileHandler.setInput(sha256Handler.getOutput());
-                    aesFileHandler.setAesKey(credentials.getAesKey());
-                    aesFileHandler.setIv(credentials.getIv());
-                    aesFileHandler.decrypt();
+                    responseMap.put(AppConfig.COMMAND_SUCCESS, AppConfig.NONE);
+                    return utils.mapToString(responseMap);
+                })
+            .orElse(AppConfig.NONE);
+    }
 
-                    File decryptedFile = new File(System.getProperty(AppConfig.JAVA_TMP), "test_repo2");
-                    try (FileInputStream decryptedInputStream = new FileInputStream(decryptedFile)) {
-                        LOGGER.finest("Starting decompression of decrypted file.");
+    /**
+     * Resolves the chain of delta segments following the remote snapshot.
+     * @param repo the repository context of the request.
+     * @param snapshot the signature of the remote snapshot.
+     * @return the chain, which has no segments if delta fetches are disabled.
+     */
+    private DeltaChain resolveChain(final CurrentUserRepo repo, final String snapshot) {
+        return AppConfig.DELTA_FETCH_ENABLED && snapshot != null
+            ? getRepoFileInfo.resolveDeltaChain(repo, snapshot)
+            : new DeltaChain(repo.getRepoName(), snapshot);
+    }
 
-                        fileUtils.unzipDirectoryStream(decryptedInputStream);
+    /**
+     * Finds the latest state of the chain the local repository is at.
+     * @param chain the remote chain.
+     * @param localSignature the signature of the local repository.
+     * @return the number of segments the local repository already holds, or -1 if it is not in the chain.
+     */
+    private int chainPosition(final DeltaChain chain, final String localSignature) {
+        List<String> segments = chain.getSegments();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (localSignature.contains(segments.get(i))) {
+                return i + 1;
+            }
+        }
+        return localSignature.contains(chain.getSnapshot()) && !segments.isEmpty() ? 0 : -1;
+    }
 
-                        LOGGER.finest("Decompression complete.");
-                    } catch (IOException e) {
-                        LOGGER.severe("Failed to read decrypted file or unzip: " + e.getMessage());
+    /**
+     * Downloads the delta segments of the chain from a position on and applies them to the local repository
+     * in one atomic update of its refs. Nothing is changed if any segment is missing or fails to apply.
+     * @param repo the repository context of the request.
+     * @param chain the remote chain.
+     * @param position the number of segments the local repository already holds.
+     * @return true if the local repository is at the tip of the chain.
+     */
+    private boolean fetchSegments(final CurrentUserRepo repo, final DeltaChain chain, final int position) {
+        Path repoDir = Paths.get(System.getProperty(AppConfig.JAVA_TMP), AppConfig.TMP_PREFIX + repo.getRepoName());
+        if (!Files.isDirectory(repoDir)) {
+            return false;
+        }
+        List<String> segments = chain.getSegments();
+        try (Repository repository = DeltaBundle.open(repoDir);
+             DeltaApplier applier = new DeltaApplier(repository)) {
+            for (int i = position; i < segments.size(); i++) {
+                String base = i == 0 ? chain.getSnapshot() : segments.get(i - 1);
+                InputStream segmentStream =
+                    prepareAndSendGetPostRequest(createFilePostData(hashRepoFileName(chain.segmentName(base)), repo));
+                if (segmentStream == null) {
+                    LOGGER.warning("Could not retrieve delta segment based on " + base);
+                    return false;
+                }
+                try (InputStream remoteStream = segmentStream) {
+                    if (AppConfig.ERROR_KEY.equals(performDeltaDecryption(remoteStream, repo, applier))) {
+                        return false;
                     }
+                }
+            }
+            applier.commit();
+            repo.setRepoSignature(chain.getTip());
+            LOGGER.info("Applied " + (segments.size() - position) + " delta segments up to " + chain.getTip());
+            return true;
+        } catch (IOException e) {
+            LOGGER.warning("Could not apply delta segments: " + e.getMessage());
+            return false;
+        }
+    }
 
-                    //performFileDecryption(file, AppConfig.JAVA_TMP + currentRepo.getRepoName());
+    /**
+     * Hashes the name of a repository file the way the server indexes it.
+     * @param name the name of the repository or delta segment.
+     * @return the hexadecimal SHA-256 of the name.
+     */
+    private String hashRepoFileName(final String name) {
+        sha256Handler.setInput(name.replace(AppConfig.ZIP_SUFFIX, AppConfig.NONE));
+        sha256Handler.encrypt();
+        return sha256Handler.getOutput();
+    }
 
-                    responseMap.put(AppConfig.COMMAND_SUCCESS, AppConfig.NONE);
-                    return utils.mapToString(responseMap);
-                })
-            .orElse(AppConfig.NONE);
+    /**
+     * Creates the post data requesting a repository file.
+     * @param nameHash the hashed name of the repository file.
+     * @param repo the repository context of the request.
+     * @return the post data.
+     */
+    private Map<String, String> createFilePostData(final String nameHash, final CurrentUserRepo repo) {
+        Map<String, String> postData = new HashMap<>();
+        postData.put(AppConfig.COMMAND_KEY,
+                     AppConfig.COMMAND_REQUEST_REPO_FILE);
+        postData.put(AppConfig.CREDENTIAL_ACCOUNT_NR,
+                     credentials.getAccountNumber());
+        postData.put(AppConfig.CREDENTIAL_USERNAME,
+                     credentials.getUsername());
+        postData.put(AppConfig.CREDENTIAL_ACCESS_TOKEN,
+                     credentials.getAccessToken());
+        postData.put(AppConfig.REPO_NAME_HASH,
+                     nameHash);
+        postData.put(AppConfig.REPO_SIGNATURE,
+                     repo.getRepoSignature());
+        return postData;
+    }
+
+    /**
+     * Fallback fetch that stores the encrypted archive in a temporary file before decrypting and
+     * decompressing it. Enabled with the system property {@code zkgit.fetch.tempFile}.
+     * @param remoteStream the encrypted archive received from the server.
+     * @param fileName the name of the temporary file.
+     * @param repo the repository context of the request.
+     * @return a response indicating success or failure of the operation.
+     * @throws IOException if the archive could not be stored or the temporary file could not be deleted.
+     */
+    private String fetchViaTempFile(final InputStream remoteStream,
+                                    final String fileName,
+                                    final CurrentUserRepo repo) throws IOException {
+        Path file = Paths.get(System.getProperty(AppConfig.JAVA_TMP), fileName);
+        Files.copy(remoteStream, file, StandardCopyOption.REPLACE_EXISTING);
+        try {
+            return performFileDecryption(file.toFile(), AppConfig.JAVA_TMP + repo.getRepoName(), repo);
+        } finally {
+            Files.deleteIfExists(file);
+        }
     }
 }
@@ -1,11 +1,15 @@
 package se.miun.dt133g.zkgitclient.commands.git;
 
 import se.miun.dt133g.zkgitclient.commands.Command;
+import se.miun.dt133g.zkgitclient.delta.DeltaChain;
+import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
 
+import java.util.HashSet;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -25,18 +29,19 @@ public final class GetRepoFileInfo extends BaseCommandGit implements Command {
      * This method performs encryption on the repository name, generates a SHA-256 hash
      * of the repository name, and sends a POST request with the necessary data to
      * retrieve file information from the remote server.
+     * @param repo the repository context of the request.
      * @return a response from the server containing repository file information or an error message.
      */
     @Override
-    public String execute() {
+    public String execute(final CurrentUserRepo repo) {
 
         LOGGER.info("Preparing to retrieve repo file information from remote server");
 
-        return performEncryption(currentRepo.getRepoName())
+        return performEncryption(repo.getRepoName(), repo)
             .map(encFileName -> {
                     Map<String, String> postData = new HashMap<>();
 
-                    sha256Handler.setInput(currentRepo.getRepoName()
+                    sha256Handler.setInput(repo.getRepoName()
                                            .replace(AppConfig.ZIP_SUFFIX, AppConfig.NONE));
                     sha256Handler.encrypt();
 
@@ -51,14 +56,42 @@ public final class GetRepoFileInfo extends BaseCommandGit implements Command {
                     postData.put(AppConfig.REPO_NAME_HASH,
                                  sha256Handler.getOutput());
                     postData.put(AppConfig.REPO_SIGNATURE,
-                                 currentRepo.getRepoSignature());
+                                 repo.getRepoSignature());
 
                     String response = conn.sendPostRequest(postData);
-                    LOGGER.finest("RepoName: " + currentRepo.getRepoName() + ", Hash: "
+                    LOGGER.finest("RepoName: " + repo.getRepoName() + ", Hash: "
                                   + sha256Handler.getOutput());
                     LOGGER.finest("GetRepoFileInfoResponse: " + response);
                     return response;
                 })
             .orElse(ERROR_MESSAGE);
     }
+
+    /**
+     * Follows the delta segments stored after a snapshot to find the current state of a repository.
+     * Every segment is looked up with an info request for its segment name; the chain ends at the first
+     * segment the server does not know. A segment leading back to a signature already in the chain ends
+     * the chain as well.
+     * @param repo the repository context of the request.
+     * @param snapshot the signature of the full snapshot on the server.
+     * @return the chain of segments following the snapshot.
+     */
+    public DeltaChain resolveDeltaChain(final CurrentUserRepo repo, final String snapshot) {
+        DeltaChain chain = new DeltaChain(repo.getRepoName(), snapshot);
+        Set<String> seen = new HashSet<>();
+        seen.add(snapshot);
+        while (chain.getSegments().size() <= AppConfig.DELTA_MAX_SEGMENTS) {
+            CurrentUserRepo segment = new CurrentUserRepo();
+            segment.setRepoName(chain.nextSegmentName());
+            segment.setRepoSignature(repo.getRepoSignature());
+            String signature = extractResponseToMap(execute(segment)).get(AppConfig.DB_REPO_HASH);
+            if (signature == null || !seen.add(signature)) {
+                break;
+            }
+            chain.addSegment(signature);
+        }
+        LOGGER.fine("Remote delta chain of " + repo.getRepoName() + ": " + chain.getSegments().size()
+                    + " segments after " + snapshot);
+        return chain;
+    }
 }
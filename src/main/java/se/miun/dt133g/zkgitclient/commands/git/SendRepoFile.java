@@ -3,9 +3,18 @@ package se.miun.dt133g.zkgitclient.commands.git;
 import se.miun.dt133g.zkgitclient.crypto.EncryptionHandler;
 import se.miun.dt133g.zkgitclient.crypto.EncryptionFactory;
 import se.miun.dt133g.zkgitclient.commands.Command;
+import se.miun.dt133g.zkgitclient.compression.CompressionFactory;
+import se.miun.dt133g.zkgitclient.delta.DeltaBundle;
+import se.miun.dt133g.zkgitclient.delta.DeltaChain;
+import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
 
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
@@ -16,31 +25,37 @@ import java.util.logging.Logger;
  * Command to send a repository file to a remote server after encrypting it.
  * This class encrypts the repository file name and performs the transfer
  * to the server with the necessary credentials and metadata.
+ * With {@link AppConfig#DELTA_PUSH_ENABLED} only the changes since the remote signature are sent, as a
+ * delta segment following the last full snapshot; a full snapshot is sent when the remote signature is
+ * unknown locally or the chain of segments has reached {@link AppConfig#DELTA_MAX_SEGMENTS}.
  * @author Leif Rogell
  */
 public final class SendRepoFile extends BaseCommandGit implements Command {
 
     private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
     private EncryptionHandler sha256FileHandler =
-        EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_SHA_256_FILE);
+        EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_SHA_256_FILE);
+    private GetRepoFileInfo getRepoFileInfo = new GetRepoFileInfo();
 
     /**
      * Executes the command to send the repository file to the remote server.
      * The method encrypts the repository file name, prepares the necessary
      * metadata, and calls the encryption and file transfer functions to
      * securely send the file.
+     * @param repo the repository context of the request.
      * @return a response indicating success or failure of the operation.
      */
     @Override
-    public String execute() {
+    public String execute(final CurrentUserRepo repo) {
         return Optional.of(conn.getServerConnectivity())
             .filter(valid -> credentials.hasAccessToken())
             .map(valid -> {
 
-                    sha256Handler.setInput(currentRepo.getRepoName());
+                    sha256Handler.setInput(repo.getRepoName());
                     sha256Handler.encrypt();
+                    String encFileName = sha256Handler.getOutput();
 
-                    LOGGER.finest(currentRepo.getRepoSignature());
+                    LOGGER.finest(repo.getRepoSignature());
 
                     Map<String, String> postData = new HashMap<>();
                     postData.put(AppConfig.COMMAND_KEY,
@@ -52,20 +67,73 @@ public final class SendRepoFile extends BaseCommandGit implements Command {
                     postData.put(AppConfig.CREDENTIAL_ACCESS_TOKEN,
                                  credentials.getAccessToken());
                     postData.put(AppConfig.ENC_FILE_NAME,
-                                 sha256Handler.getOutput());
+                                 encFileName);
                     postData.put(AppConfig.REPO_SIGNATURE,
-                                 currentRepo.getRepoSignature());
+                                 repo.getRepoSignature());
+                    byte[] iv = resolveRepoIv(repo);
                     postData.put(AppConfig.DB_IV,
-                                 Arrays.toString(utils.byteArrayToIntArray(credentials.getIv())));
+                                 Arrays.toString(utils.byteArrayToIntArray(iv)));
 
-                    return performFileEncryption(System.getProperty(AppConfig.JAVA_TMP)
-                                                 + "/" + AppConfig.TMP_PREFIX
-                                                 + currentRepo.getRepoName(),
-                                                 postData,
-                                                 sha256Handler.getOutput());
+                    String sourceDirPath = System.getProperty(AppConfig.JAVA_TMP)
+                        + "/" + AppConfig.TMP_PREFIX
+                        + repo.getRepoName();
+                    return Optional.of(AppConfig.DELTA_PUSH_ENABLED)
+                        .filter(enabled -> enabled)
+                        .flatMap(enabled -> pushDelta(repo, sourceDirPath, postData, iv))
+                        .orElseGet(() -> performFileEncryption(sourceDirPath,
+                                                               postData,
+                                                               encFileName,
+                                                               iv,
+                                                               CompressionFactory.resolveCodec(repo)));
                 })
             .orElseGet(() -> {
                     return createErrorResponse(AppConfig.ERROR_CONNECTION);
                 });
     }
+
+    /**
+     * Sends the changes since the current remote signature as the next delta segment of the repository.
+     * @param repo the repository context of the request.
+     * @param sourceDirPath the path of the local repository.
+     * @param postData the data of a full snapshot upload, used as the base of the segment upload.
+     * @param iv the IV used to encrypt the repository files.
+     * @return the response of the upload, or empty if a full snapshot has to be sent instead.
+     */
+    private Optional<String> pushDelta(final CurrentUserRepo repo,
+                                       final String sourceDirPath,
+                                       final Map<String, String> postData,
+                                       final byte[] iv) {
+        String snapshot = extractResponseToMap(getRepoFileInfo.execute(repo)).get(AppConfig.DB_REPO_HASH);
+        if (snapshot == null) {
+            LOGGER.fine("No remote snapshot of " + repo.getRepoName() + ", sending a full snapshot");
+            return Optional.empty();
+        }
+        DeltaChain chain = getRepoFileInfo.resolveDeltaChain(repo, snapshot);
+        if (chain.needsCompaction()) {
+            LOGGER.info("Compacting " + chain.getSegments().size() + " delta segments into a full snapshot");
+            return Optional.empty();
+        }
+        if (repo.getRepoSignature() != null && repo.getRepoSignature().contains(chain.getTip())) {
+            Map<String, String> responseMap = new HashMap<>();
+            responseMap.put(AppConfig.COMMAND_SUCCESS, AppConfig.STATUS_REPO_UPTODATE);
+            return Optional.of(utils.mapToString(responseMap));
+        }
+
+        try (Repository repository = DeltaBundle.open(Paths.get(sourceDirPath))) {
+            Optional<ObjectId> base = DeltaBundle.resolveBase(repository, chain.getTip());
+            if (base.isEmpty()) {
+                LOGGER.info("Remote signature " + chain.getTip() + " is not known locally, sending a full snapshot");
+                return Optional.empty();
+            }
+            sha256Handler.setInput(chain.nextSegmentName().replace(AppConfig.ZIP_SUFFIX, AppConfig.NONE));
+            sha256Handler.encrypt();
+            String segmentFileName = sha256Handler.getOutput();
+            Map<String, String> segmentPostData = new HashMap<>(postData);
+            segmentPostData.put(AppConfig.ENC_FILE_NAME, segmentFileName);
+            return Optional.of(performDeltaEncryption(repository, base.get(), segmentPostData, segmentFileName, iv));
+        } catch (IOException e) {
+            LOGGER.warning("Could not prepare delta of " + repo.getRepoName() + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
 }
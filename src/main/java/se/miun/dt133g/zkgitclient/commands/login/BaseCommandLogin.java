@@ -10,9 +10,13 @@ import se.miun.dt133g.zkgitclient.support.AppConfig;
 import org.jline.reader.EndOfFileException;
 import org.jline.reader.UserInterruptException;
 
+import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Pattern;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 /**
@@ -25,9 +29,10 @@ import java.util.logging.Logger;
 public abstract class BaseCommandLogin extends BaseCommand {
 
     private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
-    protected EncryptionHandler pbkdf2Handler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_PBKDF2);
-    protected EncryptionHandler aesHandler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_AES);
-    protected EncryptionHandler rsaHandler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_RSA);
+    protected EncryptionHandler pbkdf2Handler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_PBKDF2);
+    protected EncryptionHandler aesHandler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_AES);
+    protected EncryptionHandler rsaHandler = EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_RSA);
+    private static final AtomicReference<CompletableFuture<Void>> KEY_DERIVATION = new AtomicReference<>();
 
     /**
      * Reads a password input from the user with a prompt, validates it against a regular expression,
@@ -77,4 +82,39 @@ public abstract class BaseCommandLogin extends BaseCommand {
         Arrays.fill(password.toCharArray(), AppConfig.NULL_TERMINATOR);
         return AppConfig.COMMAND_SUCCESS;
     }
+
+    /**
+     * Starts deriving the password key in the background as soon as a response carries the salt of the
+     * encrypted private key. The password must already be set in the credentials.
+     * @param response the server response expected to hold the encrypted private key.
+     */
+    protected void startKeyDerivation(final String response) {
+        Map<String, String> responseMap = extractResponseToMap(response);
+        String encPrivRsaJson = responseMap.get(AppConfig.CREDENTIAL_ENC_PRIV_RSA_KEY);
+        if (encPrivRsaJson == null || responseMap.containsKey(AppConfig.ERROR_KEY)) {
+            KEY_DERIVATION.set(null);
+            return;
+        }
+        credentials.setEncPrivRsaJson(encPrivRsaJson);
+        LOGGER.fine("Deriving password key while the login proceeds");
+        KEY_DERIVATION.set(CompletableFuture.runAsync(pbkdf2Handler::encrypt));
+    }
+
+    /**
+     * Waits for a password key derivation started by {@link #startKeyDerivation(String)}.
+     * @return true if a derivation was started and completed, false if the key must still be derived.
+     */
+    protected boolean awaitKeyDerivation() {
+        CompletableFuture<Void> derivation = KEY_DERIVATION.getAndSet(null);
+        if (derivation == null) {
+            return false;
+        }
+        try {
+            derivation.join();
+            return true;
+        } catch (CompletionException e) {
+            LOGGER.warning("Password key derivation failed: " + e.getMessage());
+            return false;
+        }
+    }
 }
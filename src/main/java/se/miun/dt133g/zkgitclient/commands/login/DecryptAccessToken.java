@@ -20,7 +20,8 @@ public final class DecryptAccessToken extends BaseCommandLogin implements Comman
 
     /**
      * Executes the decryption of the access token.
-     * It reads the password, performs necessary decryption using PBKDF2, AES, and RSA encryption methods,
+     * It uses the password key derived while the TOTP was verified, or reads the password and derives it,
+     * performs necessary decryption using AES and RSA encryption methods,
      * and sends a post request to retrieve the AES key if the decryption is successful.
      * @return the result of the post request or an exit command if decryption fails.
      */
@@ -29,12 +30,9 @@ public final class DecryptAccessToken extends BaseCommandLogin implements Comman
 
         LOGGER.info("Decrypting access token");
 
-        return Optional.ofNullable(readPassword(AppConfig.INFO_ENTER_PASSWORD,
-                                                AppConfig.INFO_INVALID_PASSWORD,
-                                                AppConfig.REGEX_PASSWORD))
-            .filter(password -> !AppConfig.ERROR_KEY.equals(password))
-            .map(password -> {
-                    pbkdf2Handler.encrypt();
+        return Optional.of(awaitKeyDerivation() || derivePasswordKey())
+            .filter(Boolean::booleanValue)
+            .map(derived -> {
                     aesHandler.setAesKey(credentials.getPbkdf2Hash());
                     aesHandler.setIv(credentials.getIv());
                     aesHandler.setInput(credentials.getEncPrivRsa());
@@ -70,4 +68,19 @@ public final class DecryptAccessToken extends BaseCommandLogin implements Comman
                 })
             .orElse(AppConfig.COMMAND_EXIT);
     }
+
+    /**
+     * Reads the password and derives the password key from it.
+     * @return true if the key was derived, false if no password was entered.
+     */
+    private boolean derivePasswordKey() {
+        String password = readPassword(AppConfig.INFO_ENTER_PASSWORD,
+                                       AppConfig.INFO_INVALID_PASSWORD,
+                                       AppConfig.REGEX_PASSWORD);
+        if (AppConfig.ERROR_KEY.equals(password)) {
+            return false;
+        }
+        pbkdf2Handler.encrypt();
+        return true;
+    }
 }
@@ -3,9 +3,11 @@ package se.miun.dt133g.zkgitclient.commands.login;
 import se.miun.dt133g.zkgitclient.commands.Command;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
+import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 /**
@@ -26,6 +28,18 @@ public final class SendTotp extends BaseCommandLogin implements Command {
      */
     @Override
     public String execute() {
+        return executeAsync(currentRepo).join();
+    }
+
+    /**
+     * Sends the TOTP token and, while the verification is in flight, prompts for the password. The password
+     * key is derived in the background as soon as the response carries its salt, so it is ready, or nearly
+     * so, when the access token is decrypted.
+     * @param currentRepo the repository context of the request, not used by this command.
+     * @return a future completed with the server response, or with an exit command if the input is invalid.
+     */
+    @Override
+    public CompletableFuture<String> executeAsync(final CurrentUserRepo currentRepo) {
 
         LOGGER.info("Verifying TOTP Token");
 
@@ -41,8 +55,18 @@ public final class SendTotp extends BaseCommandLogin implements Command {
                                AppConfig.CREDENTIAL_USERNAME, credentials.getUsername(),
                                AppConfig.CREDENTIAL_TOTP_TOKEN, token
                            );
-                           return prepareAndSendPostRequest(postData);
+                           CompletableFuture<String> verification = prepareAndSendPostRequestAsync(postData);
+                           boolean password = AppConfig.COMMAND_SUCCESS.equals(
+                               readPassword(AppConfig.INFO_ENTER_PASSWORD,
+                                            AppConfig.INFO_INVALID_PASSWORD,
+                                            AppConfig.REGEX_PASSWORD));
+                           return verification.thenApply(response -> {
+                                   if (password) {
+                                       startKeyDerivation(response);
+                                   }
+                                   return response;
+                               });
                        })
-                       .orElse(AppConfig.COMMAND_EXIT);
+                       .orElse(CompletableFuture.completedFuture(AppConfig.COMMAND_EXIT));
     }
 }
@@ -0,0 +1,55 @@
+package se.miun.dt133g.zkgitclient.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Interface for compression codecs used for repository archives.
+ * A codec is identified by a name used in the configuration and by an id recorded in the archive header,
+ * so that an archive is always decompressed with the codec it was compressed with.
+ * @author Leif Rogell
+ */
+public interface CompressionCodec {
+
+    /**
+     * Returns the name of the codec, e.g. "gzip".
+     * @return the codec name.
+     */
+    String getName();
+
+    /**
+     * Returns the id of the codec recorded in the archive header.
+     * @return the codec id.
+     */
+    int getId();
+
+    /**
+     * Wraps an output stream so that the data written to it is compressed.
+     * Closing the returned stream finishes the compressed data and closes the wrapped stream.
+     * @param outputStream the stream receiving the compressed data.
+     * @return the compressing stream.
+     * @throws IOException if the compressor could not be initialized.
+     */
+    OutputStream compress(OutputStream outputStream) throws IOException;
+
+    /**
+     * Wraps an output stream so that the data written to it is compressed, tuning the compressor for an
+     * input of known size.
+     * @param outputStream the stream receiving the compressed data.
+     * @param size the number of bytes that will be written.
+     * @return the compressing stream.
+     * @throws IOException if the compressor could not be initialized.
+     */
+    default OutputStream compress(final OutputStream outputStream, final long size) throws IOException {
+        return compress(outputStream);
+    }
+
+    /**
+     * Wraps an input stream of compressed data so that the decompressed data is read from it.
+     * @param inputStream the stream of compressed data.
+     * @return the decompressing stream.
+     * @throws IOException if the decompressor could not be initialized.
+     */
+    InputStream decompress(InputStream inputStream) throws IOException;
+}
@@ -0,0 +1,145 @@
+package se.miun.dt133g.zkgitclient.compression;
+
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Factory class responsible for providing compression codecs and for the header of repository archives.
+ * An archive starts with a header of {@link AppConfig#COMPRESSION_MAGIC}, a format version and the id of
+ * the codec. In version 1 the whole archive content is compressed with that codec; from version 2 the
+ * content is an uncompressed TAR stream whose entries are compressed individually and record their own
+ * codec. Archives without the header were written before codecs were selectable and are read as GZIP.
+ * @author Leif Rogell
+ */
+public final class CompressionFactory {
+
+    private static final Map<String, Supplier<CompressionCodec>> CONSTRUCTORS =
+        Map.of(AppConfig.COMPRESSION_GZIP, GzipCodec::new,
+               AppConfig.COMPRESSION_ZSTD, ZstdCodec::new,
+               AppConfig.COMPRESSION_STORE, StoreCodec::new);
+
+    private static final Map<Integer, String> NAMES =
+        Map.of(AppConfig.COMPRESSION_GZIP_ID, AppConfig.COMPRESSION_GZIP,
+               AppConfig.COMPRESSION_ZSTD_ID, AppConfig.COMPRESSION_ZSTD,
+               AppConfig.COMPRESSION_STORE_ID, AppConfig.COMPRESSION_STORE);
+
+    private static final byte[] MAGIC = AppConfig.COMPRESSION_MAGIC.getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_LENGTH = MAGIC.length + 2;
+    private static final Logger LOGGER = ZkGitLogger.getLogger(CompressionFactory.class);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private CompressionFactory() { }
+
+    /**
+     * Returns the codec with the given name.
+     * @param name the codec name (e.g., gzip, zstd, store).
+     * @return the codec.
+     * @throws IllegalArgumentException if the codec name is invalid.
+     */
+    public static CompressionCodec getCodec(final String name) {
+        return Optional.ofNullable(CONSTRUCTORS.get(name))
+            .map(Supplier::get)
+            .orElseThrow(() -> new IllegalArgumentException("Invalid compression codec: " + name));
+    }
+
+    /**
+     * Returns the codec with the given archive header id.
+     * @param id the codec id.
+     * @return the codec.
+     * @throws IllegalArgumentException if the codec id is invalid.
+     */
+    public static CompressionCodec getCodec(final int id) {
+        return Optional.ofNullable(NAMES.get(id))
+            .map(CompressionFactory::getCodec)
+            .orElseThrow(() -> new IllegalArgumentException("Invalid compression codec id: " + id));
+    }
+
+    /**
+     * Returns the codec used to compress a repository. The codec selected by the Git helper for the
+     * repository takes precedence over the system property {@code zkgit.compression.codec.<repo name>},
+     * which takes precedence over the configured default. Unknown codecs, and zstd on platforms without
+     * the native library, fall back to GZIP.
+     * @param repo the repository context of the request.
+     * @return the codec.
+     */
+    public static CompressionCodec resolveCodec(final CurrentUserRepo repo) {
+        String selected = Optional.ofNullable(repo.getCompressionCodec())
+            .or(() -> Optional.ofNullable(System.getProperty(AppConfig.COMPRESSION_CODEC_PROPERTY + "."
+                                                             + repo.getRepoName())))
+            .orElse(AppConfig.COMPRESSION_CODEC);
+        if (!CONSTRUCTORS.containsKey(selected)) {
+            LOGGER.warning("Unknown compression codec " + selected + ", using " + AppConfig.COMPRESSION_GZIP);
+            return getCodec(AppConfig.COMPRESSION_GZIP);
+        }
+        if (AppConfig.COMPRESSION_ZSTD.equals(selected) && !ZstdCodec.isAvailable()) {
+            LOGGER.warning("zstd is not available on this platform, using " + AppConfig.COMPRESSION_GZIP);
+            return getCodec(AppConfig.COMPRESSION_GZIP);
+        }
+        return getCodec(selected);
+    }
+
+    /**
+     * Writes the archive header for the codec. The archive content following the header is written
+     * uncompressed; its entries are compressed individually, see {@link CompressionPolicy}.
+     * @param outputStream the stream receiving the archive.
+     * @param codec the codec compressing the entries of the archive.
+     * @return the stream receiving the archive content.
+     * @throws IOException if the header could not be written.
+     */
+    public static OutputStream createArchive(final OutputStream outputStream,
+                                             final CompressionCodec codec) throws IOException {
+        outputStream.write(MAGIC);
+        outputStream.write(AppConfig.COMPRESSION_FORMAT_VERSION);
+        outputStream.write(codec.getId());
+        LOGGER.fine("Compressing archive entries with " + codec.getName());
+        return outputStream;
+    }
+
+    /**
+     * Reads the archive header and returns a stream of the archive content. Content of version 1 archives
+     * and of archives without the header is decompressed with their codec; entries of later versions are
+     * decompressed individually by the reader of the archive.
+     * @param inputStream the archive.
+     * @return the decompressing stream.
+     * @throws IOException if the header is invalid or could not be read.
+     */
+    public static InputStream openArchive(final InputStream inputStream) throws IOException {
+        PushbackInputStream archive = new PushbackInputStream(inputStream, HEADER_LENGTH);
+        byte[] header = archive.readNBytes(HEADER_LENGTH);
+        if (header.length < HEADER_LENGTH || !Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            LOGGER.fine("Archive without header, decompressing with " + AppConfig.COMPRESSION_GZIP);
+            archive.unread(header);
+            return getCodec(AppConfig.COMPRESSION_GZIP).decompress(archive);
+        }
+        int version = header[MAGIC.length] & 0xFF;
+        if (version < 1 || version > AppConfig.COMPRESSION_FORMAT_VERSION) {
+            throw new IOException("Unsupported archive version: " + version);
+        }
+        CompressionCodec codec;
+        try {
+            codec = getCodec(header[MAGIC.length + 1] & 0xFF);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        if (version > 1) {
+            LOGGER.fine("Archive entries compressed with " + codec.getName());
+            return archive;
+        }
+        LOGGER.fine("Decompressing archive with " + codec.getName());
+        return codec.decompress(archive);
+    }
+}
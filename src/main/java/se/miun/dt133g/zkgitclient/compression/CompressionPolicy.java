@@ -0,0 +1,136 @@
+package se.miun.dt133g.zkgitclient.compression;
+
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Decides per archive entry whether compressing it is worth the CPU time.
+ * Git stores objects zlib-deflated, both loose and in packfiles, so compressing them again costs time without
+ * making the archive smaller. Entries are stored uncompressed when their path identifies them as already
+ * compressed data, when they are too small to gain anything, or when the first block of their content has
+ * an entropy close to that of random data.
+ * @author Leif Rogell
+ */
+public final class CompressionPolicy {
+
+    private static final Set<String> STORED_EXTENSIONS =
+        Set.of("pack", "idx", "rev", "bitmap", "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "jar",
+               "jpg", "jpeg", "png", "gif", "webp", "mp3", "mp4");
+    private static final Pattern LOOSE_OBJECT =
+        Pattern.compile("(^|.*/)objects/[0-9a-f]{2}/[0-9a-f]{38}([0-9a-f]{24})?");
+    private static final double LOG_2 = Math.log(2);
+    private static final Logger LOGGER = ZkGitLogger.getLogger(CompressionPolicy.class);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private CompressionPolicy() { }
+
+    /**
+     * Decides whether an archive entry should be compressed, reading the start of the file to probe it.
+     * @param entryName the path of the entry relative to the repository, separated by '/'.
+     * @param path the file of the entry.
+     * @param size the size of the file.
+     * @return true if the entry should be compressed, false if it should be stored.
+     * @throws IOException if the start of the file could not be read.
+     */
+    public static boolean shouldCompress(final String entryName,
+                                         final Path path,
+                                         final long size) throws IOException {
+        if (!isCandidate(entryName, size)) {
+            return false;
+        }
+        byte[] probe;
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            probe = inputStream.readNBytes(AppConfig.COMPRESSION_PROBE_SIZE);
+        }
+        return hasLowEntropy(entryName, probe, probe.length);
+    }
+
+    /**
+     * Decides whether an archive entry should be compressed, probing content that has already been read.
+     * @param entryName the path of the entry relative to the repository, separated by '/'.
+     * @param content the content of the file, or at least its start.
+     * @param size the size of the file.
+     * @return true if the entry should be compressed, false if it should be stored.
+     */
+    public static boolean shouldCompress(final String entryName,
+                                         final byte[] content,
+                                         final long size) {
+        return isCandidate(entryName, size)
+            && hasLowEntropy(entryName, content, Math.min(content.length, AppConfig.COMPRESSION_PROBE_SIZE));
+    }
+
+    /**
+     * Checks the size and path of an entry for data that is not worth compressing.
+     * @param entryName the path of the entry.
+     * @param size the size of the file.
+     * @return false if the entry is too small, has a compressed file type or is a loose object.
+     */
+    private static boolean isCandidate(final String entryName, final long size) {
+        if (size < AppConfig.COMPRESSION_MIN_ENTRY_SIZE) {
+            return false;
+        }
+        int dot = entryName.lastIndexOf('.');
+        if (dot > entryName.lastIndexOf('/')
+            && STORED_EXTENSIONS.contains(entryName.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+            LOGGER.finest("Storing " + entryName + ": compressed file type");
+            return false;
+        }
+        if (LOOSE_OBJECT.matcher(entryName).matches()) {
+            LOGGER.finest("Storing " + entryName + ": loose object");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the start of an entry looks compressible.
+     * @param entryName the path of the entry.
+     * @param probe the start of the content.
+     * @param length the number of bytes of the probe to use.
+     * @return true if the entropy of the probe is below {@link AppConfig#COMPRESSION_MAX_ENTROPY}.
+     */
+    private static boolean hasLowEntropy(final String entryName, final byte[] probe, final int length) {
+        double entropy = entropy(probe, length);
+        if (entropy > AppConfig.COMPRESSION_MAX_ENTROPY) {
+            LOGGER.finest("Storing " + entryName + ": entropy " + entropy + " bits per byte");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Computes the Shannon entropy of the byte distribution of a block.
+     * Random and compressed data come close to 8 bits per byte, text is typically below 5.
+     * @param data the block.
+     * @param length the number of bytes of the block to use.
+     * @return the entropy in bits per byte.
+     */
+    static double entropy(final byte[] data, final int length) {
+        if (length == 0) {
+            return 0;
+        }
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[data[i] & 0xFF]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p) / LOG_2;
+            }
+        }
+        return entropy;
+    }
+}
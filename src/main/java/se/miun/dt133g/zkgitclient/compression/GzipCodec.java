@@ -0,0 +1,61 @@
+package se.miun.dt133g.zkgitclient.compression;
+
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GZIP codec, the format of archives written before the codec was recorded in the archive header.
+ * @author Leif Rogell
+ */
+public final class GzipCodec implements CompressionCodec {
+
+    /**
+     * Package-private constructor, used by the factory.
+     */
+    GzipCodec() { }
+
+    /**
+     * Returns the name of the codec.
+     * @return the codec name.
+     */
+    @Override
+    public String getName() {
+        return AppConfig.COMPRESSION_GZIP;
+    }
+
+    /**
+     * Returns the id of the codec recorded in the archive header.
+     * @return the codec id.
+     */
+    @Override
+    public int getId() {
+        return AppConfig.COMPRESSION_GZIP_ID;
+    }
+
+    /**
+     * Wraps an output stream in a GZIP compressor.
+     * @param outputStream the stream receiving the compressed data.
+     * @return the compressing stream.
+     * @throws IOException if the GZIP header could not be written.
+     */
+    @Override
+    public OutputStream compress(final OutputStream outputStream) throws IOException {
+        return new GZIPOutputStream(outputStream, AppConfig.SIXFIVE_KB);
+    }
+
+    /**
+     * Wraps an input stream in a GZIP decompressor.
+     * @param inputStream the stream of compressed data.
+     * @return the decompressing stream.
+     * @throws IOException if the GZIP header could not be read.
+     */
+    @Override
+    public InputStream decompress(final InputStream inputStream) throws IOException {
+        return new GZIPInputStream(inputStream, AppConfig.SIXFIVE_KB);
+    }
+}
@@ -0,0 +1,57 @@
+package se.miun.dt133g.zkgitclient.compression;
+
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Codec that stores the data without compression, for repositories consisting of already
+ * compressed content such as packfiles, where compression only costs time.
+ * @author Leif Rogell
+ */
+public final class StoreCodec implements CompressionCodec {
+
+    /**
+     * Package-private constructor, used by the factory.
+     */
+    StoreCodec() { }
+
+    /**
+     * Returns the name of the codec.
+     * @return the codec name.
+     */
+    @Override
+    public String getName() {
+        return AppConfig.COMPRESSION_STORE;
+    }
+
+    /**
+     * Returns the id of the codec recorded in the archive header.
+     * @return the codec id.
+     */
+    @Override
+    public int getId() {
+        return AppConfig.COMPRESSION_STORE_ID;
+    }
+
+    /**
+     * Returns the output stream unchanged.
+     * @param outputStream the stream receiving the data.
+     * @return the same stream.
+     */
+    @Override
+    public OutputStream compress(final OutputStream outputStream) {
+        return outputStream;
+    }
+
+    /**
+     * Returns the input stream unchanged.
+     * @param inputStream the stream of stored data.
+     * @return the same stream.
+     */
+    @Override
+    public InputStream decompress(final InputStream inputStream) {
+        return inputStream;
+    }
+}
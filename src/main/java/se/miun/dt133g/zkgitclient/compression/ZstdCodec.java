@@ -0,0 +1,110 @@
+package se.miun.dt133g.zkgitclient.compression;
+
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Logger;
+
+/**
+ * Zstandard codec using the zstd-jni bindings.
+ * Large inputs are compressed on {@link AppConfig#COMPRESSION_ZSTD_WORKERS} native worker threads with long
+ * distance matching over a window of 2^{@link AppConfig#COMPRESSION_ZSTD_WINDOW_LOG} bytes, which finds
+ * repeated content that gzip's 32 KB window cannot see.
+ * @author Leif Rogell
+ */
+public final class ZstdCodec implements CompressionCodec {
+
+    private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
+
+    /**
+     * Package-private constructor, used by the factory.
+     */
+    ZstdCodec() { }
+
+    /**
+     * Checks whether the native zstd library can be loaded on this platform.
+     * @return true if zstd compression is available.
+     */
+    static boolean isAvailable() {
+        try {
+            Native.load();
+            return Native.isLoaded();
+        } catch (UnsatisfiedLinkError | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the name of the codec.
+     * @return the codec name.
+     */
+    @Override
+    public String getName() {
+        return AppConfig.COMPRESSION_ZSTD;
+    }
+
+    /**
+     * Returns the id of the codec recorded in the archive header.
+     * @return the codec id.
+     */
+    @Override
+    public int getId() {
+        return AppConfig.COMPRESSION_ZSTD_ID;
+    }
+
+    /**
+     * Wraps an output stream in a multithreaded zstd compressor with long distance matching.
+     * @param outputStream the stream receiving the compressed data.
+     * @return the compressing stream.
+     * @throws IOException if the compressor could not be initialized.
+     */
+    @Override
+    public OutputStream compress(final OutputStream outputStream) throws IOException {
+        return compress(outputStream, Long.MAX_VALUE);
+    }
+
+    /**
+     * Wraps an output stream in a zstd compressor. Worker threads and long distance matching are only
+     * enabled for inputs large enough to benefit from them, since both have a fixed setup cost.
+     * @param outputStream the stream receiving the compressed data.
+     * @param size the number of bytes that will be written.
+     * @return the compressing stream.
+     * @throws IOException if the compressor could not be initialized.
+     */
+    @Override
+    public OutputStream compress(final OutputStream outputStream, final long size) throws IOException {
+        ZstdOutputStream zstdOut = new ZstdOutputStream(outputStream, AppConfig.COMPRESSION_ZSTD_LEVEL);
+        zstdOut.setChecksum(true);
+        if (size >= AppConfig.COMPRESSION_ZSTD_WORKER_MIN_SIZE) {
+            LOGGER.finest("zstd level " + AppConfig.COMPRESSION_ZSTD_LEVEL
+                          + ", workers " + AppConfig.COMPRESSION_ZSTD_WORKERS
+                          + ", window log " + AppConfig.COMPRESSION_ZSTD_WINDOW_LOG);
+            zstdOut.setWorkers(AppConfig.COMPRESSION_ZSTD_WORKERS);
+            if (AppConfig.COMPRESSION_ZSTD_WINDOW_LOG > 0) {
+                zstdOut.setLong(AppConfig.COMPRESSION_ZSTD_WINDOW_LOG);
+            }
+        }
+        return new BufferedOutputStream(zstdOut, (int) Math.min(AppConfig.SIXFIVE_KB, Math.max(size, 1)));
+    }
+
+    /**
+     * Wraps an input stream in a zstd decompressor accepting the largest supported window.
+     * @param inputStream the stream of compressed data.
+     * @return the decompressing stream.
+     * @throws IOException if the decompressor could not be initialized.
+     */
+    @Override
+    public InputStream decompress(final InputStream inputStream) throws IOException {
+        ZstdInputStream zstdIn = new ZstdInputStream(inputStream);
+        zstdIn.setLongMax(AppConfig.COMPRESSION_ZSTD_MAX_WINDOW_LOG);
+        return zstdIn;
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Provides the compression codecs used for repository archives.
+ *
+ * Every codec implements the {@link se.miun.dt133g.zkgitclient.compression.CompressionCodec} interface.
+ * The {@link se.miun.dt133g.zkgitclient.compression.CompressionFactory} creates codecs by name and writes
+ * and reads the archive header recording the codec, so that an archive is always decompressed with the
+ * codec it was compressed with. The {@link se.miun.dt133g.zkgitclient.compression.CompressionPolicy} decides
+ * per archive entry whether compressing it is worthwhile.
+ *
+ * Available codecs:
+ * <ul>
+ *   <li>GZIP - {@link se.miun.dt133g.zkgitclient.compression.GzipCodec}</li>
+ *   <li>Zstandard with worker threads and long distance matching -
+ * {@link se.miun.dt133g.zkgitclient.compression.ZstdCodec}</li>
+ *   <li>Store without compression - {@link se.miun.dt133g.zkgitclient.compression.StoreCodec}</li>
+ * </ul>
+ */
+package se.miun.dt133g.zkgitclient.compression;
@@ -3,9 +3,17 @@ package se.miun.dt133g.zkgitclient.connection;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
@@ -22,6 +30,7 @@ public final class ConnectionManager {
     private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
     private CheckConnection checkConnection;
     private HttpsConnection httpsConnection;
+    private TlsConfiguration tlsConfiguration;
     private GitSocket gitSocket;
 
     private final String domain = AppConfig.API_DOMAIN;
@@ -31,15 +40,44 @@ public final class ConnectionManager {
     /**
      * Private constructor to initialize the ConnectionManager, checking internet
      * connectivity and setting up the HTTPS connection and GitSocket.
+     * @throws IllegalStateException if the pinned keys or the trust store cannot be used.
      */
     private ConnectionManager() {
         this.checkConnection = new CheckConnection();
         if (checkConnection.getInternetConnectivity()) {
-            this.httpsConnection = new HttpsConnection();
+            try {
+                this.tlsConfiguration = new TlsConfiguration();
+                this.httpsConnection = new HttpsConnection(createHttpClient(), tlsConfiguration);
+            } catch (GeneralSecurityException | IOException e) {
+                LOGGER.severe("Could not configure TLS: " + e.getMessage());
+                throw new IllegalStateException("Invalid TLS configuration, check the zkgit.tls properties: "
+                                                + e.getMessage(), e);
+            }
         }
         this.gitSocket = GitSocket.INSTANCE;
     }
 
+    /**
+     * Creates the client shared by all requests to the API. The client keeps its connections alive and
+     * reuses them, and their TLS sessions, across requests. It negotiates HTTP/2, multiplexing concurrent
+     * requests over one connection, and falls back to HTTP/1.1 when the server does not support it.
+     * @return the client.
+     */
+    private HttpClient createHttpClient() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .sslContext(tlsConfiguration.getClientContext())
+            .connectTimeout(Duration.ofMillis(AppConfig.TIMEOUT_LIMIT))
+            .executor(Executors.newCachedThreadPool(runnable -> {
+                        Thread thread = new Thread(runnable,
+                                                   AppConfig.HTTP_THREAD_PREFIX + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }))
+            .build();
+    }
+
     /**
      * Sends a GET or POST request with the provided parameters.
      * @param postDataParams the data parameters to be sent with the request.
@@ -49,6 +87,21 @@ public final class ConnectionManager {
         return this.httpsConnection.sendGetPostRequest(domain, port, postDataParams);
     }
 
+    /**
+     * Downloads the response of a POST request into a file with parallel range requests, resuming an
+     * earlier partial download of the same version of the file.
+     * @param postDataParams the data parameters to be sent with the request.
+     * @param target the file to download to.
+     * @param identity identifies the version of the remote file.
+     * @return the downloaded file, deleted when the stream is closed, the response stream if the server does
+     *         not support ranges, or null if the download failed.
+     */
+    public InputStream sendRangedGetPostRequest(final Map<String, String> postDataParams,
+                                                final Path target,
+                                                final String identity) {
+        return this.httpsConnection.sendRangedGetPostRequest(domain, port, postDataParams, target, identity);
+    }
+
     /**
      * Sends a POST request with the provided parameters.
      * @param postDataParams the data parameters to be sent with the request.
@@ -62,7 +115,18 @@ public final class ConnectionManager {
     }
 
     /**
-     * Sends a POST request with file upload and the provided parameters.
+     * Sends a POST request with the provided parameters without blocking the calling thread.
+     * @param postDataParams the data parameters to be sent with the request.
+     * @return a future completed with the response as a String.
+     */
+    public CompletableFuture<String> sendPostRequestAsync(final Map<String, String> postDataParams) {
+        LOGGER.finer("Sending async POST Request to: https://" + domain + ":" + port);
+        return this.httpsConnection.sendPostRequestAsync(domain, port, postDataParams);
+    }
+
+    /**
+     * Sends a POST request with file upload and the provided parameters. With
+     * {@link AppConfig#UPLOAD_PARTS_ENABLED} the file is sent as resumable numbered parts.
      * @param postDataParams the data parameters to be sent with the request.
      * @param fileInputStream the InputStream of the file to be uploaded.
      * @param fileName the name of the file to be uploaded.
@@ -71,7 +135,23 @@ public final class ConnectionManager {
     public String sendFilePostRequest(final Map<String, String> postDataParams,
                                       final InputStream fileInputStream,
                                       final String fileName) {
-        return this.httpsConnection.sendFilePostRequest(IP, port, fileInputStream, fileName, postDataParams);
+        return AppConfig.UPLOAD_PARTS_ENABLED
+            ? this.httpsConnection.sendFilePartsPostRequest(IP, port, fileInputStream, fileName, postDataParams)
+            : this.httpsConnection.sendFilePostRequest(IP, port, fileInputStream, fileName, postDataParams);
+    }
+
+    /**
+     * Sends a POST request with file upload without blocking the calling thread.
+     * @param postDataParams the data parameters to be sent with the request.
+     * @param fileInputStream the InputStream of the file to be uploaded.
+     * @param fileName the name of the file to be uploaded.
+     * @return a future completed with the response as a String.
+     */
+    public CompletableFuture<String> sendFilePostRequestAsync(final Map<String, String> postDataParams,
+                                                              final InputStream fileInputStream,
+                                                              final String fileName) {
+        return this.httpsConnection.sendFilePostRequestAsync(IP, port, fileInputStream, fileName, postDataParams,
+                                                             AppConfig.UPLOAD_PARTS_ENABLED);
     }
 
     /**
@@ -159,4 +239,44 @@ public final class ConnectionManager {
     public int getGitPort() {
         return gitSocket.getGitPort();
     }
+
+    /**
+     * Returns the number of TLS sessions cached for resumption.
+     * @return the number of cached sessions, or 0 if TLS is not configured.
+     */
+    public int getTlsCachedSessions() {
+        return tlsConfiguration == null ? 0 : tlsConfiguration.getCachedSessions();
+    }
+
+    /**
+     * Returns the number of completed upload handshakes.
+     * @return the number of handshakes, or 0 if TLS is not configured.
+     */
+    public long getTlsHandshakes() {
+        return tlsConfiguration == null ? 0 : tlsConfiguration.getHandshakes();
+    }
+
+    /**
+     * Returns the number of upload handshakes that resumed a cached TLS session.
+     * @return the number of resumed handshakes, or 0 if TLS is not configured.
+     */
+    public long getTlsResumedHandshakes() {
+        return tlsConfiguration == null ? 0 : tlsConfiguration.getResumedHandshakes();
+    }
+
+    /**
+     * Returns the number of open connections from Git helpers.
+     * @return the number of active Git connections.
+     */
+    public int getGitConnections() {
+        return gitSocket.getActiveConnections();
+    }
+
+    /**
+     * Returns the number of Git commands waiting for a free worker thread.
+     * @return the Git command queue depth.
+     */
+    public int getGitQueueDepth() {
+        return gitSocket.getQueueDepth();
+    }
 }
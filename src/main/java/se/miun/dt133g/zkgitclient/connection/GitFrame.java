@@ -0,0 +1,155 @@
+package se.miun.dt133g.zkgitclient.connection;
+
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A frame of the binary Git helper protocol. A frame consists of a one byte type, a four byte request id,
+ * a four byte payload length and the payload, all integers big-endian. The request id ties the progress
+ * and the response frames of a request to the request frame, so a connection may have several requests in
+ * flight and receive their responses in any order.
+ *
+ * A connection chooses the binary protocol by starting with a hello: a zero byte, the magic
+ * {@link AppConfig#GIT_FRAME_MAGIC} and the highest protocol version the helper speaks. The server answers
+ * with a hello of its own carrying the version both sides use. A connection starting with any other byte
+ * speaks the legacy line protocol.
+ * @author Leif Rogell
+ */
+final class GitFrame {
+
+    static final byte REQUEST = 1;
+    static final byte PROGRESS = 2;
+    static final byte RESPONSE = 3;
+    static final byte ERROR = 4;
+    static final int HEADER_LENGTH = 9;
+    static final int HELLO_LENGTH = 2 + AppConfig.GIT_FRAME_MAGIC.length();
+    static final char FIELD_SEPARATOR = '\0';
+
+    private final byte type;
+    private final int requestId;
+    private final String payload;
+
+    /**
+     * Creates a frame.
+     * @param type the frame type.
+     * @param requestId the id of the request the frame belongs to.
+     * @param payload the payload.
+     */
+    private GitFrame(final byte type, final int requestId, final String payload) {
+        this.type = type;
+        this.requestId = requestId;
+        this.payload = payload;
+    }
+
+    /**
+     * Returns the frame type.
+     * @return one of {@link #REQUEST}, {@link #PROGRESS}, {@link #RESPONSE} and {@link #ERROR}.
+     */
+    byte getType() {
+        return type;
+    }
+
+    /**
+     * Returns the id of the request the frame belongs to.
+     * @return the request id.
+     */
+    int getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Returns the fields of a request frame: the command followed by its arguments, separated by
+     * {@link #FIELD_SEPARATOR}, so arguments may contain spaces.
+     * @return the fields.
+     */
+    String[] getFields() {
+        return payload.split(String.valueOf(FIELD_SEPARATOR), -1);
+    }
+
+    /**
+     * Encodes a frame.
+     * @param type the frame type.
+     * @param requestId the id of the request the frame belongs to.
+     * @param payload the payload, encoded as UTF-8.
+     * @return the frame, ready to be written.
+     */
+    static ByteBuffer encode(final byte type, final int requestId, final String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + bytes.length);
+        frame.put(type).putInt(requestId).putInt(bytes.length).put(bytes);
+        return frame.flip();
+    }
+
+    /**
+     * Decodes the next frame of a buffer if the buffer holds all of it.
+     * @param buffer the received bytes, in read mode; the position is moved past the frame if one is decoded.
+     * @return the frame, or null if the buffer does not hold a complete frame yet.
+     * @throws IOException if the frame is longer than {@link AppConfig#GIT_MAX_LINE_LENGTH} or its type is
+     *         unknown.
+     */
+    static GitFrame decode(final ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_LENGTH) {
+            return null;
+        }
+        int start = buffer.position();
+        byte type = buffer.get(start);
+        int requestId = buffer.getInt(start + 1);
+        int length = buffer.getInt(start + 5);
+        if (type < REQUEST || type > ERROR) {
+            throw new IOException("Unknown frame type " + type);
+        }
+        if (length < 0 || length > AppConfig.GIT_MAX_LINE_LENGTH) {
+            throw new IOException("Frame of " + length + " bytes exceeds " + AppConfig.GIT_MAX_LINE_LENGTH);
+        }
+        if (buffer.remaining() < HEADER_LENGTH + length) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.position(start + HEADER_LENGTH);
+        buffer.get(payload);
+        return new GitFrame(type, requestId, new String(payload, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks whether the first byte of a connection starts a hello.
+     * @param first the first byte received.
+     * @return true if the connection speaks the binary protocol.
+     */
+    static boolean startsHello(final byte first) {
+        return first == 0;
+    }
+
+    /**
+     * Reads the hello of a helper and picks the protocol version.
+     * @param buffer the received bytes, in read mode; the position is moved past the hello if one is read.
+     * @return the version both sides speak, or 0 if the buffer does not hold the whole hello yet.
+     * @throws IOException if the hello is malformed.
+     */
+    static int readHello(final ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HELLO_LENGTH) {
+            return 0;
+        }
+        byte[] hello = new byte[HELLO_LENGTH];
+        buffer.get(hello);
+        String magic = new String(hello, 1, AppConfig.GIT_FRAME_MAGIC.length(), StandardCharsets.US_ASCII);
+        int version = hello[HELLO_LENGTH - 1];
+        if (hello[0] != 0 || !AppConfig.GIT_FRAME_MAGIC.equals(magic) || version < 1) {
+            throw new IOException("Malformed protocol hello");
+        }
+        return Math.min(version, AppConfig.GIT_FRAME_VERSION);
+    }
+
+    /**
+     * Encodes the hello of the server.
+     * @param version the protocol version picked.
+     * @return the hello, ready to be written.
+     */
+    static ByteBuffer hello(final int version) {
+        ByteBuffer hello = ByteBuffer.allocate(HELLO_LENGTH);
+        hello.put((byte) 0).put(AppConfig.GIT_FRAME_MAGIC.getBytes(StandardCharsets.US_ASCII)).put((byte) version);
+        return hello.flip();
+    }
+}
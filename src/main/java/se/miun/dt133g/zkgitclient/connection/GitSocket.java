@@ -4,20 +4,49 @@ import se.miun.dt133g.zkgitclient.commands.CommandManager;
 import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
+import se.miun.dt133g.zkgitclient.support.Utils;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
  * Manages the Git server socket, handling client connections and executing Git commands.
- * Provides methods for starting, stopping, and configuring the server, as well as handling
- * client requests and interacting with the CommandManager.
+ * Connections are accepted and read by a single selector thread, and each received command
+ * is handed to a bounded pool of worker threads that interact with the CommandManager. Helpers speak
+ * either the legacy line protocol or the binary frame protocol described in {@link GitFrame}, over
+ * TCP on the loopback interface only or over the Unix domain socket at
+ * {@link AppConfig#GIT_UNIX_SOCKET_PATH}.
+ * Provides methods for starting, stopping, and configuring the server.
  * @author Leif Rogell
  */
 public final class GitSocket {
@@ -27,8 +56,14 @@ public final class GitSocket {
     private final String ERROR_MESSAGE = AppConfig.ERROR_KEY
         + AppConfig.COLON_SEPARATOR + AppConfig.SPACE_SEPARATOR;
 
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final ThreadPoolExecutor commandExecutor;
+    private final int maxConnections;
+
     private int port;
-    private ServerSocket serverSocket;
+    private volatile Selector selector;
+    private volatile ServerSocketChannel serverChannel;
+    private volatile ServerSocketChannel unixChannel;
     private Thread serverThread;
 
     /**
@@ -43,27 +78,62 @@ public final class GitSocket {
      * @param port the port number for the Git server to listen on.
      */
     private GitSocket(final int port) {
+        this(port, AppConfig.GIT_MAX_CONNECTIONS, AppConfig.GIT_WORKER_THREADS);
+    }
+
+    /**
+     * Constructor initializing the server with a specified port, connection cap and worker count.
+     * The worker queue is sized to the connection cap times {@link AppConfig#GIT_MAX_IN_FLIGHT}, since
+     * no connection has more commands queued or executing at a time.
+     * @param port the port number for the Git server to listen on.
+     * @param maxConnections the maximum number of simultaneously open client connections.
+     * @param workerThreads the number of threads executing Git commands.
+     */
+    private GitSocket(final int port, final int maxConnections, final int workerThreads) {
         this.port = port;
-        LOGGER.config("Setting Git Port: " + port);
+        this.maxConnections = Math.max(1, maxConnections);
+        AtomicInteger threadCount = new AtomicInteger();
+        int queueCapacity = this.maxConnections * Math.max(1, AppConfig.GIT_MAX_IN_FLIGHT);
+        this.commandExecutor = new ThreadPoolExecutor(Math.max(1, workerThreads),
+                                                      Math.max(1, workerThreads),
+                                                      0L, TimeUnit.MILLISECONDS,
+                                                      new ArrayBlockingQueue<>(queueCapacity),
+                                                      runnable -> {
+                                                          Thread thread = new Thread(runnable,
+                                                              AppConfig.GIT_WORKER_THREAD_PREFIX
+                                                              + threadCount.incrementAndGet());
+                                                          thread.setDaemon(true);
+                                                          return thread;
+                                                      });
+        LOGGER.config("Setting Git Port: " + port + ", max connections: " + this.maxConnections
+                      + ", workers: " + commandExecutor.getCorePoolSize());
         serverThread = new Thread(this::startServer);
         serverThread.start();
     }
 
     /**
-     * Starts the server and listens for incoming client connections. Each client connection
-     * is handled in a new thread. If the server is interrupted, it stops accepting new clients.
+     * Starts the server and runs the selector loop. New connections are accepted until the
+     * connection cap is reached, after which accepting pauses until a connection is closed.
+     * If the server is interrupted, it stops accepting new clients.
      */
     private void startServer() {
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            this.serverSocket = serverSocket;
+        try (Selector selector = Selector.open();
+             ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            this.selector = selector;
+            this.serverChannel = serverChannel;
+            this.unixChannel = openUnixListener(selector);
             LOGGER.info("Starting Git Server...");
 
-            while (!serverThread.isInterrupted()) {
+            while (!serverThread.isInterrupted() && serverChannel.isOpen()) {
                 try {
-                    Socket clientSocket = serverSocket.accept();
-                    new Thread(() -> handleClient(clientSocket)).start();
+                    selector.select();
+                    processSelectedKeys(selector);
+                    updateAcceptInterest(selector);
                 } catch (Exception e) {
-                    if (serverThread.isInterrupted()) {
+                    if (serverThread.isInterrupted() || !serverChannel.isOpen()) {
                         this.port = 0;
                         break;
                     }
@@ -71,12 +141,185 @@ public final class GitSocket {
                     LOGGER.severe(AppConfig.ERROR_SOCKET_INTERRUPT);
                 }
             }
+            selector.keys().forEach(key -> closeQuietly(key.channel()));
+            deleteUnixSocket();
         } catch (Exception e) {
             this.port = 0;
             LOGGER.severe(AppConfig.ERROR_NO_FREE_PORT);
         }
     }
 
+    /**
+     * Dispatches the ready keys of the selector to the accept, read and write handlers.
+     * @param selector the selector whose selected keys should be processed.
+     */
+    private void processSelectedKeys(final Selector selector) {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            try {
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    acceptClient((ServerSocketChannel) key.channel(), selector);
+                    continue;
+                }
+                ClientConnection connection = (ClientConnection) key.attachment();
+                if (key.isReadable()) {
+                    connection.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.fine("Closing Git connection: " + e.getMessage());
+                if (key.attachment() instanceof ClientConnection) {
+                    ((ClientConnection) key.attachment()).close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts a pending client connection and registers it for reading.
+     * @param serverChannel the listening channel.
+     * @param selector the selector to register the client with.
+     * @throws IOException if the connection cannot be accepted or configured.
+     */
+    private void acceptClient(final ServerSocketChannel serverChannel,
+                              final Selector selector) throws IOException {
+        if (activeConnections.get() >= maxConnections) {
+            return;
+        }
+        SocketChannel clientChannel = serverChannel.accept();
+        if (clientChannel == null) {
+            return;
+        }
+        clientChannel.configureBlocking(false);
+        activeConnections.incrementAndGet();
+        SelectionKey clientKey = clientChannel.register(selector, SelectionKey.OP_READ);
+        clientKey.attach(new ClientConnection(clientChannel, clientKey));
+        LOGGER.finest("Accepted Git connection, active: " + activeConnections.get());
+    }
+
+    /**
+     * Pauses or resumes accepting connections depending on whether the connection cap is reached.
+     * Clients arriving while paused wait in the operating system backlog instead of consuming threads.
+     * @param selector the selector the listening channels are registered with.
+     */
+    private void updateAcceptInterest(final Selector selector) {
+        int interest = activeConnections.get() >= maxConnections ? 0 : SelectionKey.OP_ACCEPT;
+        for (ServerSocketChannel listener : new ServerSocketChannel[] {serverChannel, unixChannel}) {
+            SelectionKey acceptKey = listener == null ? null : listener.keyFor(selector);
+            if (acceptKey != null && acceptKey.isValid()) {
+                acceptKey.interestOps(interest);
+            }
+        }
+    }
+
+    /**
+     * Opens the Unix domain socket listener at {@link AppConfig#GIT_UNIX_SOCKET_PATH} next to the TCP one.
+     * Local helpers connecting through it skip the loopback TCP stack, and the socket is not reachable
+     * from the network. The socket is only accessible to the current user.
+     * @param selector the selector to register the listener with.
+     * @return the listener, or null if it is disabled or could not be opened safely.
+     */
+    private ServerSocketChannel openUnixListener(final Selector selector) {
+        if (!AppConfig.GIT_UNIX_SOCKET_ENABLED) {
+            return null;
+        }
+        Path path = Paths.get(AppConfig.GIT_UNIX_SOCKET_PATH).toAbsolutePath();
+        ServerSocketChannel channel = null;
+        try {
+            prepareUnixSocketPath(path);
+            channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.bind(UnixDomainSocketAddress.of(path));
+            restrictToOwner(path, "rw-------");
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_ACCEPT);
+            LOGGER.config("Listening for Git helpers on " + path);
+            return channel;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.warning("Git Unix socket not available: " + e.getMessage());
+            if (channel != null) {
+                closeQuietly(channel);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Makes sure the Unix socket can be bound safely. The directory of the socket is created private to the
+     * current user if missing, and must otherwise be owned by the current user and not writable by anyone
+     * else. A socket left behind by an earlier run is removed, unless another process still listens on it.
+     * @param path the path of the socket.
+     * @throws IOException if the directory is not private, the path is not a socket or the socket is in use.
+     */
+    private void prepareUnixSocketPath(final Path path) throws IOException {
+        Path directory = path.getParent();
+        if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectories(directory);
+            restrictToOwner(directory, "rwx------");
+        }
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException(directory + " is not a directory");
+        }
+        if (!System.getProperty("user.name").equals(Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS).getName())) {
+            throw new IOException(directory + " is not owned by the current user");
+        }
+        if (Files.getFileStore(directory).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(directory,
+                                                                                 LinkOption.NOFOLLOW_LINKS);
+            if (permissions.contains(PosixFilePermission.GROUP_WRITE)
+                || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                throw new IOException(directory + " is writable by other users");
+            }
+        }
+
+        if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            if (!Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther()) {
+                throw new IOException(path + " exists and is not a socket");
+            }
+            SocketChannel probe;
+            try {
+                probe = SocketChannel.open(UnixDomainSocketAddress.of(path));
+            } catch (ConnectException e) {
+                Files.delete(path);
+                return;
+            }
+            probe.close();
+            throw new IOException(path + " is in use by another process");
+        }
+    }
+
+    /**
+     * Restricts a file to the given POSIX permissions, where the file system supports them.
+     * @param path the file.
+     * @param permissions the permissions in the format of {@link PosixFilePermissions#fromString(String)}.
+     * @throws IOException if the permissions could not be set.
+     */
+    private void restrictToOwner(final Path path, final String permissions) throws IOException {
+        if (Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
+        }
+    }
+
+    /**
+     * Removes the Unix socket file of this server, if it has one.
+     */
+    private void deleteUnixSocket() {
+        if (unixChannel == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Paths.get(AppConfig.GIT_UNIX_SOCKET_PATH).toAbsolutePath());
+        } catch (IOException e) {
+            LOGGER.finest(e.getMessage());
+        }
+    }
+
     /**
      * Restarts the server with a new port.
      * @param newPort the new port number to set for the server.
@@ -89,61 +332,51 @@ public final class GitSocket {
     }
 
     /**
-     * Handles incoming client connections, processes Git commands, and sends the response back
-     * to the client. Commands are parsed and executed using the CommandManager.
-     * @param clientSocket the client socket for communication.
+     * Processes a single Git command and executes it using the CommandManager.
+     * @param inputItems the command followed by the repository path, signature and compression codec,
+     *        each of which may be omitted.
+     * @param repoContext the repository context the command runs in.
+     * @return the response of the command.
      */
-    private void handleClient(final Socket clientSocket) {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-             PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)) {
-
-            String inputLine;
-            while ((inputLine = in.readLine()) != null) {
-                LOGGER.finest("Received command: " + inputLine);
-                String[] inputItems = inputLine.split(AppConfig.SPACE_SEPARATOR);
-                if (inputItems.length > 1) {
-                    CurrentUserRepo.getInstance()
-                        .setRepoName(inputItems[1].substring(inputItems[1].lastIndexOf("/") + 1));
-                    CurrentUserRepo.getInstance().setRepoPath(inputItems[1]);
-                    if (inputItems.length > 2) {
-                        CurrentUserRepo.getInstance().setRepoSignature(inputItems[2]);
-                    }
-                }
-                Map<String, String> responseMap = new HashMap<>();
-                responseMap = CommandManager.INSTANCE.executeCommand(inputItems[0]);
-
-                LOGGER.fine("GitSocketResponseMap: " + responseMap.toString()
-                            + ", Command: " + inputLine.split(" ")[0]);
-
-                if (responseMap.containsKey(AppConfig.COMMAND_SUCCESS)) {
-                    out.println(responseMap.toString());
-                } else {
-                    out.println(responseMap.get(AppConfig.ERROR_KEY));
-                }
+    private Map<String, String> handleCommand(final String[] inputItems,
+                                              final CurrentUserRepo repoContext) {
+        LOGGER.finest("Received command: " + String.join(AppConfig.SPACE_SEPARATOR, inputItems));
+        if (inputItems.length > 1) {
+            repoContext.setRepoName(inputItems[1].substring(inputItems[1].lastIndexOf("/") + 1));
+            repoContext.setRepoPath(inputItems[1]);
+            if (inputItems.length > 2) {
+                repoContext.setRepoSignature(inputItems[2]);
             }
-        } catch (Exception e) {
-            LOGGER.severe(e.getMessage());
-            e.printStackTrace();
-        } finally {
-            try {
-                clientSocket.close();
-            } catch (Exception e) {
-                LOGGER.severe(e.getMessage());
+            if (inputItems.length > 3) {
+                repoContext.setCompressionCodec(inputItems[3]);
             }
         }
+        Map<String, String> responseMap = CommandManager.INSTANCE.executeCommand(inputItems[0], repoContext);
+
+        LOGGER.fine("GitSocketResponseMap: " + responseMap.toString()
+                    + ", Command: " + inputItems[0]);
+        return responseMap;
     }
 
     /**
-     * Stops the server and closes any open server socket and associated threads.
+     * Stops the server and closes any open server channel, client connections and worker threads.
      */
     protected void stopServer() {
         try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
+            if (serverChannel != null && serverChannel.isOpen()) {
+                serverChannel.close();
+            }
+            if (unixChannel != null && unixChannel.isOpen()) {
+                unixChannel.close();
+                deleteUnixSocket();
             }
             if (serverThread != null) {
                 serverThread.interrupt();
             }
+            if (selector != null) {
+                selector.wakeup();
+            }
+            commandExecutor.shutdown();
         } catch (Exception e) {
             LOGGER.severe(e.getMessage());
         }
@@ -166,4 +399,345 @@ public final class GitSocket {
         LOGGER.config("Setting Git Port: " + port);
         startServer();
     }
+
+    /**
+     * Returns the number of currently open client connections.
+     * @return the number of active Git connections.
+     */
+    protected int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Returns the number of commands waiting for a free worker thread.
+     * @return the current depth of the command queue.
+     */
+    protected int getQueueDepth() {
+        return commandExecutor.getQueue().size();
+    }
+
+    /**
+     * Closes a channel, ignoring any exception raised while closing.
+     * @param channel the channel to close.
+     */
+    private void closeQuietly(final java.nio.channels.Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.finest(e.getMessage());
+        }
+    }
+
+    /**
+     * The protocol spoken on a connection, decided by its first byte.
+     */
+    private enum Protocol {
+        UNDECIDED,
+        LINES,
+        FRAMES
+    }
+
+    /**
+     * A received command waiting for or running on the worker pool.
+     */
+    private static final class PendingCommand {
+
+        private final int requestId;
+        private final String[] fields;
+
+        /**
+         * Creates a pending command.
+         * @param requestId the request id of a frame, or 0 for a command line.
+         * @param fields the command followed by its arguments.
+         */
+        private PendingCommand(final int requestId, final String[] fields) {
+            this.requestId = requestId;
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * State of a single client connection. Incoming bytes are split into commands on the selector
+     * thread and executed on the worker pool. A connection speaking the line protocol executes its lines
+     * one at a time and in order, all in the same repository context. A connection speaking the frame
+     * protocol executes up to {@link AppConfig#GIT_MAX_IN_FLIGHT} requests at a time, each in a context of
+     * its own, and streams their progress. Responses are queued and written by the selector thread when
+     * the channel becomes writable. Reading pauses while {@link AppConfig#GIT_MAX_PENDING} commands wait
+     * for execution, so a client cannot queue an unbounded number of commands.
+     */
+    private final class ClientConnection {
+
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(AppConfig.FOUR_KB);
+        private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+        private final Queue<PendingCommand> pendingCommands = new ArrayDeque<>();
+        private final Queue<ByteBuffer> pendingWrites = new ArrayDeque<>();
+        private final CurrentUserRepo repoContext = new CurrentUserRepo();
+        private Protocol protocol = Protocol.UNDECIDED;
+        private ByteBuffer frameBuffer;
+        private int version;
+        private int maxInFlight = 1;
+        private int inFlight = 0;
+        private boolean inputShutdown = false;
+        private boolean closed = false;
+
+        /**
+         * Creates the connection state for an accepted channel.
+         * @param channel the client channel.
+         * @param key the selection key of the client channel.
+         */
+        private ClientConnection(final SocketChannel channel, final SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * Reads available bytes from the channel and dispatches every complete command.
+         * @throws IOException if reading fails, a length limit is exceeded or a frame is malformed.
+         */
+        private void read() throws IOException {
+            int bytesRead = channel.read(readBuffer);
+            if (bytesRead == -1) {
+                shutdownInput();
+                return;
+            }
+            readBuffer.flip();
+            if (protocol == Protocol.UNDECIDED && readBuffer.hasRemaining()) {
+                if (GitFrame.startsHello(readBuffer.get(readBuffer.position()))) {
+                    protocol = Protocol.FRAMES;
+                    frameBuffer = ByteBuffer.allocate(GitFrame.HEADER_LENGTH + AppConfig.GIT_MAX_LINE_LENGTH
+                                                      + AppConfig.FOUR_KB);
+                } else {
+                    protocol = Protocol.LINES;
+                }
+            }
+            if (protocol == Protocol.FRAMES) {
+                readFrames();
+            } else {
+                readLines();
+            }
+            readBuffer.clear();
+        }
+
+        /**
+         * Splits the received bytes into command lines.
+         * @throws IOException if the line length limit is exceeded.
+         */
+        private void readLines() throws IOException {
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    dispatch(new PendingCommand(0, lineBuffer.toString(Charset.defaultCharset())
+                                                .split(AppConfig.SPACE_SEPARATOR)));
+                    lineBuffer.reset();
+                } else if (b != '\r') {
+                    lineBuffer.write(b);
+                }
+            }
+            if (lineBuffer.size() > AppConfig.GIT_MAX_LINE_LENGTH) {
+                throw new IOException("Command line exceeds " + AppConfig.GIT_MAX_LINE_LENGTH + " bytes");
+            }
+        }
+
+        /**
+         * Reads the hello and then the request frames from the received bytes. A partial frame is kept
+         * until the rest of it arrives.
+         * @throws IOException if the hello or a frame is malformed.
+         */
+        private void readFrames() throws IOException {
+            frameBuffer.put(readBuffer);
+            frameBuffer.flip();
+            try {
+                if (version == 0) {
+                    version = GitFrame.readHello(frameBuffer);
+                    if (version == 0) {
+                        return;
+                    }
+                    maxInFlight = Math.max(1, AppConfig.GIT_MAX_IN_FLIGHT);
+                    enqueue(GitFrame.hello(version));
+                    LOGGER.finest("Git connection speaks frame protocol version " + version);
+                }
+                GitFrame frame;
+                while ((frame = GitFrame.decode(frameBuffer)) != null) {
+                    if (frame.getType() != GitFrame.REQUEST) {
+                        throw new IOException("Unexpected frame type " + frame.getType());
+                    }
+                    dispatch(new PendingCommand(frame.getRequestId(), frame.getFields()));
+                }
+            } finally {
+                frameBuffer.compact();
+            }
+        }
+
+        /**
+         * Queues a command for execution and starts as many commands as the connection may run at a time.
+         * @param command the received command.
+         */
+        private synchronized void dispatch(final PendingCommand command) {
+            pendingCommands.add(command);
+            submitPending();
+            if (!closed && pendingCommands.size() >= AppConfig.GIT_MAX_PENDING) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Submits pending commands of this connection to the worker pool while fewer than the allowed
+         * number are running.
+         */
+        private synchronized void submitPending() {
+            while (!closed && inFlight < maxInFlight && !pendingCommands.isEmpty()) {
+                PendingCommand command = pendingCommands.poll();
+                inFlight++;
+                try {
+                    commandExecutor.execute(() -> execute(command));
+                } catch (RejectedExecutionException e) {
+                    LOGGER.warning("Git command rejected: " + e.getMessage());
+                    inFlight--;
+                    if (protocol == Protocol.FRAMES) {
+                        respondFrame(GitFrame.ERROR, command.requestId, AppConfig.ERROR_SOCKET_INTERRUPT);
+                    } else {
+                        pendingCommands.clear();
+                        respond(ERROR_MESSAGE + AppConfig.ERROR_SOCKET_INTERRUPT);
+                    }
+                }
+            }
+            if (!closed && !inputShutdown && pendingCommands.size() < AppConfig.GIT_MAX_PENDING
+                && (key.interestOps() & SelectionKey.OP_READ) == 0) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                key.selector().wakeup();
+            }
+            closeIfDone();
+        }
+
+        /**
+         * Executes a command on a worker thread and continues with the next pending command.
+         * @param command the command to execute.
+         */
+        private void execute(final PendingCommand command) {
+            try {
+                if (protocol == Protocol.FRAMES) {
+                    CurrentUserRepo requestContext = new CurrentUserRepo();
+                    requestContext.setProgressListener(step ->
+                                                       respondFrame(GitFrame.PROGRESS, command.requestId, step));
+                    Map<String, String> responseMap = handleCommand(command.fields, requestContext);
+                    if (responseMap.containsKey(AppConfig.COMMAND_SUCCESS)) {
+                        respondFrame(GitFrame.RESPONSE, command.requestId,
+                                     Utils.getInstance().mapToString(responseMap));
+                    } else {
+                        respondFrame(GitFrame.ERROR, command.requestId,
+                                     String.valueOf(responseMap.get(AppConfig.ERROR_KEY)));
+                    }
+                } else {
+                    Map<String, String> responseMap = handleCommand(command.fields, repoContext);
+                    respond(responseMap.containsKey(AppConfig.COMMAND_SUCCESS)
+                            ? responseMap.toString()
+                            : String.valueOf(responseMap.get(AppConfig.ERROR_KEY)));
+                }
+            } catch (Exception e) {
+                LOGGER.severe(e.getMessage());
+                e.printStackTrace();
+                if (protocol == Protocol.FRAMES) {
+                    respondFrame(GitFrame.ERROR, command.requestId, String.valueOf(e.getMessage()));
+                } else {
+                    respond(ERROR_MESSAGE + e.getMessage());
+                }
+            } finally {
+                synchronized (this) {
+                    inFlight--;
+                }
+                submitPending();
+            }
+        }
+
+        /**
+         * Queues a response line for writing.
+         * @param response the response to send to the client.
+         */
+        private void respond(final String response) {
+            enqueue(ByteBuffer.wrap((response + System.lineSeparator()).getBytes(Charset.defaultCharset())));
+        }
+
+        /**
+         * Queues a frame for writing.
+         * @param type the frame type.
+         * @param requestId the id of the request the frame answers.
+         * @param payload the payload of the frame.
+         */
+        private void respondFrame(final byte type, final int requestId, final String payload) {
+            enqueue(GitFrame.encode(type, requestId, payload));
+        }
+
+        /**
+         * Queues bytes for writing and wakes up the selector to flush them.
+         * @param buffer the bytes to send to the client.
+         */
+        private synchronized void enqueue(final ByteBuffer buffer) {
+            if (closed) {
+                return;
+            }
+            pendingWrites.add(buffer);
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            key.selector().wakeup();
+        }
+
+        /**
+         * Writes queued responses until the channel would block or the queue is empty.
+         * @throws IOException if writing to the channel fails.
+         */
+        private synchronized void flush() throws IOException {
+            while (!pendingWrites.isEmpty()) {
+                ByteBuffer buffer = pendingWrites.peek();
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return;
+                }
+                pendingWrites.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            closeIfDone();
+        }
+
+        /**
+         * Stops reading from a client that has closed its output. A last command line without a trailing
+         * newline is still executed. The connection stays open until the responses to all commands already
+         * received have been written.
+         */
+        private synchronized void shutdownInput() {
+            if (protocol == Protocol.LINES && lineBuffer.size() > 0) {
+                dispatch(new PendingCommand(0, lineBuffer.toString(Charset.defaultCharset())
+                                            .split(AppConfig.SPACE_SEPARATOR)));
+                lineBuffer.reset();
+            }
+            inputShutdown = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            closeIfDone();
+        }
+
+        /**
+         * Closes the connection if the client has stopped sending and no work or output remains.
+         */
+        private synchronized void closeIfDone() {
+            if (inputShutdown && inFlight == 0 && pendingCommands.isEmpty() && pendingWrites.isEmpty()) {
+                close();
+            }
+        }
+
+        /**
+         * Closes the connection and frees its slot for new clients.
+         */
+        private synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pendingCommands.clear();
+            pendingWrites.clear();
+            key.cancel();
+            closeQuietly(channel);
+            activeConnections.decrementAndGet();
+            key.selector().wakeup();
+        }
+    }
 }
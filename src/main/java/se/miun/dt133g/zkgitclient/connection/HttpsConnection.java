@@ -2,30 +2,47 @@ package se.miun.dt133g.zkgitclient.connection;
 
 import se.miun.dt133g.zkgitclient.crypto.EncryptionHandler;
 import se.miun.dt133g.zkgitclient.crypto.EncryptionFactory;
+import se.miun.dt133g.zkgitclient.crypto.RequestSigner;
+import se.miun.dt133g.zkgitclient.crypto.Sha256;
+import se.miun.dt133g.zkgitclient.crypto.Sha256InputStream;
 import se.miun.dt133g.zkgitclient.user.UserCredentials;
-import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
+import se.miun.dt133g.zkgitclient.support.Utils;
 
 import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.InputStreamReader;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.net.HttpURLConnection;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
-import java.security.cert.X509Certificate;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.util.Map;
 import java.util.HashMap;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.logging.Logger;
 
 import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 
 /**
  * Provides methods for handling HTTPS connections, including sending GET/POST requests, uploading files,
@@ -34,17 +51,29 @@ import javax.net.ssl.X509TrustManager;
  */
 public final class HttpsConnection {
 
-    private EncryptionHandler rsaSignHandler =
-EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_RSA_SIGNATURE);
+    private RequestSigner requestSigner = RequestSigner.getInstance();
     private EncryptionHandler sha256Handler =
-        EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_SHA_256);
+        EncryptionFactory.getThreadLocalEncryptionHandler(AppConfig.CRYPTO_SHA_256);
     private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
     private UserCredentials credentials = UserCredentials.getInstance();
-    private CurrentUserRepo currentRepo = CurrentUserRepo.getInstance();
     private String uriPath = AppConfig.URI_PATH;
+    private final HttpClient httpClient;
+    private final TlsConfiguration tlsConfiguration;
+    private static final Pattern LAST_PART_PATTERN = Pattern.compile(AppConfig.COMMAND_SUCCESS + "\\s*=\\s*(-?\\d+)");
+
+    /**
+     * Creates a connection sending its requests through the given client.
+     * @param httpClient the shared client, whose pooled connections and TLS sessions are reused by all requests.
+     * @param tlsConfiguration the TLS configuration of uploads.
+     */
+    HttpsConnection(final HttpClient httpClient, final TlsConfiguration tlsConfiguration) {
+        this.httpClient = httpClient;
+        this.tlsConfiguration = tlsConfiguration;
+    }
 
     /**
      * Sends a POST request with the provided parameters and returns the server response as an InputStream.
+     * A read of the response that blocks for longer than {@link AppConfig#TIMEOUT_LIMIT} fails.
      * @param domain the target server domain.
      * @param port the server port.
      * @param postDataParams the parameters to include in the POST request body.
@@ -54,46 +83,20 @@ EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_RSA_SIGNATURE);
                                              final String port,
                                              final Map<String, String> postDataParams) {
         try {
-            HttpsURLConnection connection =
-                (HttpsURLConnection) new URL("https://"
-                                             + domain
-                                             + ":"
-                                             + port
-                                             + uriPath).openConnection();
-            connection.setRequestMethod(AppConfig.REQUEST_TYPE_POST);
-            connection.setConnectTimeout(AppConfig.TIMEOUT_LIMIT);
-            connection.setReadTimeout(AppConfig.TIMEOUT_LIMIT);
-            connection.setDoOutput(true);
-
-            try (DataOutputStream wr =
-                 new DataOutputStream(connection.getOutputStream())) {
-                wr.writeBytes(buildPostData(postDataParams));
-                wr.flush();
-            }
-
-            sha256Handler.setInput(currentRepo.getRepoName());
-            sha256Handler.encrypt();
-
-            if (connection.getResponseCode()
-                == HttpsURLConnection.HTTP_OK) {
-                /*File file =
-                    Paths.get(System.getProperty(AppConfig.JAVA_TMP),
-                              sha256Handler.getOutput()).toFile();
-                try (InputStream in =
-                     connection.getInputStream();
-                     FileOutputStream fos = new FileOutputStream(file)) {
-                    byte[] buffer = new byte[4096];
-                    int bytesRead;
-                    while ((bytesRead = in.read(buffer)) != -1) {
-                        fos.write(buffer, 0, bytesRead);
-                    }
-                }
-                connection.disconnect();*/
-                return connection.getInputStream();
+            HttpResponse<InputStream> response =
+                httpClient.send(buildPostRequest(domain, port, postDataParams),
+                                ReadTimeoutInputStream.bodyHandler(AppConfig.TIMEOUT_LIMIT));
+            if (response.statusCode() == HttpURLConnection.HTTP_OK) {
+                return response.body();
             } else {
-                LOGGER.warning("ErrorResponseCode: " + connection.getResponseCode());
+                LOGGER.warning("ErrorResponseCode: " + response.statusCode());
+                response.body().close();
                 return null;
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.severe("Interrupted while sending request");
+            return null;
         } catch (Exception e) {
             LOGGER.severe(e.getMessage());
             return null;
@@ -110,44 +113,117 @@ EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_RSA_SIGNATURE);
     protected String sendPostRequest(final String domain,
                                      final String port,
                                      final Map<String, String> postDataParams) {
+        return sendPostRequestAsync(domain, port, postDataParams).join();
+    }
+
+    /**
+     * Sends a POST request with the provided parameters without blocking the calling thread.
+     * @param domain the target server domain.
+     * @param port the server port.
+     * @param postDataParams the parameters to include in the POST request body.
+     * @return a future completed with the server response, or with an error response if the request failed.
+     */
+    protected CompletableFuture<String> sendPostRequestAsync(final String domain,
+                                                             final String port,
+                                                             final Map<String, String> postDataParams) {
+        HttpRequest request;
         try {
-            HttpsURLConnection connection =
-                (HttpsURLConnection) new URL("https://"
-                                             + domain
-                                             + ":"
-                                             + port
-                                             + uriPath).openConnection();
-            LOGGER.config("https://" + domain + ":" + port + uriPath);
-            connection.setRequestMethod(AppConfig.REQUEST_TYPE_POST);
-            connection.setConnectTimeout(AppConfig.TIMEOUT_LIMIT);
-            connection.setReadTimeout(AppConfig.TIMEOUT_LIMIT);
-            connection.setDoOutput(true);
-
-            try (DataOutputStream wr =
-                 new DataOutputStream(connection.getOutputStream())) {
-                String post = buildPostData(postDataParams);
-                LOGGER.finer(post);
-                wr.writeBytes(post);
-                wr.flush();
-            }
+            request = buildPostRequest(domain, port, postDataParams);
+        } catch (RuntimeException e) {
+            LOGGER.severe("Could not build request: " + e.getMessage());
+            return CompletableFuture.completedFuture("{" + AppConfig.ERROR_KEY + "="
+                                                     + AppConfig.ERROR_CONNECTION + "}");
+        }
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+            .thenApply(response -> {
+                    if (response.statusCode() == HttpURLConnection.HTTP_OK) {
+                        return response.body().lines().collect(Collectors.joining());
+                    }
+                    LOGGER.severe("sendPostRequest Error");
+                    return "{" + AppConfig.ERROR_KEY
+                        + "="
+                        + response.statusCode() + "}";
+                })
+            .exceptionally(e -> {
+                    LOGGER.severe("Request failed: " + e.getMessage());
+                    return "{" + AppConfig.ERROR_KEY
+                        + "="
+                        + AppConfig.ERROR_CONNECTION + "}";
+                });
+    }
 
-            if (connection.getResponseCode()
-                == HttpsURLConnection.HTTP_OK) {
-                try (BufferedReader in =
-                     new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
-                    return in.lines().collect(Collectors.joining());
-                }
-            } else {
-                LOGGER.severe("sendPostRequest Error");
-                return "{" + AppConfig.ERROR_KEY
-                    + "="
-                    + connection.getResponseCode() + "}";
-            }
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            return "{" + AppConfig.ERROR_KEY
-                    + "="
-                    + AppConfig.ERROR_CONNECTION + "}";
+    /**
+     * Builds a form encoded POST request to the API.
+     * @param domain the target server domain.
+     * @param port the server port.
+     * @param postDataParams the parameters to include in the POST request body.
+     * @return the request.
+     */
+    private HttpRequest buildPostRequest(final String domain,
+                                         final String port,
+                                         final Map<String, String> postDataParams) {
+        String post = buildPostData(postDataParams);
+        LOGGER.finer(post);
+        return HttpRequest.newBuilder(URI.create("https://" + domain + ":" + port + uriPath))
+            .timeout(Duration.ofMillis(AppConfig.TIMEOUT_LIMIT))
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(post, StandardCharsets.UTF_8))
+            .build();
+    }
+
+    /**
+     * Downloads the response of a POST request into a file with parallel range requests, resuming an earlier
+     * partial download of the same file.
+     * @param domain the target server domain.
+     * @param port the server port.
+     * @param postDataParams the parameters to include in the POST request body.
+     * @param target the file to download to.
+     * @param identity identifies the version of the remote file.
+     * @return the downloaded file, deleted when the stream is closed, the response stream if the server does
+     *         not support ranges, or null if the download failed.
+     */
+    protected InputStream sendRangedGetPostRequest(final String domain,
+                                                   final String port,
+                                                   final Map<String, String> postDataParams,
+                                                   final Path target,
+                                                   final String identity) {
+        try {
+            return new RangedDownload(this, domain, port, postDataParams, target, identity).run();
+        } catch (IOException e) {
+            LOGGER.severe("Ranged download failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sends a POST request for a byte range of the response. Range requests of a download share the
+     * connections of the client, multiplexed over a single connection when the server speaks HTTP/2.
+     * A read of the body that blocks for longer than {@link AppConfig#FETCH_RANGE_READ_TIMEOUT} fails, so
+     * a stalled segment is retried.
+     * @param domain the target server domain.
+     * @param port the server port.
+     * @param postDataParams the parameters to include in the POST request body.
+     * @param first the offset of the first byte requested.
+     * @param last the offset of the last byte requested.
+     * @return the response, with its body not yet read.
+     * @throws IOException if the request could not be sent or the thread is interrupted.
+     */
+    HttpResponse<InputStream> openRangePostRequest(final String domain,
+                                                   final String port,
+                                                   final Map<String, String> postDataParams,
+                                                   final long first,
+                                                   final long last) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("https://" + domain + ":" + port + uriPath))
+            .timeout(Duration.ofMillis(AppConfig.FETCH_RANGE_READ_TIMEOUT))
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .header("Range", "bytes=" + first + "-" + last)
+            .POST(HttpRequest.BodyPublishers.ofString(buildPostData(postDataParams), StandardCharsets.UTF_8))
+            .build();
+        try {
+            return httpClient.send(request, ReadTimeoutInputStream.bodyHandler(AppConfig.FETCH_RANGE_READ_TIMEOUT));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while requesting bytes " + first + "-" + last);
         }
     }
 
@@ -165,55 +241,83 @@ EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_RSA_SIGNATURE);
                                          final InputStream fileInputStream,
                                          final String fileName,
                                          final Map<String, String> postParamData) {
-        String boundary = "===" + System.currentTimeMillis() + "===";
-        String LINE_FEED = "\r\n";
-
         try {
-            trustAllCertificates();
-            HttpsURLConnection connection =
-                (HttpsURLConnection) new URL("https://" + domain + ":" + port + uriPath).openConnection();
-            connection.setRequestMethod(AppConfig.REQUEST_TYPE_POST);
-            connection.setConnectTimeout(AppConfig.TIMEOUT_LIMIT);
-            connection.setReadTimeout(AppConfig.READ_TIMEOUT_LIMIT);
-            connection.setDoOutput(true);
-            connection.setChunkedStreamingMode(AppConfig.SIXFIVE_KB);
-            connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
-
-            try (BufferedOutputStream request = new BufferedOutputStream(connection.getOutputStream());
-                 BufferedInputStream bufferedFileStream = new BufferedInputStream(fileInputStream,
-                                                                                  AppConfig.SIXFIVE_KB)) {
-
-                String postParamsString = buildPostParamsString(postParamData, boundary, LINE_FEED);
-                LOGGER.finest(postParamsString);
-                request.write(postParamsString.getBytes(StandardCharsets.UTF_8));
-
-                request.write(("--" + boundary + LINE_FEED
-                               + "Content-Disposition: form-data; name=\"file\"; filename=\""
-                               + fileName + "\"" + LINE_FEED
-                               + "Content-Type: " + URLConnection.guessContentTypeFromName(fileName) + LINE_FEED
-                               + "Content-Transfer-Encoding: binary" + LINE_FEED + LINE_FEED)
-                              .getBytes(StandardCharsets.UTF_8));
-
-                byte[] buffer = new byte[AppConfig.SIXFIVE_KB];
-                int bytesRead;
-                int totBytes = 0;
-                while ((bytesRead = bufferedFileStream.read(buffer)) != -1) {
-                    request.write(buffer, 0, bytesRead);
-                    totBytes += bytesRead;
-                }
-                LOGGER.fine("Total Bytes: " + totBytes);
+            return postMultipart(domain, port, fileInputStream, fileName, postParamData,
+                                 AppConfig.READ_TIMEOUT_LIMIT);
+        } catch (Exception e) {
+            LOGGER.severe("File upload failed: " + e.getMessage());
+            return String.format("%s %s", AppConfig.ERROR_KEY, AppConfig.ERROR_CONNECTION);
+        }
+    }
 
-                request.write((LINE_FEED + "--" + boundary + "--" + LINE_FEED).getBytes(StandardCharsets.UTF_8));
-                request.flush();
-            }
+    /**
+     * Sends a POST request with file data without blocking the calling thread. The upload runs on the
+     * executor of the shared client.
+     * @param domain the target server domain.
+     * @param port the server port.
+     * @param fileInputStream the InputStream of the file to upload.
+     * @param fileName the name of the file being uploaded.
+     * @param postParamData additional parameters for the POST request.
+     * @param parts true to upload the file as resumable parts.
+     * @return a future completed with the server response.
+     */
+    protected CompletableFuture<String> sendFilePostRequestAsync(final String domain,
+                                                                 final String port,
+                                                                 final InputStream fileInputStream,
+                                                                 final String fileName,
+                                                                 final Map<String, String> postParamData,
+                                                                 final boolean parts) {
+        Executor executor = httpClient.executor().orElseGet(ForkJoinPool::commonPool);
+        return CompletableFuture.supplyAsync(() -> parts
+                                             ? sendFilePartsPostRequest(domain, port, fileInputStream, fileName,
+                                                                        postParamData)
+                                             : sendFilePostRequest(domain, port, fileInputStream, fileName,
+                                                                   postParamData),
+                                             executor);
+    }
 
-            int responseCode = connection.getResponseCode();
-            if (responseCode == HttpsURLConnection.HTTP_OK) {
-                try (BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
-                    return in.lines().collect(Collectors.joining("\n"));
+    /**
+     * Uploads a file as a sequence of numbered parts of {@link AppConfig#UPLOAD_PART_SIZE} bytes, returning the
+     * response to the last part. Every part is a request of its own carrying its index, whether it is the last
+     * part, and the SHA-256 of its content, so a network failure only costs the part in flight. A failed part is
+     * retried up to {@link AppConfig#NUM_RETRIES} times with exponential backoff; before every retry the server
+     * is asked for the last part it acknowledged, so a part that arrived but whose response was lost is not
+     * sent twice. The parts of an upload share a random upload id, which the server uses to join them.
+     * @param domain the target server domain.
+     * @param port the server port.
+     * @param fileInputStream the InputStream of the file to upload.
+     * @param fileName the name of the file being uploaded.
+     * @param postParamData additional parameters for every part request.
+     * @return the server response to the last part.
+     */
+    protected String sendFilePartsPostRequest(final String domain,
+                                              final String port,
+                                              final InputStream fileInputStream,
+                                              final String fileName,
+                                              final Map<String, String> postParamData) {
+        Map<String, String> uploadParams = new HashMap<>(postParamData);
+        uploadParams.put(AppConfig.UPLOAD_ID, fileName + AppConfig.PARTS_SUFFIX + "-" + UUID.randomUUID());
+        int partSize = AppConfig.UPLOAD_PART_SIZE;
+
+        try (Sha256InputStream hashingFileStream = new Sha256InputStream(fileInputStream)) {
+            byte[] part = new byte[partSize];
+            byte[] next = new byte[partSize];
+            int length = hashingFileStream.readNBytes(part, 0, partSize);
+            int index = 0;
+            while (true) {
+                int nextLength = length == partSize ? hashingFileStream.readNBytes(next, 0, partSize) : 0;
+                boolean last = nextLength == 0;
+                String response = sendPart(domain, port, uploadParams, fileName, index, last, part, length);
+                if (last) {
+                    LOGGER.fine("Uploaded " + (index + 1) + " parts, total bytes: " + hashingFileStream.getBytesRead()
+                                + ", SHA-256: " + hashingFileStream.getHexDigest());
+                    return response;
                 }
-            } else {
-                return String.format("%s %s", AppConfig.ERROR_KEY, AppConfig.ERROR_CONNECTION);
+                byte[] sent = part;
+                part = next;
+                next = sent;
+                length = nextLength;
+                index++;
             }
         } catch (Exception e) {
             LOGGER.severe("File upload failed: " + e.getMessage());
@@ -221,6 +325,166 @@ EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_RSA_SIGNATURE);
         }
     }
 
+    /**
+     * Sends a single part of a part upload, retrying it with exponential backoff.
+     * @param domain the target server domain.
+     * @param port the server port.
+     * @param uploadParams the parameters of the upload, including its upload id.
+     * @param fileName the name of the file being uploaded.
+     * @param index the index of the part.
+     * @param last true if this is the last part.
+     * @param data the buffer holding the part.
+     * @param length the length of the part.
+     * @return the server response to the part.
+     * @throws IOException if the part could not be sent within the retries.
+     */
+    private String sendPart(final String domain,
+                            final String port,
+                            final Map<String, String> uploadParams,
+                            final String fileName,
+                            final int index,
+                            final boolean last,
+                            final byte[] data,
+                            final int length) throws IOException {
+        MessageDigest digest = Sha256.newDigest();
+        digest.update(data, 0, length);
+        Map<String, String> partParams = new HashMap<>(uploadParams);
+        partParams.put(AppConfig.UPLOAD_PART_INDEX, String.valueOf(index));
+        partParams.put(AppConfig.UPLOAD_LAST_PART, String.valueOf(last));
+        partParams.put(AppConfig.FILE_SHA256_HASH, Utils.getInstance().bytesToHex(digest.digest()));
+        String partName = fileName + AppConfig.PART_SUFFIX + index;
+
+        IOException failure = null;
+        for (int attempt = 0; attempt <= AppConfig.NUM_RETRIES; attempt++) {
+            if (attempt > 0) {
+                backoff(attempt);
+                String acknowledged = requestLastPart(domain, port, uploadParams);
+                if (parseLastPart(acknowledged) >= index) {
+                    LOGGER.fine("Part " + index + " was acknowledged before its response was lost");
+                    return acknowledged;
+                }
+            }
+            try {
+                return postMultipart(domain, port, new ByteArrayInputStream(data, 0, length), partName,
+                                     partParams, AppConfig.UPLOAD_PART_READ_TIMEOUT);
+            } catch (IOException e) {
+                failure = e;
+                LOGGER.warning("Upload of part " + index + " failed, attempt " + (attempt + 1) + " of "
+                               + (AppConfig.NUM_RETRIES + 1) + ": " + e.getMessage());
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Asks the server for the last part of an upload it acknowledged.
+     * @param domain the target server domain.
+     * @param port the server port.
+     * @param uploadParams the parameters of the upload, including its upload id.
+     * @return the server response, or an error response if the server could not be reached.
+     */
+    private String requestLastPart(final String domain,
+                                   final String port,
+                                   final Map<String, String> uploadParams) {
+        Map<String, String> resendParams = new HashMap<>(uploadParams);
+        resendParams.put(AppConfig.COMMAND_KEY, AppConfig.COMMAND_RESEND_LAST_PACKAGE);
+        return sendPostRequest(domain, port, resendParams);
+    }
+
+    /**
+     * Extracts the index of the last acknowledged part from a resend response.
+     * @param response the response, of the form {@code {SUCCESS=<index>}}.
+     * @return the index, or -1 if no part was acknowledged or the response is an error.
+     */
+    private int parseLastPart(final String response) {
+        Matcher matcher = LAST_PART_PATTERN.matcher(response);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    /**
+     * Waits before a retry of a request, doubling the delay with every attempt up to
+     * {@link AppConfig#UPLOAD_RETRY_MAX_DELAY}. A random jitter of up to half the delay keeps clients that failed together from retrying together.
+     * @param attempt the number of the retry, starting at 1.
+     * @throws InterruptedIOException if the thread is interrupted while waiting.
+     */
+    static void backoff(final int attempt) throws InterruptedIOException {
+        long delay = Math.min(AppConfig.UPLOAD_RETRY_MAX_DELAY,
+                              AppConfig.UPLOAD_RETRY_BASE_DELAY << Math.min(attempt - 1, 30));
+        try {
+            Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry an upload");
+        }
+    }
+
+    /**
+     * Posts a multipart form with the given parameters and a file.
+     * @param domain the target server domain.
+     * @param port the server port.
+     * @param fileInputStream the content of the file.
+     * @param fileName the name of the file.
+     * @param postParamData the form parameters.
+     * @param readTimeout the read timeout of the request in milliseconds.
+     * @return the server response.
+     * @throws IOException if the request fails or the server does not respond with HTTP OK.
+     */
+    private String postMultipart(final String domain,
+                                 final String port,
+                                 final InputStream fileInputStream,
+                                 final String fileName,
+                                 final Map<String, String> postParamData,
+                                 final int readTimeout) throws IOException {
+        String boundary = "===" + System.currentTimeMillis() + "===";
+        String LINE_FEED = "\r\n";
+
+        HttpsURLConnection connection =
+            (HttpsURLConnection) new URL("https://" + domain + ":" + port + uriPath).openConnection();
+        tlsConfiguration.configure(connection);
+        connection.setRequestMethod(AppConfig.REQUEST_TYPE_POST);
+        connection.setConnectTimeout(AppConfig.TIMEOUT_LIMIT);
+        connection.setReadTimeout(readTimeout);
+        connection.setDoOutput(true);
+        connection.setChunkedStreamingMode(AppConfig.SIXFIVE_KB);
+        connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+
+        try (BufferedOutputStream request = new BufferedOutputStream(connection.getOutputStream());
+             Sha256InputStream hashingFileStream = new Sha256InputStream(fileInputStream);
+             BufferedInputStream bufferedFileStream = new BufferedInputStream(hashingFileStream,
+                                                                              AppConfig.SIXFIVE_KB)) {
+
+            String postParamsString = buildPostParamsString(postParamData, boundary, LINE_FEED);
+            LOGGER.finest(postParamsString);
+            request.write(postParamsString.getBytes(StandardCharsets.UTF_8));
+
+            request.write(("--" + boundary + LINE_FEED
+                           + "Content-Disposition: form-data; name=\"file\"; filename=\""
+                           + fileName + "\"" + LINE_FEED
+                           + "Content-Type: " + URLConnection.guessContentTypeFromName(fileName) + LINE_FEED
+                           + "Content-Transfer-Encoding: binary" + LINE_FEED + LINE_FEED)
+                          .getBytes(StandardCharsets.UTF_8));
+
+            byte[] buffer = new byte[AppConfig.SIXFIVE_KB];
+            int bytesRead;
+            while ((bytesRead = bufferedFileStream.read(buffer)) != -1) {
+                request.write(buffer, 0, bytesRead);
+            }
+            LOGGER.fine("Total Bytes: " + hashingFileStream.getBytesRead()
+                        + ", SHA-256: " + hashingFileStream.getHexDigest());
+
+            request.write((LINE_FEED + "--" + boundary + "--" + LINE_FEED).getBytes(StandardCharsets.UTF_8));
+            request.flush();
+        }
+
+        int responseCode = connection.getResponseCode();
+        if (responseCode != HttpsURLConnection.HTTP_OK) {
+            throw new IOException("Upload of " + fileName + " failed with response code " + responseCode);
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
+            return in.lines().collect(Collectors.joining("\n"));
+        }
+    }
+
     /**
      * Builds the body for the POST request containing form data parameters and encrypted signature.
      * @param postParamDataInput the parameters to include in the POST body.
@@ -292,12 +556,9 @@ EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_RSA_SIGNATURE);
             }
 
             if (privRsa != null && !privRsa.equals("")) {
-                rsaSignHandler.setRsaKey(privRsa);
-                rsaSignHandler.setInput(hash);
-                rsaSignHandler.encrypt();
-                String signedHash = rsaSignHandler.getOutput();
+                String signedHash = signHash(privRsa, hash);
 
-                if (!signedHash.contains("argument")) {
+                if (signedHash != null) {
                     postDataBuilder.append("--")
                         .append(boundary)
                         .append(lineFeed)
@@ -322,6 +583,21 @@ EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_RSA_SIGNATURE);
         return postDataBuilder.toString();
     }
 
+    /**
+     * Signs the request hash with the private RSA key of the user.
+     * @param privRsa the private RSA key in JWK format.
+     * @param hash the request hash to sign.
+     * @return the signature, or null if the hash could not be signed, in which case the request is sent
+     *         unsigned and rejected by the server.
+     */
+    private String signHash(final String privRsa, final String hash) {
+        try {
+            return requestSigner.sign(privRsa, hash);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return null;
+        }
+    }
+
     /**
      * Builds the POST data string, including parameters and encrypted signature.
      * @param postDataParams the parameters to include in the POST data.
@@ -357,12 +633,9 @@ EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_RSA_SIGNATURE);
         } catch (Exception e) { }
 
         if (privRsa != null && !privRsa.equals("")) {
-            rsaSignHandler.setRsaKey(privRsa);
-            rsaSignHandler.setInput(hash);
-            rsaSignHandler.encrypt();
-            String signedHash = rsaSignHandler.getOutput();
+            String signedHash = signHash(privRsa, hash);
 
-            if (!signedHash.contains("argument")) {
+            if (signedHash != null) {
                 postDataStringBuilder.append("&"
                                              + "signature"
                                              + "="
@@ -372,29 +645,4 @@ EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_RSA_SIGNATURE);
 
         return postDataStringBuilder.toString();
     }
-
-    /**
-     * Configures the connection to trust all certificates, bypassing SSL verification.
-     */
-    private void trustAllCertificates() {
-        try {
-            TrustManager[] trustAllCerts = {
-                new X509TrustManager() {
-                    public X509Certificate[] getAcceptedIssuers() {
-                        return null;
-                    }
-                    public void checkClientTrusted(final X509Certificate[] certs,
-                                                   final String authType) { }
-                    public void checkServerTrusted(final X509Certificate[] certs,
-                                                   final String authType) { }
-                }
-            };
-            SSLContext sc = SSLContext.getInstance(AppConfig.CRYPTO_SSL);
-            sc.init(null, trustAllCerts, new java.security.SecureRandom());
-            HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
-            HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
 }
@@ -0,0 +1,386 @@
+package se.miun.dt133g.zkgitclient.connection;
+
+import se.miun.dt133g.zkgitclient.crypto.Sha256;
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+import se.miun.dt133g.zkgitclient.support.Utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads a file with parallel HTTP range requests into a preallocated file.
+ * The file is split into segments of {@link AppConfig#FETCH_RANGE_SEGMENT_SIZE} bytes that are requested by
+ * {@link AppConfig#FETCH_RANGE_WORKERS} workers at once and written in place with positional
+ * {@link FileChannel} writes, so segments may complete in any order. Every completed segment is recorded
+ * with its SHA-256 in a progress file next to the download. A download that is interrupted is resumed from
+ * the segments recorded there, after checking each of them against its hash; segments that do not match are
+ * downloaded again. A server that does not support ranges answers the probe request with the whole file,
+ * which is then streamed as before, and an empty file is reported with a range not satisfiable response.
+ * @author Leif Rogell
+ */
+final class RangedDownload {
+
+    private static volatile ExecutorService WORKERS;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+    private static final String EMPTY_CONTENT_RANGE = "bytes */0";
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
+    private final HttpsConnection httpsConnection;
+    private final String domain;
+    private final String port;
+    private final Map<String, String> postDataParams;
+    private final Path target;
+    private final Path progressFile;
+    private final String identity;
+    private final Utils utils = Utils.getInstance();
+
+    /**
+     * Creates a download.
+     * @param httpsConnection the connection sending the requests.
+     * @param domain the target server domain.
+     * @param port the server port.
+     * @param postDataParams the parameters requesting the file.
+     * @param target the file to download to.
+     * @param identity identifies the version of the remote file; progress of another version is discarded.
+     */
+    RangedDownload(final HttpsConnection httpsConnection,
+                   final String domain,
+                   final String port,
+                   final Map<String, String> postDataParams,
+                   final Path target,
+                   final String identity) {
+        this.httpsConnection = httpsConnection;
+        this.domain = domain;
+        this.port = port;
+        this.postDataParams = postDataParams;
+        this.target = target;
+        this.progressFile = target.resolveSibling(target.getFileName() + AppConfig.PARTS_SUFFIX);
+        this.identity = identity;
+    }
+
+    /**
+     * Returns the shared pool of range workers, creating it on first use.
+     * @return the worker pool.
+     */
+    private static ExecutorService getWorkers() {
+        if (WORKERS == null) {
+            synchronized (RangedDownload.class) {
+                if (WORKERS == null) {
+                    AtomicInteger threadCount = new AtomicInteger();
+                    WORKERS = Executors.newFixedThreadPool(Math.max(1, AppConfig.FETCH_RANGE_WORKERS),
+                                                           runnable -> {
+                                                               Thread thread = new Thread(runnable,
+                                                                   AppConfig.FETCH_RANGE_THREAD_PREFIX
+                                                                   + threadCount.incrementAndGet());
+                                                               thread.setDaemon(true);
+                                                               return thread;
+                                                           });
+                }
+            }
+        }
+        return WORKERS;
+    }
+
+    /**
+     * Runs the download.
+     * @return the downloaded file, deleted when the stream is closed, or the response stream if the server
+     *         does not support ranges.
+     * @throws IOException if a segment could not be downloaded within the retries; the progress so far is kept.
+     */
+    InputStream run() throws IOException {
+        HttpResponse<InputStream> probe = httpsConnection.openRangePostRequest(domain, port, postDataParams, 0, 0);
+        if (probe.statusCode() == HttpURLConnection.HTTP_OK) {
+            LOGGER.fine("Server does not support ranges, streaming the whole file");
+            return probe.body();
+        }
+        if (isEmptyFile(probe)) {
+            LOGGER.fine("Remote file is empty, nothing to download");
+            probe.body().close();
+            Files.deleteIfExists(progressFile);
+            Files.deleteIfExists(target);
+            return InputStream.nullInputStream();
+        }
+        long size;
+        try {
+            size = parseContentRange(probe, 0, 0)[2];
+        } finally {
+            probe.body().close();
+        }
+
+        int segmentSize = AppConfig.FETCH_RANGE_SEGMENT_SIZE;
+        int segments = (int) ((size + segmentSize - 1) / segmentSize);
+        String header = identity + " " + size + " " + segmentSize;
+
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            boolean[] done = resume(channel, header, segments, segmentSize);
+            if (channel.size() != size) {
+                channel.truncate(size);
+                if (size > 0) {
+                    channel.write(ByteBuffer.allocate(1), size - 1);
+                }
+            }
+
+            int resumed = 0;
+            List<Future<?>> futures = new ArrayList<>();
+            try (BufferedWriter progress = Files.newBufferedWriter(progressFile, StandardCharsets.UTF_8,
+                                                                   StandardOpenOption.CREATE,
+                                                                   StandardOpenOption.APPEND)) {
+                if (Files.size(progressFile) == 0) {
+                    progress.write(header);
+                    progress.newLine();
+                    progress.flush();
+                }
+                for (int i = 0; i < segments; i++) {
+                    if (done[i]) {
+                        resumed++;
+                        continue;
+                    }
+                    long first = (long) i * segmentSize;
+                    long last = Math.min(size, first + segmentSize) - 1;
+                    int index = i;
+                    futures.add(getWorkers().submit(() -> {
+                                String hash = downloadSegment(channel, first, last);
+                                synchronized (progress) {
+                                    progress.write(index + " " + hash);
+                                    progress.newLine();
+                                    progress.flush();
+                                }
+                                return null;
+                            }));
+                }
+                awaitAll(futures);
+            }
+            channel.force(false);
+            LOGGER.info("Downloaded " + size + " bytes in " + segments + " segments, " + resumed + " resumed");
+        }
+        Files.deleteIfExists(progressFile);
+        return Files.newInputStream(target, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Reads the progress file of an earlier attempt and checks the recorded segments against the file.
+     * Progress of another version of the remote file, or of another segment size, is discarded.
+     * @param channel the partial file.
+     * @param header the header identifying the current download.
+     * @param segments the number of segments.
+     * @param segmentSize the size of a segment.
+     * @return per segment, whether it is already complete.
+     * @throws IOException if the partial file could not be read.
+     */
+    private boolean[] resume(final FileChannel channel,
+                             final String header,
+                             final int segments,
+                             final int segmentSize) throws IOException {
+        boolean[] done = new boolean[segments];
+        if (!Files.exists(progressFile)) {
+            channel.truncate(0);
+            return done;
+        }
+        List<String> lines = Files.readAllLines(progressFile, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(header)) {
+            LOGGER.fine("Discarding partial download of another version of " + target.getFileName());
+            Files.delete(progressFile);
+            channel.truncate(0);
+            return done;
+        }
+        Map<Integer, String> recorded = new HashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(AppConfig.SPACE_SEPARATOR);
+            if (fields.length == 2) {
+                recorded.put(Integer.parseInt(fields[0]), fields[1]);
+            }
+        }
+        long size = channel.size();
+        recorded.forEach((index, hash) -> {
+                if (index >= 0 && index < segments) {
+                    long first = (long) index * segmentSize;
+                    long length = Math.min(size - first, segmentSize);
+                    try {
+                        done[index] = length > 0 && hash.equals(hashSegment(channel, first, length));
+                    } catch (IOException e) {
+                        done[index] = false;
+                    }
+                    if (!done[index]) {
+                        LOGGER.warning("Segment " + index + " of the partial download is corrupt, downloading again");
+                    }
+                }
+            });
+        return done;
+    }
+
+    /**
+     * Downloads a segment into its place in the file, retrying with exponential backoff.
+     * @param channel the file.
+     * @param first the offset of the first byte of the segment.
+     * @param last the offset of the last byte of the segment.
+     * @return the hexadecimal SHA-256 of the segment.
+     * @throws IOException if the segment could not be downloaded within the retries.
+     */
+    private String downloadSegment(final FileChannel channel, final long first, final long last) throws IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt <= AppConfig.NUM_RETRIES; attempt++) {
+            if (attempt > 0) {
+                HttpsConnection.backoff(attempt);
+            }
+            try {
+                HttpResponse<InputStream> response =
+                    httpsConnection.openRangePostRequest(domain, port, postDataParams, first, last);
+                try (InputStream body = response.body()) {
+                    parseContentRange(response, first, last);
+                    return writeSegment(body, channel, first, last);
+                }
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                failure = e;
+                LOGGER.warning("Download of bytes " + first + "-" + last + " failed, attempt " + (attempt + 1)
+                               + " of " + (AppConfig.NUM_RETRIES + 1) + ": " + e.getMessage());
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Writes the body of a range response to its place in the file.
+     * @param body the body of the range response.
+     * @param channel the file.
+     * @param first the offset of the first byte of the segment.
+     * @param last the offset of the last byte of the segment.
+     * @return the hexadecimal SHA-256 of the segment.
+     * @throws IOException if the body could not be read or is not exactly the length of the segment.
+     */
+    private String writeSegment(final InputStream body,
+                                final FileChannel channel,
+                                final long first,
+                                final long last) throws IOException {
+        MessageDigest digest = Sha256.newDigest();
+        byte[] buffer = new byte[AppConfig.SIXFIVE_KB];
+        long position = first;
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            if (position + read > last + 1) {
+                throw new IOException("Range response longer than requested");
+            }
+            digest.update(buffer, 0, read);
+            ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+            while (data.hasRemaining()) {
+                position += channel.write(data, position);
+            }
+        }
+        if (position != last + 1) {
+            throw new IOException("Range response ended after " + (position - first) + " of "
+                                  + (last + 1 - first) + " bytes");
+        }
+        return utils.bytesToHex(digest.digest());
+    }
+
+    /**
+     * Hashes a segment of the file.
+     * @param channel the file.
+     * @param first the offset of the segment.
+     * @param length the length of the segment.
+     * @return the hexadecimal SHA-256 of the segment.
+     * @throws IOException if the file could not be read.
+     */
+    private String hashSegment(final FileChannel channel, final long first, final long length) throws IOException {
+        MessageDigest digest = Sha256.newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(AppConfig.SIXFIVE_KB);
+        long position = first;
+        while (position < first + length) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), first + length - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+        return utils.bytesToHex(digest.digest());
+    }
+
+    /**
+     * Checks whether the server answered the probe for the first byte by reporting an empty file.
+     * @param response the response to the probe.
+     * @return true if the response is a range not satisfiable response for a file of zero bytes.
+     */
+    private boolean isEmptyFile(final HttpResponse<InputStream> response) {
+        return response.statusCode() == HTTP_RANGE_NOT_SATISFIABLE
+            && EMPTY_CONTENT_RANGE.equals(response.headers().firstValue("Content-Range").orElse(null));
+    }
+
+    /**
+     * Checks that a response is a partial response for the requested range.
+     * @param response the response.
+     * @param first the offset of the first byte requested.
+     * @param last the offset of the last byte requested.
+     * @return the first offset, the last offset and the total size given by the response.
+     * @throws IOException if the response is not a partial response for the requested range.
+     */
+    private long[] parseContentRange(final HttpResponse<InputStream> response,
+                                     final long first,
+                                     final long last) throws IOException {
+        if (response.statusCode() != HttpURLConnection.HTTP_PARTIAL) {
+            throw new IOException("Unexpected response code " + response.statusCode());
+        }
+        String contentRange = response.headers().firstValue("Content-Range").orElse(null);
+        Matcher matcher = CONTENT_RANGE.matcher(contentRange == null ? "" : contentRange);
+        if (!matcher.matches()) {
+            throw new IOException("Invalid Content-Range: " + contentRange);
+        }
+        long[] range = {Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)),
+                        Long.parseLong(matcher.group(3))};
+        if (range[0] != first || range[1] != last) {
+            throw new IOException("Content-Range " + contentRange + " does not match bytes " + first + "-" + last);
+        }
+        return range;
+    }
+
+    /**
+     * Waits for all segment downloads, cancelling the others when one fails.
+     * @param futures the segment downloads.
+     * @throws IOException if a segment download failed or the thread is interrupted.
+     */
+    private void awaitAll(final List<Future<?>> futures) throws IOException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Segment download failed: " + e.getCause(), e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package se.miun.dt133g.zkgitclient.connection;
+
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpResponse;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response body that fails a read blocking for longer than a timeout, like the read timeout of a socket.
+ * The body streams of {@link java.net.http.HttpClient} only time out while waiting for the response
+ * headers, so a server that stalls in the middle of the body would block the reader forever. A watchdog
+ * interrupts a read that has been blocked for longer than the timeout and closes the body; the read then
+ * throws a {@link SocketTimeoutException}. Time the reader spends between reads is not counted.
+ * @author Leif Rogell
+ */
+final class ReadTimeoutInputStream extends FilterInputStream {
+
+    private static volatile ScheduledExecutorService WATCHDOG;
+    private final long timeoutNanos;
+    private final ScheduledFuture<?> check;
+    private Thread reader;
+    private long readStart;
+    private boolean timedOut;
+
+    /**
+     * Wraps a response body.
+     * @param in the response body.
+     * @param timeoutMillis the longest time a single read may block, in milliseconds.
+     */
+    private ReadTimeoutInputStream(final InputStream in, final int timeoutMillis) {
+        super(in);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long period = Math.max(10, timeoutMillis / 4);
+        this.check = getWatchdog().scheduleWithFixedDelay(this::checkTimeout, period, period,
+                                                          TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a body handler streaming the response body with a read timeout.
+     * @param timeoutMillis the longest time a single read may block, in milliseconds.
+     * @return the body handler.
+     */
+    static HttpResponse.BodyHandler<InputStream> bodyHandler(final int timeoutMillis) {
+        return responseInfo -> HttpResponse.BodySubscribers.mapping(
+            HttpResponse.BodySubscribers.ofInputStream(),
+            body -> new ReadTimeoutInputStream(body, timeoutMillis));
+    }
+
+    @Override
+    public int read() throws IOException {
+        begin();
+        try {
+            return super.read();
+        } catch (IOException e) {
+            throw timeoutOr(e);
+        } finally {
+            end();
+        }
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        begin();
+        try {
+            return super.read(bytes, offset, length);
+        } catch (IOException e) {
+            throw timeoutOr(e);
+        } finally {
+            end();
+        }
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        begin();
+        try {
+            return super.skip(n);
+        } catch (IOException e) {
+            throw timeoutOr(e);
+        } finally {
+            end();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        check.cancel(false);
+        super.close();
+    }
+
+    /**
+     * Marks the current thread as blocked in a read.
+     * @throws SocketTimeoutException if an earlier read has timed out.
+     */
+    private synchronized void begin() throws SocketTimeoutException {
+        if (timedOut) {
+            throw new SocketTimeoutException("Read timed out");
+        }
+        reader = Thread.currentThread();
+        readStart = System.nanoTime();
+    }
+
+    /**
+     * Marks the read as finished, clearing the interrupt of the watchdog if the read timed out.
+     */
+    private synchronized void end() {
+        reader = null;
+        if (timedOut) {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Replaces the failure of a read aborted by the watchdog with a timeout.
+     * @param e the failure of the read.
+     * @return the exception to throw.
+     */
+    private synchronized IOException timeoutOr(final IOException e) {
+        return timedOut ? new SocketTimeoutException("Read timed out") : e;
+    }
+
+    /**
+     * Aborts the current read if it has been blocked for longer than the timeout.
+     */
+    private void checkTimeout() {
+        synchronized (this) {
+            if (reader == null || timedOut || System.nanoTime() - readStart < timeoutNanos) {
+                return;
+            }
+            timedOut = true;
+            reader.interrupt();
+        }
+        ScheduledFuture<?> scheduled = check;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * Returns the shared watchdog thread, creating it on first use.
+     * @return the watchdog.
+     */
+    private static ScheduledExecutorService getWatchdog() {
+        if (WATCHDOG == null) {
+            synchronized (ReadTimeoutInputStream.class) {
+                if (WATCHDOG == null) {
+                    WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                            Thread thread = new Thread(runnable, AppConfig.HTTP_THREAD_PREFIX + "watchdog");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                }
+            }
+        }
+        return WATCHDOG;
+    }
+}
@@ -0,0 +1,330 @@
+package se.miun.dt133g.zkgitclient.connection;
+
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+import se.miun.dt133g.zkgitclient.support.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * The TLS configuration of all connections to the server, built once when the connection manager starts.
+ * The server is trusted by one of, in order of precedence:
+ * <ul>
+ *   <li>the SHA-256 hashes of its public keys, given in {@link AppConfig#TLS_PINS};</li>
+ *   <li>the certificates of the trust store in {@link AppConfig#TLS_TRUST_STORE};</li>
+ *   <li>the default trust of the JVM for API requests, and any certificate for uploads, which address the
+ *       server by its IP address.</li>
+ * </ul>
+ * Every connection uses the same context, so its session cache lets later connections resume the TLS
+ * session of an earlier one instead of repeating the full handshake. Nothing is installed as a JVM-wide
+ * default; uploads are configured connection by connection.
+ * @author Leif Rogell
+ */
+final class TlsConfiguration {
+
+    private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
+    private final SSLContext clientContext;
+    private final SSLContext uploadContext;
+    private final SSLSocketFactory uploadSocketFactory;
+    private final AtomicLong handshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    /**
+     * Builds the configuration from the system properties.
+     * @throws GeneralSecurityException if the pins or the trust store cannot be used.
+     * @throws IOException if the trust store cannot be read.
+     */
+    TlsConfiguration() throws GeneralSecurityException, IOException {
+        Set<String> pins = parsePins(AppConfig.TLS_PINS);
+        if (!pins.isEmpty()) {
+            LOGGER.config("Pinning " + pins.size() + " server keys");
+            clientContext = createContext(new TrustManager[] {new PinningTrustManager(pins)});
+            uploadContext = clientContext;
+        } else if (AppConfig.TLS_TRUST_STORE != null) {
+            LOGGER.config("Trusting the certificates of " + AppConfig.TLS_TRUST_STORE);
+            clientContext = createContext(loadTrustStore(AppConfig.TLS_TRUST_STORE,
+                                                         AppConfig.TLS_TRUST_STORE_PASSWORD));
+            uploadContext = clientContext;
+        } else {
+            LOGGER.warning("No pinned keys or trust store configured, uploads accept any certificate");
+            clientContext = SSLContext.getDefault();
+            uploadContext = createContext(new TrustManager[] {new TrustAllManager()});
+        }
+        uploadSocketFactory = new TrackingSocketFactory(uploadContext.getSocketFactory());
+    }
+
+    /**
+     * Returns the context of API requests, to be shared by the HTTP client.
+     * @return the SSL context.
+     */
+    SSLContext getClientContext() {
+        return clientContext;
+    }
+
+    /**
+     * Configures an upload connection to use the shared context. Uploads address the server by its IP
+     * address, which its certificate does not name, so the host name is not verified; the server is
+     * identified by the trust of the context alone.
+     * @param connection the connection, not yet connected.
+     */
+    void configure(final HttpsURLConnection connection) {
+        connection.setSSLSocketFactory(uploadSocketFactory);
+        connection.setHostnameVerifier((hostname, session) -> true);
+    }
+
+    /**
+     * Returns the number of completed upload handshakes.
+     * @return the number of handshakes.
+     */
+    long getHandshakes() {
+        return handshakes.get();
+    }
+
+    /**
+     * Returns the number of upload handshakes that resumed a cached session.
+     * @return the number of abbreviated handshakes.
+     */
+    long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Returns the number of TLS sessions cached for resumption.
+     * @return the number of cached sessions of the API and upload contexts.
+     */
+    int getCachedSessions() {
+        int sessions = Collections.list(clientContext.getClientSessionContext().getIds()).size();
+        if (uploadContext != clientContext) {
+            sessions += Collections.list(uploadContext.getClientSessionContext().getIds()).size();
+        }
+        return sessions;
+    }
+
+    /**
+     * Creates a context with the given trust and the configured session cache.
+     * @param trustManagers decide which servers are trusted.
+     * @return the context.
+     * @throws GeneralSecurityException if TLS is not available.
+     */
+    private SSLContext createContext(final TrustManager[] trustManagers) throws GeneralSecurityException {
+        SSLContext context = SSLContext.getInstance(AppConfig.CRYPTO_TLS);
+        context.init(null, trustManagers, new SecureRandom());
+        SSLSessionContext sessions = context.getClientSessionContext();
+        sessions.setSessionCacheSize(AppConfig.TLS_SESSION_CACHE_SIZE);
+        sessions.setSessionTimeout(AppConfig.TLS_SESSION_TIMEOUT);
+        return context;
+    }
+
+    /**
+     * Loads the trust managers of a trust store.
+     * @param path the trust store file, of the default key store type of the JVM.
+     * @param password the password of the trust store, or null if it has none.
+     * @return the trust managers.
+     * @throws GeneralSecurityException if the trust store is malformed.
+     * @throws IOException if the trust store cannot be read.
+     */
+    private static TrustManager[] loadTrustStore(final String path,
+                                                 final String password)
+        throws GeneralSecurityException, IOException {
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        try (InputStream in = Files.newInputStream(Paths.get(path))) {
+            trustStore.load(in, password == null ? null : password.toCharArray());
+        }
+        TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        factory.init(trustStore);
+        return factory.getTrustManagers();
+    }
+
+    /**
+     * Parses a comma separated list of hexadecimal SHA-256 hashes.
+     * @param pins the list, or null.
+     * @return the hashes in lower case.
+     * @throws GeneralSecurityException if a hash is not 64 hexadecimal digits.
+     */
+    private static Set<String> parsePins(final String pins) throws GeneralSecurityException {
+        if (pins == null || pins.isBlank()) {
+            return Collections.emptySet();
+        }
+        Set<String> parsed = Arrays.stream(pins.split(","))
+            .map(pin -> pin.trim().toLowerCase(Locale.ROOT))
+            .filter(pin -> !pin.isEmpty())
+            .collect(Collectors.toSet());
+        for (String pin : parsed) {
+            if (!pin.matches("[0-9a-f]{64}")) {
+                throw new GeneralSecurityException("Invalid SHA-256 key pin: " + pin);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Counts the handshakes of an upload socket once they complete.
+     * @param socket the socket, not yet connected.
+     * @return the socket.
+     */
+    private Socket track(final Socket socket) {
+        if (socket instanceof SSLSocket) {
+            long created = System.currentTimeMillis();
+            ((SSLSocket) socket).addHandshakeCompletedListener(event -> {
+                    handshakes.incrementAndGet();
+                    if (event.getSession().getCreationTime() < created) {
+                        resumedHandshakes.incrementAndGet();
+                    }
+                });
+        }
+        return socket;
+    }
+
+    /**
+     * Trusts a server if the public key of its certificate has one of the pinned SHA-256 hashes.
+     */
+    private static final class PinningTrustManager implements X509TrustManager {
+
+        private final Set<String> pins;
+
+        /**
+         * Creates a trust manager.
+         * @param pins the hexadecimal SHA-256 hashes of the trusted public keys.
+         */
+        PinningTrustManager(final Set<String> pins) {
+            this.pins = pins;
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain,
+                                       final String authType) throws CertificateException {
+            if (chain == null || chain.length == 0) {
+                throw new CertificateException("Empty certificate chain");
+            }
+            try {
+                MessageDigest digest = MessageDigest.getInstance(AppConfig.CRYPTO_SHA_256);
+                String hash = Utils.getInstance().bytesToHex(digest.digest(chain[0].getPublicKey().getEncoded()));
+                if (!pins.contains(hash.toLowerCase(Locale.ROOT))) {
+                    throw new CertificateException("Server key " + hash + " is not pinned");
+                }
+            } catch (GeneralSecurityException e) {
+                throw new CertificateException(e);
+            }
+        }
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain,
+                                       final String authType) throws CertificateException {
+            throw new CertificateException("Client certificates are not trusted");
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+
+    /**
+     * Trusts any server.
+     */
+    private static final class TrustAllManager implements X509TrustManager {
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String authType) { }
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String authType) { }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+
+    /**
+     * Creates sockets of the upload context and counts their handshakes.
+     */
+    private final class TrackingSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory delegate;
+
+        /**
+         * Creates a factory.
+         * @param delegate the socket factory of the upload context.
+         */
+        TrackingSocketFactory(final SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return track(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(final Socket socket,
+                                   final String host,
+                                   final int port,
+                                   final boolean autoClose) throws IOException {
+            return track(delegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port) throws IOException {
+            return track(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final String host,
+                                   final int port,
+                                   final InetAddress localHost,
+                                   final int localPort) throws IOException {
+            return track(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress host, final int port) throws IOException {
+            return track(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress address,
+                                   final int port,
+                                   final InetAddress localAddress,
+                                   final int localPort) throws IOException {
+            return track(delegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+}
@@ -5,6 +5,9 @@
  * secure connections with a remote server, sending requests, and handling the transmission
  * of data (including file uploads) between the client and server. It includes mechanisms
  * for interacting with Git repositories over HTTPS, as well as managing socket-based
- * connections for Git operations.
+ * connections for Git operations. Git helpers talk to the {@link se.miun.dt133g.zkgitclient.connection.GitSocket}
+ * either in the legacy line protocol or in the binary frame protocol of
+ * {@link se.miun.dt133g.zkgitclient.connection.GitFrame}, which carries several requests at a time,
+ * over TCP or a Unix domain socket private to the user.
  */
 package se.miun.dt133g.zkgitclient.connection;
@@ -2,18 +2,14 @@ package se.miun.dt133g.zkgitclient.crypto;
 
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.Utils;
-import se.miun.dt133g.zkgitclient.support.AppConfig;
 
-import javax.crypto.spec.SecretKeySpec;
-import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.Cipher;
 import java.util.Base64;
 import java.util.Arrays;
 import java.util.logging.Logger;
 
 /**
- * A singleton class that handles AES encryption and decryption using GCM mode.
- * Implements the EncryptionHandler interface.
+ * A class that handles AES encryption and decryption using GCM mode.
+ * Implements the EncryptionHandler interface on top of the stateless {@link AesGcm} operations.
  * @author Leif Rogell
  */
 public final class AesEncryptionHandler implements EncryptionHandler {
@@ -29,15 +25,15 @@ public final class AesEncryptionHandler implements EncryptionHandler {
     private byte[] iv;
 
     /**
-     * Private constructor to prevent instantiation.
+     * Package-private constructor, used by the factory to create per-thread and per-operation instances.
      */
-    private AesEncryptionHandler() { }
+    AesEncryptionHandler() { }
 
     /**
      * Returns the singleton instance of the AesEncryptionHandler class.
      * @return the singleton instance of AesEncryptionHandler
      */
-    public static AesEncryptionHandler getInstance() {
+    public static synchronized AesEncryptionHandler getInstance() {
         if (INSTANCE == null) {
             INSTANCE = new AesEncryptionHandler();
         }
@@ -52,10 +48,7 @@ public final class AesEncryptionHandler implements EncryptionHandler {
     public void encrypt() {
         try {
             LOGGER.fine("Encrypting: " + input);
-            Cipher cipher = Cipher.getInstance(AppConfig.CRYPTO_AES_GCM);
-            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, AppConfig.CRYPTO_AES),
-                        new GCMParameterSpec(AppConfig.CRYPTO_AES_TAG_LENGTH, iv));
-            this.output = Base64.getEncoder().encodeToString(cipher.doFinal(input.getBytes()));
+            this.output = Base64.getEncoder().encodeToString(AesGcm.encrypt(aesKey, iv, input.getBytes()));
             LOGGER.finest("Output: " + output);
         } catch (Exception e) {
             this.output = e.getMessage();
@@ -71,10 +64,7 @@ public final class AesEncryptionHandler implements EncryptionHandler {
     public void decrypt() {
         try {
             LOGGER.fine("Decrypting: " + input);
-            Cipher cipher = Cipher.getInstance(AppConfig.CRYPTO_AES_GCM);
-            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(aesKey, AppConfig.CRYPTO_AES),
-                        new GCMParameterSpec(AppConfig.CRYPTO_AES_TAG_LENGTH, iv));
-            this.output = new String(cipher.doFinal(Base64.getDecoder().decode(input)));
+            this.output = new String(AesGcm.decrypt(aesKey, iv, Base64.getDecoder().decode(input)));
             LOGGER.finest("Output: " + output);
         } catch (Exception e) {
             this.output = e.getMessage();
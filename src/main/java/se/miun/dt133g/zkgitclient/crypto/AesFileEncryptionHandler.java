@@ -4,21 +4,13 @@ import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
 
-import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
-import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.logging.Logger;
 
 /**
  * Handler for AES file encryption and decryption operations.
- * Provides methods to encrypt and decrypt files using AES in GCM mode.
+ * Provides methods to encrypt and decrypt files using AES in GCM mode, in the chunked {@link ChunkedAesGcm} format.
  * @author Leif Rogell
  */
 public final class AesFileEncryptionHandler implements EncryptionHandler {
@@ -35,9 +27,9 @@ public final class AesFileEncryptionHandler implements EncryptionHandler {
     private byte[] iv;
 
     /**
-     * Private constructor to prevent instantiation.
+     * Package-private constructor, used by the factory to create per-thread and per-operation instances.
      */
-    private AesFileEncryptionHandler() { }
+    AesFileEncryptionHandler() { }
 
     /**
      * Returns the singleton instance of AesFileEncryptionHandler.
@@ -58,13 +50,10 @@ public final class AesFileEncryptionHandler implements EncryptionHandler {
         try {
             setOutputFileName(currentRepo.getEncFileName());
 
-            Cipher cipher = initializeCipher(Cipher.ENCRYPT_MODE);
-
             try (FileInputStream fis = new FileInputStream(inputFileName);
-                 FileOutputStream fos = new FileOutputStream(outputFileName);
-                 CipherOutputStream cos = new CipherOutputStream(fos, cipher)) {
+                 FileOutputStream fos = new FileOutputStream(outputFileName)) {
 
-                transferData(fis, cos);
+                ChunkedAesGcm.encrypt(aesKey, iv, fis, fos);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -80,13 +69,10 @@ public final class AesFileEncryptionHandler implements EncryptionHandler {
             LOGGER.finest("DECRYPTING");
             setOutputFileName("test_repo2");
 
-            Cipher cipher = initializeCipher(Cipher.DECRYPT_MODE);
-
             try (FileInputStream fis = new FileInputStream(inputFileName);
-                 FileOutputStream fos = new FileOutputStream(outputFileName);
-                 CipherInputStream cis = new CipherInputStream(fis, cipher)) {
+                 FileOutputStream fos = new FileOutputStream(outputFileName)) {
 
-                transferData(cis, fos);
+                ChunkedAesGcm.decrypt(aesKey, iv, fis, fos);
             }
             LOGGER.finest("DECRYPTION complete");
         } catch (Exception e) {
@@ -94,34 +80,6 @@ public final class AesFileEncryptionHandler implements EncryptionHandler {
         }
     }
 
-    /**
-     * Initializes the AES cipher for encryption or decryption.
-     * @param mode the mode of operation (Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE).
-     * @return the initialized Cipher.
-     * @throws Exception if the cipher cannot be initialized.
-     */
-    private Cipher initializeCipher(final int mode) throws Exception {
-        SecretKeySpec keySpec = new SecretKeySpec(aesKey, AppConfig.CRYPTO_AES);
-        GCMParameterSpec paramSpec = new GCMParameterSpec(AppConfig.CRYPTO_AES_TAG_LENGTH, iv);
-        Cipher cipher = Cipher.getInstance(AppConfig.CRYPTO_AES_GCM);
-        cipher.init(mode, keySpec, paramSpec);
-        return cipher;
-    }
-
-    /**
-     * Transfers data from the input stream to the output stream using a buffer.
-     * @param input the input stream to read from.
-     * @param output the output stream to write to.
-     * @throws IOException if an I/O error occurs.
-     */
-    private void transferData(final InputStream input, final OutputStream output) throws IOException {
-        byte[] buffer = new byte[AppConfig.FOUR_KB];
-        int bytesRead;
-        while ((bytesRead = input.read(buffer)) != -1) {
-            output.write(buffer, 0, bytesRead);
-        }
-    }
-
     /**
      * Sets the input file path for encryption or decryption.
      * @param inputFileName the input file name.
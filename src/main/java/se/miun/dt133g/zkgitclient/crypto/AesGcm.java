@@ -0,0 +1,68 @@
+package se.miun.dt133g.zkgitclient.crypto;
+
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
+/**
+ * Stateless AES-GCM operations.
+ * All state is passed in as arguments and every call uses its own {@link Cipher}, so the methods
+ * can be called from any number of threads at the same time without locking. A fresh cipher is used
+ * per call since a GCM cipher refuses to be re-initialized for encryption with a key and IV pair it
+ * has already used, which the deterministic file name encryption does by design.
+ * @author Leif Rogell
+ */
+public final class AesGcm {
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private AesGcm() { }
+
+    /**
+     * Encrypts the input with the given key and IV.
+     * @param key the AES key.
+     * @param iv the initialization vector.
+     * @param input the plaintext.
+     * @return the ciphertext followed by the authentication tag.
+     * @throws GeneralSecurityException if the encryption fails.
+     */
+    public static byte[] encrypt(final byte[] key, final byte[] iv, final byte[] input)
+        throws GeneralSecurityException {
+        return newCipher(Cipher.ENCRYPT_MODE, key, iv).doFinal(input);
+    }
+
+    /**
+     * Decrypts and authenticates the input with the given key and IV.
+     * @param key the AES key.
+     * @param iv the initialization vector.
+     * @param input the ciphertext followed by the authentication tag.
+     * @return the plaintext.
+     * @throws GeneralSecurityException if the decryption or the authentication fails.
+     */
+    public static byte[] decrypt(final byte[] key, final byte[] iv, final byte[] input)
+        throws GeneralSecurityException {
+        return newCipher(Cipher.DECRYPT_MODE, key, iv).doFinal(input);
+    }
+
+    /**
+     * Creates a cipher initialized for the given mode, key and IV. The cipher is owned by the caller
+     * and may be used for streaming with {@link javax.crypto.CipherInputStream} or
+     * {@link javax.crypto.CipherOutputStream}.
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+     * @param key the AES key.
+     * @param iv the initialization vector.
+     * @return the initialized cipher.
+     * @throws GeneralSecurityException if the cipher cannot be initialized.
+     */
+    public static Cipher newCipher(final int mode, final byte[] key, final byte[] iv)
+        throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(AppConfig.CRYPTO_AES_GCM);
+        cipher.init(mode, new SecretKeySpec(key, AppConfig.CRYPTO_AES),
+                    new GCMParameterSpec(AppConfig.CRYPTO_AES_TAG_LENGTH, iv));
+        return cipher;
+    }
+}
@@ -1,28 +1,23 @@
 package se.miun.dt133g.zkgitclient.crypto;
 
-import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.Utils;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
+import se.miun.dt133g.zkgitclient.support.StageMetrics;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
-import java.io.File;
-import java.nio.file.Paths;
-import java.io.FileInputStream;
+import java.security.GeneralSecurityException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.logging.Logger;
 
 /**
- * A singleton class that handles AES stream encryption and decryption.
+ * A class that handles AES stream encryption and decryption.
  * This class provides methods for encrypting and decrypting streams using AES encryption in GCM mode.
- * It processes the data in chunks, ensuring that large files can be handled efficiently.
+ * Streams are written in the chunked {@link ChunkedAesGcm} format; archives in the earlier single message
+ * format are still decrypted.
  * @author Leif Rogell
  */
 public final class AesStreamEncryptionHandler implements StreamEncryptionHandler {
@@ -31,14 +26,13 @@ public final class AesStreamEncryptionHandler implements StreamEncryptionHandler
     private Utils utils = Utils.getInstance();
     private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
 
-    private CurrentUserRepo currentRepo = CurrentUserRepo.getInstance();
     private byte[] aesKey;
     private byte[] iv;
 
     /**
-     * Private constructor to prevent instatiation.
+     * Package-private constructor, used by the factory to create per-thread and per-operation instances.
      */
-    private AesStreamEncryptionHandler() { }
+    AesStreamEncryptionHandler() { }
 
     /**
      * Returns the singleton instance of the AesStreamEncryptionHandler.
@@ -57,11 +51,34 @@ public final class AesStreamEncryptionHandler implements StreamEncryptionHandler
      * to the output stream.
      * @param inputStream the input stream to be encrypted.
      * @param outputStream the output stream to write the encrypted data.
+     * @throws IOException if the encryption fails.
      */
     @Override
     public void encryptStream(final InputStream inputStream,
-                              final OutputStream outputStream) {
-        processStream(Cipher.ENCRYPT_MODE, inputStream, outputStream);
+                              final OutputStream outputStream) throws IOException {
+        encryptStream(inputStream, outputStream, new StageMetrics(AppConfig.STAGE_ENCRYPT));
+    }
+
+    /**
+     * Encrypts the input stream and writes the result to the output stream.
+     * The chunks of the stream are encrypted in parallel on the crypto worker pool and written in order.
+     * @param inputStream the input stream to be encrypted.
+     * @param outputStream the output stream to write the encrypted data.
+     * @param metrics receives the number of bytes encrypted and the duration of the encryption.
+     * @throws IOException if the encryption fails.
+     */
+    @Override
+    public void encryptStream(final InputStream inputStream,
+                              final OutputStream outputStream,
+                              final StageMetrics metrics) throws IOException {
+        try {
+            LOGGER.fine("Starting encryption of repo");
+            ParallelChunkEncryptor.encrypt(aesKey, iv, inputStream, outputStream, metrics);
+            LOGGER.fine("Completed encryption of repo");
+        } catch (GeneralSecurityException e) {
+            LOGGER.severe("Could not encrypt repo: " + e.getMessage());
+            throw new IOException("Could not encrypt repo: " + e.getMessage(), e);
+        }
     }
 
     /**
@@ -70,10 +87,11 @@ public final class AesStreamEncryptionHandler implements StreamEncryptionHandler
      * data to the output stream.
      * @param inputStream the input stream containing encrypted data.
      * @param outputStream the output stream to write the decrypted data.
+     * @throws IOException if the decryption fails or the data has been tampered with.
      */
     @Override
     public void decryptStream(final InputStream inputStream,
-                              final OutputStream outputStream) {
+                              final OutputStream outputStream) throws IOException {
         processStream(Cipher.DECRYPT_MODE, inputStream, outputStream);
     }
 
@@ -83,54 +101,29 @@ public final class AesStreamEncryptionHandler implements StreamEncryptionHandler
      * @param mode the cipher mode (encryption or decryption).
      * @param inputStream the input stream to process.
      * @param outputStream the output stream to write the result.
+     * @throws IOException if the stream could not be processed.
      */
     private void processStream(final int mode,
                                final InputStream inputStream,
-                               final OutputStream outputStream) {
+                               final OutputStream outputStream) throws IOException {
         try {
             String operation = (mode == Cipher.ENCRYPT_MODE) ? "encryption" : "decryption";
             LOGGER.fine("Starting " + operation + " of repo");
             LOGGER.finest("iv: " + Arrays.toString(utils.byteArrayToIntArray(iv)));
             LOGGER.finest("aesKey: " + utils.hexToBase64(utils.bytesToHex(aesKey)));
 
-            Cipher cipher = Cipher.getInstance(AppConfig.CRYPTO_AES_GCM);
-            SecretKey secretKey = new SecretKeySpec(aesKey, AppConfig.CRYPTO_AES);
-            GCMParameterSpec gcmSpec = new GCMParameterSpec(AppConfig.CRYPTO_AES_TAG_LENGTH, iv);
-            cipher.init(mode, secretKey, gcmSpec);
-
-            byte[] buffer = new byte[AppConfig.ONE_KB];
-            int bytesRead;
-
             if (mode == Cipher.ENCRYPT_MODE) {
-                try (CipherOutputStream cipherOut = new CipherOutputStream(outputStream, cipher)) {
-                    while ((bytesRead = inputStream.read(buffer)) != -1) {
-                        cipherOut.write(buffer, 0, bytesRead);
-                    }
-                }
+                ChunkedAesGcm.encrypt(aesKey, iv, inputStream, outputStream);
             } else {
-                LOGGER.fine("Preparing to read encrypted input");
-
-                EncryptionHandler sha256Handler = EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_SHA_256);
-                File file = Paths.get(System.getProperty(AppConfig.JAVA_TMP),
-                                      sha256Handler.getOutput()).toFile();
-
-                FileInputStream fis = new FileInputStream(file);
-
-                LOGGER.fine("Initiating cipherIn");
-                try (CipherInputStream cipherIn = new CipherInputStream(fis, cipher)) {
-                    while ((bytesRead = cipherIn.read(buffer)) != -1) {
-                        outputStream.write(buffer, 0, bytesRead);
-                    }
-                    LOGGER.fine("Decryption complete");
-                }
+                ChunkedAesGcm.decrypt(aesKey, iv, inputStream, outputStream);
             }
-            //outputStream.close();
 
             LOGGER.fine("Completed " + operation + " of repo");
-        } catch (Exception e) {
-            LOGGER.severe("Could not " + ((mode == Cipher.ENCRYPT_MODE)
-                                          ? "encrypt" : "decrypt") + " repo: " + e.getMessage());
-            e.printStackTrace();
+        } catch (GeneralSecurityException e) {
+            String message = "Could not " + ((mode == Cipher.ENCRYPT_MODE) ? "encrypt" : "decrypt")
+                + " repo: " + e.getMessage();
+            LOGGER.severe(message);
+            throw new IOException(message, e);
         }
     }
 
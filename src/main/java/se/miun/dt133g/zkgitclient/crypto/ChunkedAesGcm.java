@@ -0,0 +1,472 @@
+package se.miun.dt133g.zkgitclient.crypto;
+
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Segmented AES-GCM container format for repository archives.
+ * <p>
+ * The plaintext is split into fixed-size chunks that are encrypted and authenticated independently, so
+ * chunks can be processed in parallel, corruption is detected at the chunk it occurs in and any chunk can
+ * be located directly. The layout is:
+ * <pre>
+ * header   magic "ZKGC" | version | flags | reserved (2) | chunk size (4) | salt (8)
+ * chunk i  ciphertext of chunk i | GCM tag (16)
+ * index    encrypted chunk count (8) and plaintext length (8) | GCM tag (16)
+ * </pre>
+ * The nonce of chunk i is the repository IV with the per-archive random salt XORed into bytes 0-7 and the
+ * counter i XORed into bytes 8-11; the index uses the counter following the last chunk. Every chunk
+ * authenticates the header, its counter and whether it is the last chunk, so chunks cannot be reordered,
+ * moved between archives, truncated or extended.
+ * <p>
+ * Archives written before this format are a single GCM message with the repository IV as nonce. They do not
+ * start with the magic bytes and are still decrypted by {@link #decrypt(byte[], byte[], InputStream, OutputStream)}.
+ * @author Leif Rogell
+ */
+public final class ChunkedAesGcm {
+
+    public static final byte VERSION = 1;
+    public static final int HEADER_LENGTH = 20;
+    public static final int TAG_LENGTH = AppConfig.CRYPTO_AES_TAG_LENGTH / Byte.SIZE;
+    public static final int INDEX_LENGTH = 2 * Long.BYTES + TAG_LENGTH;
+
+    private static final byte[] MAGIC = {'Z', 'K', 'G', 'C'};
+    private static final int SALT_LENGTH = 8;
+    private static final byte TYPE_CHUNK = 0;
+    private static final byte TYPE_LAST_CHUNK = 1;
+    private static final byte TYPE_INDEX = 2;
+    private static final long MAX_CHUNKS = 0xFFFFFFFFL;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private ChunkedAesGcm() { }
+
+    /**
+     * Encrypts the input stream into the chunked format.
+     * @param key the AES key.
+     * @param iv the repository IV.
+     * @param inputStream the plaintext.
+     * @param outputStream receives the encrypted archive.
+     * @throws IOException if reading or writing fails.
+     * @throws GeneralSecurityException if the encryption fails.
+     */
+    public static void encrypt(final byte[] key,
+                               final byte[] iv,
+                               final InputStream inputStream,
+                               final OutputStream outputStream)
+        throws IOException, GeneralSecurityException {
+        Header header = Header.create(AppConfig.CRYPTO_CHUNK_SIZE);
+        outputStream.write(header.encoded());
+
+        Cipher cipher = Cipher.getInstance(AppConfig.CRYPTO_AES_GCM);
+        SecretKeySpec keySpec = new SecretKeySpec(key, AppConfig.CRYPTO_AES);
+        byte[] current = new byte[header.chunkSize()];
+        byte[] next = new byte[header.chunkSize()];
+        byte[] output = new byte[header.chunkSize() + TAG_LENGTH];
+
+        int currentLength = inputStream.readNBytes(current, 0, current.length);
+        long index = 0;
+        long plainLength = 0;
+        while (true) {
+            int nextLength = currentLength == current.length
+                ? inputStream.readNBytes(next, 0, next.length) : 0;
+            boolean last = nextLength == 0;
+
+            int written = process(cipher, Cipher.ENCRYPT_MODE, keySpec, iv, header, index, last,
+                                  current, currentLength, output);
+            outputStream.write(output, 0, written);
+            plainLength += currentLength;
+            index++;
+
+            if (last) {
+                break;
+            }
+            byte[] swap = current;
+            current = next;
+            next = swap;
+            currentLength = nextLength;
+        }
+
+        outputStream.write(encryptIndex(key, iv, header, index, plainLength));
+        outputStream.flush();
+    }
+
+    /**
+     * Decrypts an archive in either the chunked format or the legacy single message format.
+     * @param key the AES key.
+     * @param iv the repository IV.
+     * @param inputStream the encrypted archive.
+     * @param outputStream receives the plaintext.
+     * @throws IOException if reading or writing fails, or the archive is truncated.
+     * @throws GeneralSecurityException if a chunk or the index fails authentication.
+     */
+    public static void decrypt(final byte[] key,
+                               final byte[] iv,
+                               final InputStream inputStream,
+                               final OutputStream outputStream)
+        throws IOException, GeneralSecurityException {
+        BufferedInputStream in = new BufferedInputStream(inputStream, AppConfig.SIXFIVE_KB);
+        in.mark(HEADER_LENGTH);
+        byte[] prefix = in.readNBytes(HEADER_LENGTH);
+        in.reset();
+
+        if (!isChunked(prefix)) {
+            decryptLegacy(key, iv, in, outputStream);
+            return;
+        }
+
+        Header header = Header.parse(in.readNBytes(HEADER_LENGTH));
+        Cipher cipher = Cipher.getInstance(AppConfig.CRYPTO_AES_GCM);
+        SecretKeySpec keySpec = new SecretKeySpec(key, AppConfig.CRYPTO_AES);
+        int blockLength = header.chunkSize() + TAG_LENGTH;
+        byte[] window = new byte[blockLength + INDEX_LENGTH + 1];
+        byte[] output = new byte[header.chunkSize()];
+
+        int filled = in.readNBytes(window, 0, window.length);
+        long index = 0;
+        long plainLength = 0;
+        while (true) {
+            boolean last = filled < window.length;
+            int chunkLength = last ? filled - INDEX_LENGTH : blockLength;
+            if (chunkLength < TAG_LENGTH) {
+                throw new EOFException("Truncated archive at chunk " + index);
+            }
+
+            int written = process(cipher, Cipher.DECRYPT_MODE, keySpec, iv, header, index, last,
+                                  window, chunkLength, output);
+            outputStream.write(output, 0, written);
+            plainLength += written;
+            index++;
+
+            int remaining = filled - chunkLength;
+            System.arraycopy(window, chunkLength, window, 0, remaining);
+            filled = remaining;
+            if (last) {
+                break;
+            }
+            filled += in.readNBytes(window, filled, window.length - filled);
+        }
+
+        verifyIndex(key, iv, header, Arrays.copyOf(window, INDEX_LENGTH), index, plainLength);
+        outputStream.flush();
+    }
+
+    /**
+     * Tells whether the given bytes start with the header of the chunked format.
+     * @param prefix the first bytes of an archive.
+     * @return true if the archive uses the chunked format.
+     */
+    public static boolean isChunked(final byte[] prefix) {
+        return prefix.length >= HEADER_LENGTH
+            && Arrays.equals(prefix, 0, MAGIC.length, MAGIC, 0, MAGIC.length)
+            && prefix[MAGIC.length] == VERSION;
+    }
+
+    /**
+     * Encrypts a single chunk. Chunks are independent and may be encrypted on any thread in any order.
+     * @param key the AES key.
+     * @param iv the repository IV.
+     * @param header the header of the archive.
+     * @param index the position of the chunk in the archive.
+     * @param last whether this is the last chunk of the archive.
+     * @param plaintext the chunk plaintext, at most the chunk size of the header.
+     * @param length the number of plaintext bytes.
+     * @return the encrypted chunk including its tag.
+     * @throws GeneralSecurityException if the encryption fails.
+     */
+    public static byte[] encryptChunk(final byte[] key,
+                                      final byte[] iv,
+                                      final Header header,
+                                      final long index,
+                                      final boolean last,
+                                      final byte[] plaintext,
+                                      final int length) throws GeneralSecurityException {
+        byte[] output = new byte[length + TAG_LENGTH];
+        process(Cipher.getInstance(AppConfig.CRYPTO_AES_GCM), Cipher.ENCRYPT_MODE,
+                new SecretKeySpec(key, AppConfig.CRYPTO_AES), iv, header, index, last, plaintext, length, output);
+        return output;
+    }
+
+    /**
+     * Decrypts and authenticates a single chunk.
+     * @param key the AES key.
+     * @param iv the repository IV.
+     * @param header the header of the archive.
+     * @param index the position of the chunk in the archive.
+     * @param last whether this is the last chunk of the archive.
+     * @param ciphertext the encrypted chunk including its tag.
+     * @param length the number of ciphertext bytes.
+     * @return the chunk plaintext.
+     * @throws GeneralSecurityException if the chunk fails authentication.
+     */
+    public static byte[] decryptChunk(final byte[] key,
+                                      final byte[] iv,
+                                      final Header header,
+                                      final long index,
+                                      final boolean last,
+                                      final byte[] ciphertext,
+                                      final int length) throws GeneralSecurityException {
+        byte[] output = new byte[Math.max(0, length - TAG_LENGTH)];
+        process(Cipher.getInstance(AppConfig.CRYPTO_AES_GCM), Cipher.DECRYPT_MODE,
+                new SecretKeySpec(key, AppConfig.CRYPTO_AES), iv, header, index, last, ciphertext, length, output);
+        return output;
+    }
+
+    /**
+     * Encrypts the index written after the last chunk.
+     * @param key the AES key.
+     * @param iv the repository IV.
+     * @param header the header of the archive.
+     * @param chunkCount the number of chunks in the archive.
+     * @param plainLength the total plaintext length.
+     * @return the encrypted index.
+     * @throws GeneralSecurityException if the encryption fails.
+     */
+    public static byte[] encryptIndex(final byte[] key,
+                                      final byte[] iv,
+                                      final Header header,
+                                      final long chunkCount,
+                                      final long plainLength) throws GeneralSecurityException {
+        byte[] index = ByteBuffer.allocate(2 * Long.BYTES).putLong(chunkCount).putLong(plainLength).array();
+        Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, AppConfig.CRYPTO_AES),
+                                   iv, header, chunkCount, TYPE_INDEX);
+        return cipher.doFinal(index);
+    }
+
+    /**
+     * Decrypts the index of an archive and checks it against the chunks that were read.
+     * @param key the AES key.
+     * @param iv the repository IV.
+     * @param header the header of the archive.
+     * @param encryptedIndex the encrypted index.
+     * @param chunkCount the number of chunks that were read.
+     * @param plainLength the number of plaintext bytes that were produced.
+     * @throws GeneralSecurityException if the index fails authentication or does not match.
+     */
+    public static void verifyIndex(final byte[] key,
+                                   final byte[] iv,
+                                   final Header header,
+                                   final byte[] encryptedIndex,
+                                   final long chunkCount,
+                                   final long plainLength) throws GeneralSecurityException {
+        Cipher cipher = initCipher(Cipher.DECRYPT_MODE, new SecretKeySpec(key, AppConfig.CRYPTO_AES),
+                                   iv, header, chunkCount, TYPE_INDEX);
+        ByteBuffer index = ByteBuffer.wrap(cipher.doFinal(encryptedIndex));
+        if (index.getLong() != chunkCount || index.getLong() != plainLength) {
+            throw new GeneralSecurityException("Archive index does not match its chunks");
+        }
+    }
+
+    /**
+     * Returns the position of an encrypted chunk within the archive, for random access.
+     * @param header the header of the archive.
+     * @param index the position of the chunk.
+     * @return the byte offset of the chunk from the start of the archive.
+     */
+    public static long chunkOffset(final Header header, final long index) {
+        return HEADER_LENGTH + index * (header.chunkSize() + (long) TAG_LENGTH);
+    }
+
+    /**
+     * Encrypts or decrypts one chunk with the given cipher into the output buffer.
+     * @param cipher the cipher to initialize for the chunk.
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+     * @param keySpec the AES key.
+     * @param iv the repository IV.
+     * @param header the header of the archive.
+     * @param index the position of the chunk.
+     * @param last whether this is the last chunk.
+     * @param input the chunk input.
+     * @param length the number of input bytes.
+     * @param output receives the chunk output.
+     * @return the number of output bytes.
+     * @throws GeneralSecurityException if the operation or the authentication fails.
+     */
+    private static int process(final Cipher cipher,
+                               final int mode,
+                               final SecretKeySpec keySpec,
+                               final byte[] iv,
+                               final Header header,
+                               final long index,
+                               final boolean last,
+                               final byte[] input,
+                               final int length,
+                               final byte[] output) throws GeneralSecurityException {
+        if (index >= MAX_CHUNKS) {
+            throw new GeneralSecurityException("Too many chunks in archive");
+        }
+        cipher.init(mode, keySpec, new GCMParameterSpec(AppConfig.CRYPTO_AES_TAG_LENGTH,
+                                                        nonce(iv, header, index)));
+        cipher.updateAAD(aad(header, index, last ? TYPE_LAST_CHUNK : TYPE_CHUNK));
+        return cipher.doFinal(input, 0, length, output, 0);
+    }
+
+    /**
+     * Creates a cipher initialized for one element of the archive.
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+     * @param keySpec the AES key.
+     * @param iv the repository IV.
+     * @param header the header of the archive.
+     * @param counter the nonce counter of the element.
+     * @param type the type of the element.
+     * @return the initialized cipher.
+     * @throws GeneralSecurityException if the cipher cannot be initialized.
+     */
+    private static Cipher initCipher(final int mode,
+                                     final SecretKeySpec keySpec,
+                                     final byte[] iv,
+                                     final Header header,
+                                     final long counter,
+                                     final byte type) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(AppConfig.CRYPTO_AES_GCM);
+        cipher.init(mode, keySpec, new GCMParameterSpec(AppConfig.CRYPTO_AES_TAG_LENGTH,
+                                                        nonce(iv, header, counter)));
+        cipher.updateAAD(aad(header, counter, type));
+        return cipher;
+    }
+
+    /**
+     * Derives the nonce of an element from the repository IV, the archive salt and the counter.
+     * @param iv the repository IV.
+     * @param header the header of the archive.
+     * @param counter the counter of the element.
+     * @return the 12 byte nonce.
+     */
+    private static byte[] nonce(final byte[] iv, final Header header, final long counter) {
+        byte[] nonce = Arrays.copyOf(iv, AppConfig.CRYPTO_IV_LENGTH);
+        for (int i = 0; i < SALT_LENGTH; i++) {
+            nonce[i] ^= header.salt[i];
+        }
+        nonce[8] ^= (byte) (counter >>> 24);
+        nonce[9] ^= (byte) (counter >>> 16);
+        nonce[10] ^= (byte) (counter >>> 8);
+        nonce[11] ^= (byte) counter;
+        return nonce;
+    }
+
+    /**
+     * Builds the additional authenticated data of an element.
+     * @param header the header of the archive.
+     * @param counter the counter of the element.
+     * @param type the type of the element.
+     * @return the additional authenticated data.
+     */
+    private static byte[] aad(final Header header, final long counter, final byte type) {
+        return ByteBuffer.allocate(HEADER_LENGTH + Long.BYTES + 1)
+            .put(header.encoded)
+            .putLong(counter)
+            .put(type)
+            .array();
+    }
+
+    /**
+     * Decrypts an archive written as a single GCM message before the chunked format existed.
+     * @param key the AES key.
+     * @param iv the repository IV.
+     * @param inputStream the encrypted archive.
+     * @param outputStream receives the plaintext.
+     * @throws IOException if reading or writing fails.
+     * @throws GeneralSecurityException if the cipher cannot be initialized.
+     */
+    private static void decryptLegacy(final byte[] key,
+                                      final byte[] iv,
+                                      final InputStream inputStream,
+                                      final OutputStream outputStream)
+        throws IOException, GeneralSecurityException {
+        try (CipherInputStream cipherIn = new CipherInputStream(inputStream,
+                                                                AesGcm.newCipher(Cipher.DECRYPT_MODE, key, iv))) {
+            cipherIn.transferTo(outputStream);
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * The plaintext header of a chunked archive.
+     */
+    public static final class Header {
+
+        private final int chunkSize;
+        private final byte[] salt;
+        private final byte[] encoded;
+
+        /**
+         * Creates a header from its fields.
+         * @param chunkSize the plaintext size of every chunk but the last.
+         * @param salt the per-archive nonce salt.
+         */
+        private Header(final int chunkSize, final byte[] salt) {
+            this.chunkSize = chunkSize;
+            this.salt = salt;
+            this.encoded = ByteBuffer.allocate(HEADER_LENGTH)
+                .put(MAGIC)
+                .put(VERSION)
+                .put((byte) 0)
+                .putShort((short) 0)
+                .putInt(chunkSize)
+                .put(salt)
+                .array();
+        }
+
+        /**
+         * Creates the header of a new archive with a random salt.
+         * @param chunkSize the plaintext size of every chunk but the last.
+         * @return the new header.
+         */
+        public static Header create(final int chunkSize) {
+            byte[] salt = new byte[SALT_LENGTH];
+            RANDOM.nextBytes(salt);
+            return new Header(chunkSize, salt);
+        }
+
+        /**
+         * Parses the header at the start of an archive.
+         * @param bytes the header bytes.
+         * @return the parsed header.
+         * @throws IOException if the bytes are not a supported header.
+         */
+        public static Header parse(final byte[] bytes) throws IOException {
+            if (!isChunked(bytes)) {
+                throw new IOException("Unsupported archive header");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, MAGIC.length + 4, HEADER_LENGTH - MAGIC.length - 4);
+            int chunkSize = buffer.getInt();
+            if (chunkSize <= 0 || chunkSize > AppConfig.CRYPTO_MAX_CHUNK_SIZE) {
+                throw new IOException("Invalid chunk size: " + chunkSize);
+            }
+            byte[] salt = new byte[SALT_LENGTH];
+            buffer.get(salt);
+            return new Header(chunkSize, salt);
+        }
+
+        /**
+         * Returns the plaintext size of every chunk but the last.
+         * @return the chunk size.
+         */
+        public int chunkSize() {
+            return chunkSize;
+        }
+
+        /**
+         * Returns the encoded header.
+         * @return a copy of the header bytes.
+         */
+        public byte[] encoded() {
+            return encoded.clone();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package se.miun.dt133g.zkgitclient.crypto;
+
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Keyed convergent encryption of deduplicated chunks.
+ * The key of a chunk is the HMAC-SHA256 of its plaintext under the account AES key, so the same plaintext
+ * always encrypts to the same ciphertext for an account, which makes chunks deduplicable, while nobody
+ * without the account key can confirm that a chunk holds a guessed plaintext. The id of a chunk is the
+ * SHA-256 of its ciphertext, which lets any holder verify a chunk without being able to decrypt it.
+ * Since every chunk key encrypts exactly one plaintext, a fixed nonce is safe.
+ * @author Leif Rogell
+ */
+public final class ConvergentChunkCipher {
+
+    private static final byte[] NONCE = new byte[AppConfig.CRYPTO_IV_LENGTH];
+    private static final ThreadLocal<Mac> HMAC = ThreadLocal.withInitial(() -> {
+            try {
+                return Mac.getInstance(AppConfig.CRYPTO_HMAC_SHA_256);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private ConvergentChunkCipher() { }
+
+    /**
+     * Encrypts a chunk.
+     * @param accountKey the account AES key.
+     * @param plaintext the chunk.
+     * @return the encrypted chunk with its id and key.
+     * @throws GeneralSecurityException if the encryption fails.
+     */
+    public static EncryptedChunk encrypt(final byte[] accountKey, final byte[] plaintext)
+        throws GeneralSecurityException {
+        Mac hmac = HMAC.get();
+        hmac.init(new SecretKeySpec(accountKey, AppConfig.CRYPTO_HMAC_SHA_256));
+        byte[] key = hmac.doFinal(plaintext);
+        byte[] ciphertext = AesGcm.encrypt(key, NONCE, plaintext);
+        return new EncryptedChunk(Sha256.digest(ciphertext), key, ciphertext, plaintext.length);
+    }
+
+    /**
+     * Verifies and decrypts a chunk.
+     * @param id the id of the chunk.
+     * @param key the key of the chunk.
+     * @param ciphertext the encrypted chunk.
+     * @return the plaintext.
+     * @throws GeneralSecurityException if the ciphertext does not match the id or fails authentication.
+     */
+    public static byte[] decrypt(final byte[] id, final byte[] key, final byte[] ciphertext)
+        throws GeneralSecurityException {
+        if (!MessageDigest.isEqual(id, Sha256.digest(ciphertext))) {
+            throw new GeneralSecurityException("Chunk does not match its id");
+        }
+        return AesGcm.decrypt(key, NONCE, ciphertext);
+    }
+
+    /**
+     * A chunk encrypted with its own key.
+     */
+    public static final class EncryptedChunk {
+
+        private final byte[] id;
+        private final byte[] key;
+        private final byte[] ciphertext;
+        private final int plainLength;
+
+        /**
+         * Creates an encrypted chunk.
+         * @param id the SHA-256 of the ciphertext.
+         * @param key the key of the chunk.
+         * @param ciphertext the ciphertext followed by the authentication tag.
+         * @param plainLength the length of the plaintext.
+         */
+        private EncryptedChunk(final byte[] id, final byte[] key, final byte[] ciphertext, final int plainLength) {
+            this.id = id;
+            this.key = key;
+            this.ciphertext = ciphertext;
+            this.plainLength = plainLength;
+        }
+
+        /**
+         * Returns the id of the chunk.
+         * @return the SHA-256 of the ciphertext.
+         */
+        public byte[] getId() {
+            return id;
+        }
+
+        /**
+         * Returns the key of the chunk.
+         * @return the chunk key.
+         */
+        public byte[] getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the encrypted chunk.
+         * @return the ciphertext followed by the authentication tag.
+         */
+        public byte[] getCiphertext() {
+            return ciphertext;
+        }
+
+        /**
+         * Returns the length of the plaintext.
+         * @return the plaintext length.
+         */
+        public int getPlainLength() {
+            return plainLength;
+        }
+    }
+}
@@ -17,6 +17,16 @@ import java.util.function.Supplier;
  */
 public final class EncryptionFactory {
 
+    private static final Map<String, Supplier<EncryptionHandler>> CONSTRUCTORS =
+        Map.of(AppConfig.CRYPTO_AES, AesEncryptionHandler::new,
+               AppConfig.CRYPTO_PBKDF2, Pbkdf2KeyGenerator::new,
+               AppConfig.CRYPTO_RSA, RsaEncryptionHandler::new,
+               AppConfig.CRYPTO_SHA_256, Sha256HashHandler::new,
+               AppConfig.CRYPTO_RSA_SIGNATURE, RsaSignatureHandler::new,
+               AppConfig.CRYPTO_SHA_256_FILE, Sha256HashFileHandler::new,
+               AppConfig.CRYPTO_IV, IvHandler::new,
+               AppConfig.CRYPTO_AES_FILE, AesFileEncryptionHandler::new);
+
     private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
 
     /**
@@ -28,6 +38,7 @@ public final class EncryptionFactory {
      * Retrieves an appropriate encryption handler based on the given encryption type.
      * This method checks the provided encryption type against a predefined map of supported types
      * and returns the corresponding handler. If the type is invalid, an {@link IllegalArgumentException} is thrown.
+     * The returned handler is shared by the whole application and must only be used from one thread at a time.
      * @param type the encryption type (e.g., AES, RSA, SHA-256).
      * @return an instance of the corresponding {@link EncryptionHandler}.
      * @throws IllegalArgumentException if the encryption type is invalid.
@@ -47,11 +58,47 @@ public final class EncryptionFactory {
                                                                    Sha256HashFileHandler::getInstance,
                                                                    AppConfig.CRYPTO_IV,
                                                                    IvHandler::getInstance,
-                                                                   "fileAes",
+                                                                   AppConfig.CRYPTO_AES_FILE,
                                                                    AesFileEncryptionHandler::getInstance);
 
         return Optional.ofNullable(handlers.get(type))
             .map(Supplier::get)
             .orElseThrow(() -> new IllegalArgumentException("Invalid encryption type: " + type));
     }
+
+    /**
+     * Creates a new encryption handler of the given type that is owned by the caller.
+     * Use this for a single operation that must not share its state with other threads.
+     * @param type the encryption type (e.g., AES, RSA, SHA-256).
+     * @return a new instance of the corresponding {@link EncryptionHandler}.
+     * @throws IllegalArgumentException if the encryption type is invalid.
+     */
+    public static EncryptionHandler newEncryptionHandler(final String type) {
+        return Optional.ofNullable(CONSTRUCTORS.get(type))
+            .map(Supplier::get)
+            .orElseThrow(() -> new IllegalArgumentException("Invalid encryption type: " + type));
+    }
+
+    /**
+     * Returns an encryption handler of the given type that keeps a separate instance for every thread.
+     * The returned handler can be stored in a field of a shared object; the set input, keys and output
+     * of one thread are never seen by another thread.
+     * @param type the encryption type (e.g., AES, RSA, SHA-256).
+     * @return a thread confined {@link EncryptionHandler}.
+     * @throws IllegalArgumentException if the encryption type is invalid.
+     */
+    public static EncryptionHandler getThreadLocalEncryptionHandler(final String type) {
+        if (!CONSTRUCTORS.containsKey(type)) {
+            throw new IllegalArgumentException("Invalid encryption type: " + type);
+        }
+        return new ThreadLocalEncryptionHandler(() -> newEncryptionHandler(type));
+    }
+
+    /**
+     * Drops the keys held by the thread local encryption handlers of all threads, to be called when the user
+     * data is cleared. Each thread gets a fresh delegate the next time it uses a handler.
+     */
+    public static void clearThreadLocalEncryptionHandlers() {
+        ThreadLocalEncryptionHandler.clearAll();
+    }
 }
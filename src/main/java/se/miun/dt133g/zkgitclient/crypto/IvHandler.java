@@ -27,16 +27,16 @@ public final class IvHandler implements EncryptionHandler {
     private byte[] iv;
 
     /**
-     * Private constructor to prevent instantiation.
+     * Package-private constructor, used by the factory to create per-thread and per-operation instances.
      */
-    private IvHandler() { }
+    IvHandler() { }
 
     /**
      * Returns the singleton instance of IvHandler.
      * This method ensures that only one instance of IvHandler is used throughout the application.
      * @return the singleton instance of IvHandler.
      */
-    public static IvHandler getInstance() {
+    public static synchronized IvHandler getInstance() {
         if (INSTANCE == null) {
             INSTANCE = new IvHandler();
         }
@@ -0,0 +1,172 @@
+package se.miun.dt133g.zkgitclient.crypto;
+
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+import se.miun.dt133g.zkgitclient.support.StageMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Encrypts a stream into the {@link ChunkedAesGcm} format using all cores.
+ * Chunks are read in order, encrypted on a shared worker pool and written in order. At most
+ * {@link AppConfig#CRYPTO_MAX_IN_FLIGHT_CHUNKS} chunks are in flight at a time, which bounds the memory
+ * used by a transfer to a few chunk sizes regardless of the repository size. Plaintext buffers are reused
+ * once their chunk has been written.
+ * @author Leif Rogell
+ */
+public final class ParallelChunkEncryptor {
+
+    private static volatile ExecutorService WORKERS;
+    private static final Logger LOGGER = ZkGitLogger.getLogger(ParallelChunkEncryptor.class);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private ParallelChunkEncryptor() { }
+
+    /**
+     * Returns the shared pool of crypto worker threads, creating it on first use.
+     * @return the worker pool.
+     */
+    public static ExecutorService getWorkers() {
+        if (WORKERS == null) {
+            synchronized (ParallelChunkEncryptor.class) {
+                if (WORKERS == null) {
+                    AtomicInteger threadCount = new AtomicInteger();
+                    WORKERS = Executors.newFixedThreadPool(Math.max(1, AppConfig.CRYPTO_WORKER_THREADS),
+                                                           runnable -> {
+                                                               Thread thread = new Thread(runnable,
+                                                                   AppConfig.CRYPTO_WORKER_THREAD_PREFIX
+                                                                   + threadCount.incrementAndGet());
+                                                               thread.setDaemon(true);
+                                                               return thread;
+                                                           });
+                }
+            }
+        }
+        return WORKERS;
+    }
+
+    /**
+     * Encrypts the input stream into the chunked format, encrypting chunks in parallel.
+     * @param key the AES key.
+     * @param iv the repository IV.
+     * @param inputStream the plaintext.
+     * @param outputStream receives the encrypted archive.
+     * @param metrics receives the number of plaintext bytes encrypted.
+     * @throws IOException if reading or writing fails or the thread is interrupted.
+     * @throws GeneralSecurityException if the encryption of a chunk fails.
+     */
+    public static void encrypt(final byte[] key,
+                               final byte[] iv,
+                               final InputStream inputStream,
+                               final OutputStream outputStream,
+                               final StageMetrics metrics)
+        throws IOException, GeneralSecurityException {
+        ChunkedAesGcm.Header header = ChunkedAesGcm.Header.create(AppConfig.CRYPTO_CHUNK_SIZE);
+        int chunkSize = header.chunkSize();
+        int maxInFlight = Math.max(1, AppConfig.CRYPTO_MAX_IN_FLIGHT_CHUNKS);
+        ExecutorService workers = getWorkers();
+        Deque<PendingChunk> inFlight = new ArrayDeque<>();
+        Deque<byte[]> freeBuffers = new ArrayDeque<>();
+
+        metrics.start();
+        outputStream.write(header.encoded());
+        try {
+            byte[] current = new byte[chunkSize];
+            int currentLength = inputStream.readNBytes(current, 0, chunkSize);
+            long index = 0;
+            long plainLength = 0;
+            while (true) {
+                byte[] next = freeBuffers.isEmpty() ? new byte[chunkSize] : freeBuffers.poll();
+                int nextLength = currentLength == chunkSize ? inputStream.readNBytes(next, 0, chunkSize) : 0;
+                boolean last = nextLength == 0;
+
+                final byte[] plaintext = current;
+                final int length = currentLength;
+                final long chunkIndex = index;
+                inFlight.add(new PendingChunk(workers.submit(() -> ChunkedAesGcm.encryptChunk(key, iv, header,
+                                                                                                chunkIndex, last,
+                                                                                                plaintext, length)),
+                                              plaintext, length));
+                plainLength += length;
+                index++;
+
+                while (inFlight.size() >= maxInFlight || (last && !inFlight.isEmpty())) {
+                    PendingChunk done = inFlight.poll();
+                    outputStream.write(done.await());
+                    metrics.addBytes(done.length);
+                    freeBuffers.add(done.plaintext);
+                }
+
+                if (last) {
+                    freeBuffers.add(next);
+                    break;
+                }
+                current = next;
+                currentLength = nextLength;
+            }
+
+            outputStream.write(ChunkedAesGcm.encryptIndex(key, iv, header, index, plainLength));
+            outputStream.flush();
+            LOGGER.fine("Encrypted " + index + " chunks, " + metrics);
+        } finally {
+            inFlight.forEach(pending -> pending.future.cancel(true));
+            metrics.finish();
+        }
+    }
+
+    /**
+     * A chunk submitted for encryption together with its plaintext buffer.
+     */
+    private static final class PendingChunk {
+
+        private final Future<byte[]> future;
+        private final byte[] plaintext;
+        private final int length;
+
+        /**
+         * Creates a pending chunk.
+         * @param future the encryption task of the chunk.
+         * @param plaintext the plaintext buffer of the chunk.
+         * @param length the number of plaintext bytes.
+         */
+        private PendingChunk(final Future<byte[]> future, final byte[] plaintext, final int length) {
+            this.future = future;
+            this.plaintext = plaintext;
+            this.length = length;
+        }
+
+        /**
+         * Waits for the encryption of the chunk.
+         * @return the encrypted chunk.
+         * @throws IOException if the thread is interrupted while waiting.
+         * @throws GeneralSecurityException if the encryption failed.
+         */
+        private byte[] await() throws IOException, GeneralSecurityException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while encrypting");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof GeneralSecurityException) {
+                    throw (GeneralSecurityException) e.getCause();
+                }
+                throw new IOException("Chunk encryption failed: " + e.getCause(), e.getCause());
+            }
+        }
+    }
+}
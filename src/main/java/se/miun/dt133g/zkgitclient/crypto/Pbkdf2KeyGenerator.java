@@ -32,16 +32,16 @@ public final class Pbkdf2KeyGenerator implements EncryptionHandler {
     private byte[] iv;
 
     /**
-     * Private constructor to prevent instantiation.
+     * Package-private constructor, used by the factory to create per-thread and per-operation instances.
      */
-    private Pbkdf2KeyGenerator() { }
+    Pbkdf2KeyGenerator() { }
 
     /**
      * Returns the singleton instance of Pbkdf2KeyGenerator.
      * This method ensures that only one instance of Pbkdf2KeyGenerator is used throughout the application.
      * @return the singleton instance of Pbkdf2KeyGenerator.
      */
-    public static Pbkdf2KeyGenerator getInstance() {
+    public static synchronized Pbkdf2KeyGenerator getInstance() {
         if (INSTANCE == null) {
             INSTANCE = new Pbkdf2KeyGenerator();
         }
@@ -0,0 +1,189 @@
+package se.miun.dt133g.zkgitclient.crypto;
+
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Singleton engine for signing request hashes with the private RSA key of the user.
+ * Every thread keeps its own {@link Signature} that stays initialized with the last used key, so signing a
+ * request is only the RSA operation: no provider lookup, key parsing or initialization on the hot path.
+ * The signer counts signatures, failures and latency to expose throughput and latency figures.
+ * {@link #clear()} invalidates the signatures of all threads when the user data is cleared, so a thread
+ * of a later session never signs with the key of an earlier one.
+ * @author Leif Rogell
+ */
+public final class RequestSigner {
+
+    private static volatile RequestSigner INSTANCE;
+    private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
+
+    private final ThreadLocal<SignerState> signers = ThreadLocal.withInitial(SignerState::new);
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder signCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+    private final AtomicLong startNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private RequestSigner() { }
+
+    /**
+     * Returns the singleton instance of RequestSigner.
+     * @return the RequestSigner instance.
+     */
+    public static RequestSigner getInstance() {
+        if (INSTANCE == null) {
+            synchronized (RequestSigner.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new RequestSigner();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Signs the given data with the private key of the given JWK.
+     * @param privRsaJwk the RSA private key in JWK format.
+     * @param data the data to sign.
+     * @return the signature encoded in Base64 URL format.
+     * @throws GeneralSecurityException if the key is missing or malformed, or the signing fails.
+     */
+    public String sign(final String privRsaJwk, final String data) throws GeneralSecurityException {
+        long start = System.nanoTime();
+        try {
+            PrivateKey privateKey = RsaKeyCache.getInstance().getPrivateKey(privRsaJwk);
+            Signature signature = signers.get().initializedFor(privateKey, generation.get());
+            signature.update(data.getBytes(StandardCharsets.UTF_8));
+            String signed = Base64.getUrlEncoder().encodeToString(signature.sign());
+
+            long elapsed = System.nanoTime() - start;
+            signCount.increment();
+            totalNanos.add(elapsed);
+            maxNanos.accumulate(elapsed);
+            return signed;
+        } catch (GeneralSecurityException e) {
+            failureCount.increment();
+            signers.remove();
+            LOGGER.warning("Could not sign request: " + e.getMessage());
+            throw e;
+        } catch (RuntimeException e) {
+            failureCount.increment();
+            signers.remove();
+            LOGGER.warning("Could not sign request, malformed key: " + e);
+            throw new GeneralSecurityException("Malformed private key", e);
+        }
+    }
+
+    /**
+     * Invalidates the signatures of all threads. Each thread drops its signature and key before it signs
+     * the next time.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        signers.remove();
+    }
+
+    /**
+     * Returns the number of successful signatures since the statistics were last reset.
+     * @return the number of signatures.
+     */
+    public long getSignCount() {
+        return signCount.sum();
+    }
+
+    /**
+     * Returns the number of failed signing attempts since the statistics were last reset.
+     * @return the number of failures.
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * Returns the average signing latency.
+     * @return the average latency in milliseconds, or 0 if nothing has been signed.
+     */
+    public double getAverageLatencyMillis() {
+        long count = signCount.sum();
+        return count == 0 ? 0 : totalNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the highest signing latency.
+     * @return the highest latency in milliseconds.
+     */
+    public double getMaxLatencyMillis() {
+        return maxNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the number of signatures per second since the statistics were last reset.
+     * @return the signing throughput.
+     */
+    public double getThroughputPerSecond() {
+        long elapsed = System.nanoTime() - startNanos.get();
+        return elapsed <= 0 ? 0 : signCount.sum() / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Resets the throughput and latency counters.
+     */
+    public void resetStatistics() {
+        signCount.reset();
+        failureCount.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        startNanos.set(System.nanoTime());
+    }
+
+    /**
+     * The signature of one thread together with the key it is initialized with.
+     */
+    private static final class SignerState {
+
+        private Signature signature;
+        private PrivateKey key;
+        private long generation;
+
+        /**
+         * Returns the signature of the thread, initializing it for the given key if the key has changed.
+         * A signature is reset to its initialized state by {@link Signature#sign()}, so it can be reused
+         * for the next request with the same key. A state of an earlier generation is discarded first.
+         * @param privateKey the private key to sign with.
+         * @param currentGeneration the generation of the signer.
+         * @return the initialized signature.
+         * @throws GeneralSecurityException if the signature cannot be created or initialized.
+         */
+        private Signature initializedFor(final PrivateKey privateKey,
+                                         final long currentGeneration) throws GeneralSecurityException {
+            if (generation != currentGeneration) {
+                signature = null;
+                key = null;
+                generation = currentGeneration;
+            }
+            if (signature == null) {
+                signature = Signature.getInstance(AppConfig.CRYPTO_RSA_SIGNATURE_ALGORITHM);
+            }
+            if (key != privateKey) {
+                signature.initSign(privateKey);
+                key = privateKey;
+            }
+            return signature;
+        }
+    }
+}
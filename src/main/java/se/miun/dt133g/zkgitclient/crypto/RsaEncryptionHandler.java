@@ -3,21 +3,13 @@ package se.miun.dt133g.zkgitclient.crypto;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.io.IOException;
 import javax.crypto.Cipher;
 import javax.crypto.spec.OAEPParameterSpec;
 import javax.crypto.spec.PSource;
-import java.security.KeyFactory;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.spec.MGF1ParameterSpec;
-import java.security.spec.RSAPublicKeySpec;
-import java.security.spec.RSAPrivateCrtKeySpec;
-import java.math.BigInteger;
 import java.util.Base64;
-import java.util.Map;
 import java.util.logging.Logger;
 
 /**
@@ -39,16 +31,16 @@ public final class RsaEncryptionHandler implements EncryptionHandler {
     private byte[] iv;
 
     /**
-     * Private constructor to prevent instantiation.
+     * Package-private constructor, used by the factory to create per-thread and per-operation instances.
      */
-    private RsaEncryptionHandler() { }
+    RsaEncryptionHandler() { }
 
     /**
      * Returns the singleton instance of the RsaEncryptionHandler.
      * This method ensures that only one instance of RsaEncryptionHandler is used throughout the application.
      * @return the singleton instance of RsaEncryptionHandler.
      */
-    public static RsaEncryptionHandler getInstance() {
+    public static synchronized RsaEncryptionHandler getInstance() {
         if (INSTANCE == null) {
             INSTANCE = new RsaEncryptionHandler();
         }
@@ -103,71 +95,21 @@ public final class RsaEncryptionHandler implements EncryptionHandler {
     }
 
     /**
-     * Loads and constructs a private key from the provided JWK string.
-     * This method decodes the components of the RSA private key from the JWK and constructs an RSAPrivateCrtKeySpec,
-     * which is then used to generate the private key.
+     * Returns the private key of the provided JWK string from the {@link RsaKeyCache}.
      * @return the RSA private key.
      * @throws Exception if the JWK cannot be parsed or the key cannot be generated.
      */
     private PrivateKey loadPrivateKey() throws Exception {
-        ObjectMapper mapper = new ObjectMapper();
-        Map<String, String> jwk = mapper.readValue(rsaKey, Map.class);
-
-        BigInteger modulus = decodeBase64ToBigInt(jwk.get(AppConfig.RSA_N));
-        BigInteger privateExponent = decodeBase64ToBigInt(jwk.get(AppConfig.RSA_D));
-        BigInteger publicExponent = decodeBase64ToBigInt(jwk.get(AppConfig.RSA_E));
-        BigInteger primeP = decodeBase64ToBigInt(jwk.get(AppConfig.RSA_P));
-        BigInteger primeQ = decodeBase64ToBigInt(jwk.get(AppConfig.RSA_Q));
-        BigInteger primeExponentP = decodeBase64ToBigInt(jwk.get(AppConfig.RSA_DP));
-        BigInteger primeExponentQ = decodeBase64ToBigInt(jwk.get(AppConfig.RSA_DQ));
-        BigInteger crtCoefficient = decodeBase64ToBigInt(jwk.get(AppConfig.RSA_QI));
-
-        RSAPrivateCrtKeySpec keySpec = new RSAPrivateCrtKeySpec(modulus,
-                                                                publicExponent,
-                                                                privateExponent,
-                                                                primeP,
-                                                                primeQ,
-                                                                primeExponentP,
-                                                                primeExponentQ,
-                                                                crtCoefficient);
-
-        KeyFactory keyFactory = KeyFactory.getInstance(AppConfig.CRYPTO_RSA);
-        return keyFactory.generatePrivate(keySpec);
+        return RsaKeyCache.getInstance().getPrivateKey(rsaKey);
     }
 
     /**
-     * Loads and constructs a public key from the provided JWK string.
-     * This method decodes the components of the RSA public key from the JWK and constructs an RSAPublicKeySpec,
-     * which is then used to generate the public key.
+     * Returns the public key of the provided JWK string from the {@link RsaKeyCache}.
      * @return the RSA public key.
      * @throws Exception if the JWK cannot be parsed or the key cannot be generated.
      */
     private PublicKey loadPublicKey() throws Exception {
-        try {
-            Map<String, String> jwkMap = new ObjectMapper().readValue(rsaKey, Map.class);
-
-            BigInteger modulus = decodeBase64ToBigInt(jwkMap.get(AppConfig.RSA_N));
-            BigInteger publicExponent = decodeBase64ToBigInt(jwkMap.get(AppConfig.RSA_E));
-
-            RSAPublicKeySpec keySpec = new RSAPublicKeySpec(modulus, publicExponent);
-            KeyFactory keyFactory = KeyFactory.getInstance(AppConfig.CRYPTO_RSA);
-
-            return keyFactory.generatePublic(keySpec);
-        } catch (IOException e) {
-            throw new Exception("Error parsing JWK to PublicKey: " + e.getMessage(), e);
-        } catch (Exception e) {
-            throw new Exception("Error generating PublicKey: " + e.getMessage(), e);
-        }
-    }
-
-    /**
-     * Decodes a Base64 encoded string into a BigInteger.
-     * This method is used to decode the Base64 encoded components of the RSA keys into BigInteger values.
-     * @param base64 the Base64 encoded string.
-     * @return the decoded BigInteger.
-     */
-    private BigInteger decodeBase64ToBigInt(final String base64) {
-        return new BigInteger(1, Base64.getUrlDecoder().decode(base64));
+        return RsaKeyCache.getInstance().getPublicKey(rsaKey);
     }
 
     /**
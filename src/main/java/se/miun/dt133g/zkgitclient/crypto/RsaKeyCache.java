@@ -0,0 +1,169 @@
+package se.miun.dt133g.zkgitclient.crypto;
+
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Singleton cache of parsed RSA keys.
+ * Keys are parsed from their JWK representation once and kept, keyed on the SHA-256 fingerprint of the JWK
+ * string, until {@link #clear()} is called when the user data is cleared. Signing and RSA encryption
+ * therefore only perform the RSA operation instead of parsing JSON and building the key on every call.
+ * @author Leif Rogell
+ */
+public final class RsaKeyCache {
+
+    private static volatile RsaKeyCache INSTANCE;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, String>> JWK_TYPE = new TypeReference<>() { };
+    private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
+
+    private final Map<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+    private final Map<String, PublicKey> publicKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private RsaKeyCache() { }
+
+    /**
+     * Returns the singleton instance of RsaKeyCache.
+     * @return the RsaKeyCache instance.
+     */
+    public static RsaKeyCache getInstance() {
+        if (INSTANCE == null) {
+            synchronized (RsaKeyCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new RsaKeyCache();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the private key of the given JWK, parsing it on first use.
+     * @param jwk the RSA private key in JWK format.
+     * @return the RSA private key.
+     * @throws GeneralSecurityException if the JWK cannot be parsed or the key cannot be generated.
+     */
+    public PrivateKey getPrivateKey(final String jwk) throws GeneralSecurityException {
+        String fingerprint = Sha256.hex(jwk);
+        PrivateKey key = privateKeys.get(fingerprint);
+        if (key == null) {
+            LOGGER.finest("Parsing RSA private key " + fingerprint);
+            key = parsePrivateKey(jwk);
+            privateKeys.put(fingerprint, key);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the public key of the given JWK, parsing it on first use.
+     * @param jwk the RSA public or private key in JWK format.
+     * @return the RSA public key.
+     * @throws GeneralSecurityException if the JWK cannot be parsed or the key cannot be generated.
+     */
+    public PublicKey getPublicKey(final String jwk) throws GeneralSecurityException {
+        String fingerprint = Sha256.hex(jwk);
+        PublicKey key = publicKeys.get(fingerprint);
+        if (key == null) {
+            LOGGER.finest("Parsing RSA public key " + fingerprint);
+            key = parsePublicKey(jwk);
+            publicKeys.put(fingerprint, key);
+        }
+        return key;
+    }
+
+    /**
+     * Evicts all cached keys.
+     */
+    public void clear() {
+        privateKeys.clear();
+        publicKeys.clear();
+        LOGGER.finest("Cleared RSA key cache");
+    }
+
+    /**
+     * Returns the number of cached keys.
+     * @return the number of cached private and public keys.
+     */
+    public int size() {
+        return privateKeys.size() + publicKeys.size();
+    }
+
+    /**
+     * Constructs a private key from the given JWK string.
+     * @param jwk the RSA private key in JWK format.
+     * @return the RSA private key.
+     * @throws GeneralSecurityException if the JWK cannot be parsed or the key cannot be generated.
+     */
+    private PrivateKey parsePrivateKey(final String jwk) throws GeneralSecurityException {
+        Map<String, String> jwkMap = readJwk(jwk);
+
+        RSAPrivateCrtKeySpec keySpec =
+            new RSAPrivateCrtKeySpec(decodeBase64ToBigInt(jwkMap.get(AppConfig.RSA_N)),
+                                     decodeBase64ToBigInt(jwkMap.get(AppConfig.RSA_E)),
+                                     decodeBase64ToBigInt(jwkMap.get(AppConfig.RSA_D)),
+                                     decodeBase64ToBigInt(jwkMap.get(AppConfig.RSA_P)),
+                                     decodeBase64ToBigInt(jwkMap.get(AppConfig.RSA_Q)),
+                                     decodeBase64ToBigInt(jwkMap.get(AppConfig.RSA_DP)),
+                                     decodeBase64ToBigInt(jwkMap.get(AppConfig.RSA_DQ)),
+                                     decodeBase64ToBigInt(jwkMap.get(AppConfig.RSA_QI)));
+
+        return KeyFactory.getInstance(AppConfig.CRYPTO_RSA).generatePrivate(keySpec);
+    }
+
+    /**
+     * Constructs a public key from the given JWK string.
+     * @param jwk the RSA public or private key in JWK format.
+     * @return the RSA public key.
+     * @throws GeneralSecurityException if the JWK cannot be parsed or the key cannot be generated.
+     */
+    private PublicKey parsePublicKey(final String jwk) throws GeneralSecurityException {
+        Map<String, String> jwkMap = readJwk(jwk);
+
+        RSAPublicKeySpec keySpec = new RSAPublicKeySpec(decodeBase64ToBigInt(jwkMap.get(AppConfig.RSA_N)),
+                                                        decodeBase64ToBigInt(jwkMap.get(AppConfig.RSA_E)));
+
+        return KeyFactory.getInstance(AppConfig.CRYPTO_RSA).generatePublic(keySpec);
+    }
+
+    /**
+     * Reads the members of a JWK string.
+     * @param jwk the key in JWK format.
+     * @return the JWK members.
+     * @throws GeneralSecurityException if the JWK cannot be parsed.
+     */
+    private Map<String, String> readJwk(final String jwk) throws GeneralSecurityException {
+        try {
+            return MAPPER.readValue(jwk, JWK_TYPE);
+        } catch (IOException e) {
+            throw new GeneralSecurityException("Error parsing JWK: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decodes a Base64 URL encoded string into a BigInteger.
+     * @param base64 the Base64 URL encoded string.
+     * @return the decoded BigInteger.
+     */
+    private BigInteger decodeBase64ToBigInt(final String base64) {
+        return new BigInteger(1, Base64.getUrlDecoder().decode(base64));
+    }
+}
@@ -0,0 +1,84 @@
+package se.miun.dt133g.zkgitclient.crypto;
+
+import se.miun.dt133g.zkgitclient.support.Utils;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Stateless SHA-256 operations.
+ * Each thread reuses its own {@link MessageDigest}, so the methods can be called concurrently
+ * without locking and without looking up the algorithm for every hash.
+ * @author Leif Rogell
+ */
+public final class Sha256 {
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(Sha256::newDigest);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private Sha256() { }
+
+    /**
+     * Computes the SHA-256 digest of the input.
+     * @param input the data to hash.
+     * @return the 32 byte digest.
+     */
+    public static byte[] digest(final byte[] input) {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        return md.digest(input);
+    }
+
+    /**
+     * Computes the SHA-256 digest of the UTF-8 encoded string and returns it as a hexadecimal string.
+     * @param input the string to hash.
+     * @return the digest in hexadecimal format.
+     */
+    public static String hex(final String input) {
+        return Utils.getInstance().bytesToHex(digest(input.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Computes the SHA-256 digest of a file without loading it on the heap. The file is read through
+     * memory-mapped windows of its channel, so memory use is independent of the file size.
+     * @param file the file to hash.
+     * @return the 32 byte digest.
+     * @throws IOException if the file cannot be read.
+     */
+    public static byte[] digest(final Path file) throws IOException {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long window = Math.min(AppConfig.CRYPTO_HASH_WINDOW_SIZE, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+                md.update(buffer);
+                position += window;
+            }
+        }
+        return md.digest();
+    }
+
+    /**
+     * Creates a new SHA-256 message digest owned by the caller, for incremental hashing.
+     * @return a new message digest.
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(AppConfig.CRYPTO_SHA_256);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
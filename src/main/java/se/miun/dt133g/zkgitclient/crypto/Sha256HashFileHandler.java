@@ -4,11 +4,9 @@ import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.Utils;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.logging.Logger;
 
 /**
@@ -31,16 +29,16 @@ public final class Sha256HashFileHandler implements EncryptionHandler {
     private byte[] iv;
 
     /**
-     * Private constructor to prevent instantiation.
+     * Package-private constructor, used by the factory to create per-thread and per-operation instances.
      */
-    private Sha256HashFileHandler() { }
+    Sha256HashFileHandler() { }
 
     /**
      * Returns the singleton instance of the Sha256HashFileHandler.
      * Ensures that only one instance of the Sha256HashFileHandler class is used throughout the application.
      * @return the singleton instance of Sha256HashFileHandler.
      */
-    public static Sha256HashFileHandler getInstance() {
+    public static synchronized Sha256HashFileHandler getInstance() {
         if (INSTANCE == null) {
             INSTANCE = new Sha256HashFileHandler();
         }
@@ -67,19 +65,15 @@ public final class Sha256HashFileHandler implements EncryptionHandler {
 
     /**
      * Generates a SHA-256 hash of the file content specified by the input file
-     * path and returns it as a hexadecimal string.
+     * path and returns it as a hexadecimal string. The file is streamed, not loaded on the heap.
      * @param input the path to the file to be hashed.
      * @return the SHA-256 hash in hexadecimal string format.
      */
     private String generateSha256HexString(final String input) {
         try {
-            File file = new File(input);
-            byte[] fileBytes = Files.readAllBytes(file.toPath());
-            MessageDigest md = MessageDigest.getInstance(AppConfig.CRYPTO_SHA_256);
-            byte[] digest = md.digest(fileBytes);
-            return utils.bytesToHex(digest);
-        } catch (NoSuchAlgorithmException | IOException e) {
-            throw new RuntimeException(e);
+            return utils.bytesToHex(Sha256.digest(Paths.get(input)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
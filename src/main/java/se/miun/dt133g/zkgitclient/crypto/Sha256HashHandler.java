@@ -2,10 +2,7 @@ package se.miun.dt133g.zkgitclient.crypto;
 
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.Utils;
-import se.miun.dt133g.zkgitclient.support.AppConfig;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.logging.Logger;
 
 /**
@@ -27,16 +24,16 @@ public final class Sha256HashHandler implements EncryptionHandler {
     private byte[] iv;
 
     /**
-     * Private constructor to prevent instantiation.
+     * Package-private constructor, used by the factory to create per-thread and per-operation instances.
      */
-    private Sha256HashHandler() { }
+    Sha256HashHandler() { }
 
     /**
      * Returns the singleton instance of the Sha256HashHandler.
      * Ensures that only one instance of the Sha256HashHandler class is used throughout the application.
      * @return the singleton instance of Sha256HashHandler.
      */
-    public static Sha256HashHandler getInstance() {
+    public static synchronized Sha256HashHandler getInstance() {
         if (INSTANCE == null) {
             INSTANCE = new Sha256HashHandler();
         }
@@ -50,7 +47,7 @@ public final class Sha256HashHandler implements EncryptionHandler {
      */
     @Override
     public void encrypt() {
-        output = generateSha256HexString(input);
+        output = Sha256.hex(input);
     }
 
     /**
@@ -60,21 +57,6 @@ public final class Sha256HashHandler implements EncryptionHandler {
     @Override
     public void decrypt() { }
 
-    /**
-     * Generates a SHA-256 hash of the input string and returns it as a hexadecimal string.
-     * @param input the string to be hashed.
-     * @return the SHA-256 hash in hexadecimal string format.
-     */
-    private String generateSha256HexString(final String input) {
-        try {
-            MessageDigest md = MessageDigest.getInstance(AppConfig.CRYPTO_SHA_256);
-            byte[] digest = md.digest(input.getBytes());
-            return utils.bytesToHex(digest);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     /**
      * Sets the input string for hash generation.
      * @param input the input string to be hashed.
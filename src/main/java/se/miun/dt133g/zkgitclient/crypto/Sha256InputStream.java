@@ -0,0 +1,74 @@
+package se.miun.dt133g.zkgitclient.crypto;
+
+import se.miun.dt133g.zkgitclient.support.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+
+/**
+ * Input stream that computes the SHA-256 hash of the data while it is read.
+ * Wrapping an upload or download stream gives the hash of the transferred data without an extra pass
+ * over it. The hash is available once the stream has been read to its end.
+ * @author Leif Rogell
+ */
+public final class Sha256InputStream extends DigestInputStream {
+
+    private long bytesRead;
+
+    /**
+     * Creates a hashing stream reading from the given stream.
+     * @param inputStream the stream to read and hash.
+     */
+    public Sha256InputStream(final InputStream inputStream) {
+        super(inputStream, Sha256.newDigest());
+    }
+
+    /**
+     * Reads a byte and adds it to the hash.
+     * @return the byte read, or -1 at the end of the stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            bytesRead++;
+        }
+        return b;
+    }
+
+    /**
+     * Reads bytes into the buffer and adds them to the hash.
+     * @param buffer the buffer to read into.
+     * @param offset the start offset in the buffer.
+     * @param length the maximum number of bytes to read.
+     * @return the number of bytes read, or -1 at the end of the stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        int n = super.read(buffer, offset, length);
+        if (n > 0) {
+            bytesRead += n;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of bytes read and hashed so far.
+     * @return the number of bytes.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Completes the hash of the data read so far and returns it as a hexadecimal string.
+     * The hash is reset afterwards.
+     * @return the SHA-256 hash in hexadecimal format.
+     */
+    public String getHexDigest() {
+        return Utils.getInstance().bytesToHex(getMessageDigest().digest());
+    }
+}
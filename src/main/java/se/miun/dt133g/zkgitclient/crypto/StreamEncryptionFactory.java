@@ -39,4 +39,22 @@ public final class StreamEncryptionFactory {
             .map(Supplier::get)
             .orElseThrow(() -> new IllegalArgumentException("Invalid encryption type: " + type));
     }
+
+    /**
+     * Creates a new stream encryption handler of the given type that is owned by the caller.
+     * Use this when several streams are processed at the same time, since the keys set on a
+     * handler apply to every stream it processes.
+     * @param type the encryption type (e.g., "AES_STREAM").
+     * @return a new StreamEncryptionHandler instance.
+     * @throws IllegalArgumentException if the specified encryption type is invalid.
+     */
+    public static StreamEncryptionHandler newStreamEncryptionHandler(final String type) {
+        Map<String, Supplier<StreamEncryptionHandler>> handlers =
+            Map.of(AppConfig.CRYPTO_AES_STREAM,
+                   AesStreamEncryptionHandler::new);
+
+        return Optional.ofNullable(handlers.get(type))
+            .map(Supplier::get)
+            .orElseThrow(() -> new IllegalArgumentException("Invalid encryption type: " + type));
+    }
 }
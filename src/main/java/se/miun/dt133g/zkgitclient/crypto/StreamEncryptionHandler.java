@@ -1,5 +1,8 @@
 package se.miun.dt133g.zkgitclient.crypto;
 
+import se.miun.dt133g.zkgitclient.support.StageMetrics;
+
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
@@ -14,15 +17,27 @@ public interface StreamEncryptionHandler {
      * Encrypts the data from the provided input stream and writes the encrypted data to the output stream.
      * @param inputStream the input stream containing the data to be encrypted.
      * @param outputStream the output stream where the encrypted data will be written.
+     * @throws IOException if reading, encrypting or writing the data fails.
+     */
+    void encryptStream(InputStream inputStream, OutputStream outputStream) throws IOException;
+
+    /**
+     * Encrypts the data from the provided input stream and writes the encrypted data to the output stream,
+     * recording the throughput of the encryption.
+     * @param inputStream the input stream containing the data to be encrypted.
+     * @param outputStream the output stream where the encrypted data will be written.
+     * @param metrics receives the number of bytes encrypted and the duration of the encryption.
+     * @throws IOException if reading, encrypting or writing the data fails.
      */
-    void encryptStream(InputStream inputStream, OutputStream outputStream);
+    void encryptStream(InputStream inputStream, OutputStream outputStream, StageMetrics metrics) throws IOException;
 
     /**
      * Decrypts the data from the provided input stream and writes the decrypted data to the output stream.
      * @param inputStream the input stream containing the encrypted data to be decrypted.
      * @param outputStream the output stream where the decrypted data will be written.
+     * @throws IOException if reading, decrypting or writing the data fails, or the data has been tampered with.
      */
-    void decryptStream(InputStream inputStream, OutputStream outputStream);
+    void decryptStream(InputStream inputStream, OutputStream outputStream) throws IOException;
 
     /**
      * Sets the AES key for encryption and decryption operations.
@@ -0,0 +1,120 @@
+package se.miun.dt133g.zkgitclient.crypto;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Encryption handler that delegates to a separate handler instance for every thread.
+ * Created by {@link EncryptionFactory#getThreadLocalEncryptionHandler(String)} so that shared commands and
+ * connections can keep the set input, keys and output protocol while running on several threads at once.
+ * {@link #clearAll()} invalidates the delegates of all handlers and threads, so the keys set during one
+ * session are dropped before a pooled thread uses the handler in the next.
+ * @author Leif Rogell
+ */
+final class ThreadLocalEncryptionHandler implements EncryptionHandler {
+
+    private static final AtomicLong GENERATION = new AtomicLong();
+    private final ThreadLocal<Delegate> delegates = ThreadLocal.withInitial(Delegate::new);
+    private final Supplier<EncryptionHandler> factory;
+
+    /**
+     * Creates a handler that lazily creates one delegate per thread.
+     * @param factory the supplier creating a new delegate handler.
+     */
+    ThreadLocalEncryptionHandler(final Supplier<EncryptionHandler> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Invalidates the delegates of all thread local handlers. Every thread creates a new delegate, without
+     * the keys of the old one, the next time it uses a handler.
+     */
+    static void clearAll() {
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Returns the delegate of the current thread, replacing it if it was created before the last
+     * {@link #clearAll()}.
+     * @return the delegate handler.
+     */
+    private EncryptionHandler handler() {
+        Delegate delegate = delegates.get();
+        long generation = GENERATION.get();
+        if (delegate.handler == null || delegate.generation != generation) {
+            delegate.handler = factory.get();
+            delegate.generation = generation;
+        }
+        return delegate.handler;
+    }
+
+    /**
+     * Encrypts the input of the current thread.
+     */
+    @Override
+    public void encrypt() {
+        handler().encrypt();
+    }
+
+    /**
+     * Decrypts the input of the current thread.
+     */
+    @Override
+    public void decrypt() {
+        handler().decrypt();
+    }
+
+    /**
+     * Sets the input of the current thread.
+     * @param input the data to be encrypted or decrypted.
+     */
+    @Override
+    public void setInput(final String input) {
+        handler().setInput(input);
+    }
+
+    /**
+     * Sets the AES key of the current thread.
+     * @param aesKey the AES encryption key.
+     */
+    @Override
+    public void setAesKey(final byte[] aesKey) {
+        handler().setAesKey(aesKey);
+    }
+
+    /**
+     * Sets the RSA key of the current thread.
+     * @param rsaKey the RSA key used for encryption or decryption.
+     */
+    @Override
+    public void setRsaKey(final String rsaKey) {
+        handler().setRsaKey(rsaKey);
+    }
+
+    /**
+     * Sets the initialization vector of the current thread.
+     * @param iv the initialization vector.
+     */
+    @Override
+    public void setIv(final byte[] iv) {
+        handler().setIv(iv);
+    }
+
+    /**
+     * Retrieves the output of the last operation of the current thread.
+     * @return the encrypted or decrypted output.
+     */
+    @Override
+    public String getOutput() {
+        return handler().getOutput();
+    }
+
+    /**
+     * The delegate of one thread together with the generation it was created in.
+     */
+    private static final class Delegate {
+
+        private EncryptionHandler handler;
+        private long generation;
+    }
+}
@@ -18,12 +18,16 @@
  *   <li>SHA-256 File Hashing - {@link se.miun.dt133g.zkgitclient.crypto.Sha256HashFileHandler}</li>
  *   <li>Initialization Vector (IV) handling - {@link se.miun.dt133g.zkgitclient.crypto.IvHandler}</li>
  *   <li>File AES Encryption - {@link se.miun.dt133g.zkgitclient.crypto.AesFileEncryptionHandler}</li>
+ *   <li>Convergent chunk encryption - {@link se.miun.dt133g.zkgitclient.crypto.ConvergentChunkCipher}</li>
  * </ul>
  *
  * This package aims to abstract the cryptographic operations behind a common interface
  * to allow the client application to choose an encryption scheme dynamically based on configuration.
  *
  * The {@link se.miun.dt133g.zkgitclient.crypto.EncryptionFactory} is the primary entry point
- * for obtaining encryption handler instances based on encryption type configuration.
+ * for obtaining encryption handler instances based on encryption type configuration. Handlers used from
+ * shared objects are obtained per thread or per operation, and the stateless
+ * {@link se.miun.dt133g.zkgitclient.crypto.AesGcm} and {@link se.miun.dt133g.zkgitclient.crypto.Sha256}
+ * operations can be called from any thread.
  */
 package se.miun.dt133g.zkgitclient.crypto;
@@ -0,0 +1,213 @@
+package se.miun.dt133g.zkgitclient.dedup;
+
+import se.miun.dt133g.zkgitclient.crypto.ConvergentChunkCipher;
+import se.miun.dt133g.zkgitclient.crypto.ConvergentChunkCipher.EncryptedChunk;
+import se.miun.dt133g.zkgitclient.crypto.ParallelChunkEncryptor;
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+import se.miun.dt133g.zkgitclient.support.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Replaces an archive by a manifest of deduplicated, encrypted chunks and restores it again.
+ * The archive is split by {@link FastCdcChunker} and every chunk is encrypted by {@link ConvergentChunkCipher}
+ * on the crypto worker pool. Chunks are handled in batches of {@link AppConfig#DEDUP_BATCH_SIZE}: the store is
+ * asked once per batch which chunks it is missing, and only those are stored. An unchanged repository thus
+ * stores no chunks at all, and a push after a small change stores only the chunks around the change.
+ * @author Leif Rogell
+ */
+public final class ChunkDeduplicator {
+
+    private static final Logger LOGGER = ZkGitLogger.getLogger(ChunkDeduplicator.class);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private ChunkDeduplicator() { }
+
+    /**
+     * Chunks and encrypts an archive, stores the chunks missing from the store and writes the manifest.
+     * @param inputStream the archive.
+     * @param manifestStream receives the manifest of the archive.
+     * @param accountKey the account AES key the chunk keys are derived from.
+     * @param store the store receiving the chunks.
+     * @throws IOException if reading, writing or storing fails.
+     * @throws GeneralSecurityException if the encryption of a chunk fails.
+     */
+    public static void deduplicate(final InputStream inputStream,
+                                   final OutputStream manifestStream,
+                                   final byte[] accountKey,
+                                   final ChunkStore store) throws IOException, GeneralSecurityException {
+        FastCdcChunker chunker = new FastCdcChunker(inputStream);
+        ChunkManifest manifest = new ChunkManifest();
+        List<byte[]> batch = new ArrayList<>(AppConfig.DEDUP_BATCH_SIZE);
+        long storedChunks = 0;
+        long storedBytes = 0;
+
+        byte[] chunk;
+        while ((chunk = chunker.nextChunk()) != null) {
+            batch.add(chunk);
+            if (batch.size() >= AppConfig.DEDUP_BATCH_SIZE) {
+                long[] stored = storeBatch(batch, manifest, accountKey, store);
+                storedChunks += stored[0];
+                storedBytes += stored[1];
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            long[] stored = storeBatch(batch, manifest, accountKey, store);
+            storedChunks += stored[0];
+            storedBytes += stored[1];
+        }
+        manifest.writeTo(manifestStream);
+        LOGGER.info("Deduplicated " + manifest.getEntries().size() + " chunks of " + manifest.getTotalSize()
+                    + " bytes, stored " + storedChunks + " new chunks of " + storedBytes + " bytes");
+    }
+
+    /**
+     * Encrypts a batch of chunks in parallel, adds them to the manifest in order and stores the missing ones.
+     * @param batch the plaintext chunks.
+     * @param manifest the manifest receiving the chunks.
+     * @param accountKey the account AES key.
+     * @param store the store receiving the chunks.
+     * @return the number of chunks stored and their total ciphertext length.
+     * @throws IOException if storing fails or the thread is interrupted.
+     * @throws GeneralSecurityException if the encryption of a chunk fails.
+     */
+    private static long[] storeBatch(final List<byte[]> batch,
+                                     final ChunkManifest manifest,
+                                     final byte[] accountKey,
+                                     final ChunkStore store) throws IOException, GeneralSecurityException {
+        ExecutorService workers = ParallelChunkEncryptor.getWorkers();
+        List<Future<EncryptedChunk>> futures = new ArrayList<>(batch.size());
+        Map<String, EncryptedChunk> chunks = new LinkedHashMap<>();
+        Utils utils = Utils.getInstance();
+        try {
+            for (byte[] plaintext : batch) {
+                futures.add(workers.submit(() -> ConvergentChunkCipher.encrypt(accountKey, plaintext)));
+            }
+            for (Future<EncryptedChunk> future : futures) {
+                EncryptedChunk encrypted = await(future);
+                manifest.add(encrypted.getId(), encrypted.getKey(), encrypted.getPlainLength());
+                chunks.putIfAbsent(utils.bytesToHex(encrypted.getId()), encrypted);
+            }
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        Set<String> missing = store.findMissing(chunks.keySet());
+        long storedBytes = 0;
+        for (String id : missing) {
+            byte[] ciphertext = chunks.get(id).getCiphertext();
+            store.put(id, ciphertext);
+            storedBytes += ciphertext.length;
+        }
+        return new long[] {missing.size(), storedBytes};
+    }
+
+    /**
+     * Restores an archive from its manifest, loading and decrypting the chunks on the crypto worker pool.
+     * A stream that is not a manifest is an archive that was pushed without deduplication and is copied as is.
+     * @param inputStream the manifest or archive.
+     * @param outputStream receives the archive.
+     * @param store the store holding the chunks.
+     * @throws IOException if reading or writing fails or a chunk is missing.
+     * @throws GeneralSecurityException if a chunk does not match its id or fails authentication.
+     */
+    public static void reassemble(final InputStream inputStream,
+                                  final OutputStream outputStream,
+                                  final ChunkStore store) throws IOException, GeneralSecurityException {
+        PushbackInputStream pushback = new PushbackInputStream(inputStream, ChunkManifest.getMagicLength());
+        byte[] prefix = pushback.readNBytes(ChunkManifest.getMagicLength());
+        pushback.unread(prefix);
+        if (!ChunkManifest.isManifest(prefix)) {
+            pushback.transferTo(outputStream);
+            return;
+        }
+
+        ChunkManifest manifest = ChunkManifest.readFrom(pushback);
+        ExecutorService workers = ParallelChunkEncryptor.getWorkers();
+        int maxInFlight = Math.max(1, AppConfig.CRYPTO_MAX_IN_FLIGHT_CHUNKS);
+        Utils utils = Utils.getInstance();
+        Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+        try {
+            for (ChunkManifest.Entry entry : manifest.getEntries()) {
+                inFlight.add(workers.submit(loadChunk(entry, store, utils)));
+                if (inFlight.size() >= maxInFlight) {
+                    outputStream.write(await(inFlight.poll()));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                outputStream.write(await(inFlight.poll()));
+            }
+            outputStream.flush();
+            LOGGER.fine("Reassembled " + manifest.getEntries().size() + " chunks of "
+                        + manifest.getTotalSize() + " bytes");
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Creates the task loading, verifying and decrypting a chunk.
+     * @param entry the manifest entry of the chunk.
+     * @param store the store holding the chunk.
+     * @param utils the utilities converting the id to hexadecimal.
+     * @return the task returning the plaintext of the chunk.
+     */
+    private static Callable<byte[]> loadChunk(final ChunkManifest.Entry entry,
+                                              final ChunkStore store,
+                                              final Utils utils) {
+        return () -> {
+            byte[] plaintext = ConvergentChunkCipher.decrypt(entry.getId(), entry.getKey(),
+                                                             store.get(utils.bytesToHex(entry.getId())));
+            if (plaintext.length != entry.getLength()) {
+                throw new IOException("Chunk length mismatch: " + plaintext.length + " != " + entry.getLength());
+            }
+            return plaintext;
+        };
+    }
+
+    /**
+     * Waits for a task of the worker pool.
+     * @param future the task.
+     * @param <T> the result type of the task.
+     * @return the result of the task.
+     * @throws IOException if the task failed with an I/O error or the thread is interrupted.
+     * @throws GeneralSecurityException if the task failed with a cryptographic error.
+     */
+    private static <T> T await(final Future<T> future) throws IOException, GeneralSecurityException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing chunks");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) e.getCause();
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Chunk processing failed: " + e.getCause(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package se.miun.dt133g.zkgitclient.dedup;
+
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordered list of the chunks making up a deduplicated archive.
+ * The manifest is what is uploaded as the repository file in place of the archive; it is encrypted like
+ * any archive, so the chunk keys it holds are only readable with the account key. The binary layout is:
+ * <pre>
+ * magic    {@link AppConfig#DEDUP_MANIFEST_MAGIC} (4)
+ * version  {@link AppConfig#DEDUP_MANIFEST_VERSION} (1)
+ * count    number of chunks (4)
+ * size     total plaintext length (8)
+ * chunks   id (32) | key (32) | plaintext length (4), repeated count times
+ * </pre>
+ * @author Leif Rogell
+ */
+public final class ChunkManifest {
+
+    private static final byte[] MAGIC = AppConfig.DEDUP_MANIFEST_MAGIC.getBytes(StandardCharsets.US_ASCII);
+    private static final int DIGEST_LENGTH = 32;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private long totalSize;
+
+    /**
+     * Appends a chunk to the manifest.
+     * @param id the SHA-256 of the ciphertext of the chunk.
+     * @param key the key of the chunk.
+     * @param length the plaintext length of the chunk.
+     */
+    public void add(final byte[] id, final byte[] key, final int length) {
+        if (id.length != DIGEST_LENGTH || key.length != DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Chunk id and key must be " + DIGEST_LENGTH + " bytes");
+        }
+        entries.add(new Entry(id, key, length));
+        totalSize += length;
+    }
+
+    /**
+     * Returns the chunks of the manifest in order.
+     * @return an unmodifiable list of the chunks.
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Returns the total plaintext length of the chunks.
+     * @return the size of the archive in bytes.
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Writes the manifest.
+     * @param outputStream the stream to write to.
+     * @throws IOException if writing fails.
+     */
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.write(MAGIC);
+        out.writeByte(AppConfig.DEDUP_MANIFEST_VERSION);
+        out.writeInt(entries.size());
+        out.writeLong(totalSize);
+        for (Entry entry : entries) {
+            out.write(entry.id);
+            out.write(entry.key);
+            out.writeInt(entry.length);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a manifest, including its magic.
+     * @param inputStream the stream to read from.
+     * @return the manifest.
+     * @throws IOException if the stream is not a manifest of a supported version or is truncated.
+     */
+    public static ChunkManifest readFrom(final InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!isManifest(magic)) {
+            throw new IOException("Not a chunk manifest");
+        }
+        int version = in.readUnsignedByte();
+        if (version != AppConfig.DEDUP_MANIFEST_VERSION) {
+            throw new IOException("Unsupported chunk manifest version: " + version);
+        }
+        int count = in.readInt();
+        long expectedSize = in.readLong();
+        if (count < 0) {
+            throw new IOException("Invalid chunk count: " + count);
+        }
+        ChunkManifest manifest = new ChunkManifest();
+        for (int i = 0; i < count; i++) {
+            byte[] id = new byte[DIGEST_LENGTH];
+            byte[] key = new byte[DIGEST_LENGTH];
+            in.readFully(id);
+            in.readFully(key);
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Invalid chunk length: " + length);
+            }
+            manifest.add(id, key, length);
+        }
+        if (manifest.totalSize != expectedSize) {
+            throw new IOException("Chunk manifest size mismatch: " + manifest.totalSize + " != " + expectedSize);
+        }
+        return manifest;
+    }
+
+    /**
+     * Checks whether a stream starts with the manifest magic.
+     * @param prefix at least the first four bytes of the stream.
+     * @return true if the stream is a chunk manifest.
+     */
+    public static boolean isManifest(final byte[] prefix) {
+        return prefix.length >= MAGIC.length && Arrays.equals(prefix, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /**
+     * Returns the length of the manifest magic.
+     * @return the number of bytes needed by {@link #isManifest(byte[])}.
+     */
+    public static int getMagicLength() {
+        return MAGIC.length;
+    }
+
+    /**
+     * A chunk of the manifest.
+     */
+    public static final class Entry {
+
+        private final byte[] id;
+        private final byte[] key;
+        private final int length;
+
+        /**
+         * Creates an entry.
+         * @param id the SHA-256 of the ciphertext of the chunk.
+         * @param key the key of the chunk.
+         * @param length the plaintext length of the chunk.
+         */
+        private Entry(final byte[] id, final byte[] key, final int length) {
+            this.id = id;
+            this.key = key;
+            this.length = length;
+        }
+
+        /**
+         * Returns the id of the chunk.
+         * @return the SHA-256 of the ciphertext.
+         */
+        public byte[] getId() {
+            return id;
+        }
+
+        /**
+         * Returns the key of the chunk.
+         * @return the chunk key.
+         */
+        public byte[] getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the plaintext length of the chunk.
+         * @return the length in bytes.
+         */
+        public int getLength() {
+            return length;
+        }
+    }
+}
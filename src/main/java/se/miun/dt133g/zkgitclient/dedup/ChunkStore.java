@@ -0,0 +1,38 @@
+package se.miun.dt133g.zkgitclient.dedup;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Storage of encrypted chunks addressed by the hexadecimal SHA-256 of their ciphertext.
+ * A store only ever sees ciphertext, and since ids are derived from the ciphertext it can verify chunks
+ * without holding any key.
+ * @author Leif Rogell
+ */
+public interface ChunkStore {
+
+    /**
+     * Finds the chunks the store does not hold yet.
+     * @param ids the ids of the chunks.
+     * @return the ids that are missing from the store.
+     * @throws IOException if the store could not be queried.
+     */
+    Set<String> findMissing(Collection<String> ids) throws IOException;
+
+    /**
+     * Stores a chunk. Storing a chunk the store already holds has no effect.
+     * @param id the id of the chunk.
+     * @param ciphertext the encrypted chunk.
+     * @throws IOException if the chunk could not be stored.
+     */
+    void put(String id, byte[] ciphertext) throws IOException;
+
+    /**
+     * Loads a chunk.
+     * @param id the id of the chunk.
+     * @return the encrypted chunk.
+     * @throws IOException if the chunk is missing or could not be read.
+     */
+    byte[] get(String id) throws IOException;
+}
@@ -0,0 +1,163 @@
+package se.miun.dt133g.zkgitclient.dedup;
+
+import se.miun.dt133g.zkgitclient.crypto.Sha256;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a stream into content-defined chunks with the FastCDC algorithm.
+ * A gear hash rolls over the bytes of the stream and a chunk ends where the hash matches a mask, so chunk
+ * boundaries depend on the content around them rather than on their offset. Inserting or removing bytes
+ * therefore only changes the chunks around the edit, and the chunks before and after it are found again.
+ * Boundaries are normalized: a stricter mask is used below the average chunk size and a looser one above it,
+ * which keeps chunk sizes close to the average. The gear table is derived from a fixed seed, so the same
+ * content is always cut at the same places.
+ * @author Leif Rogell
+ */
+public final class FastCdcChunker {
+
+    private static final long[] GEAR = createGear();
+    private static final int NORMALIZATION_BITS = 2;
+
+    private final InputStream inputStream;
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long strictMask;
+    private final long looseMask;
+    private final byte[] buffer;
+    private int start;
+    private int end;
+    private boolean endOfStream;
+
+    /**
+     * Creates a chunker with the configured chunk sizes.
+     * @param inputStream the stream to split.
+     */
+    public FastCdcChunker(final InputStream inputStream) {
+        this(inputStream, AppConfig.DEDUP_MIN_CHUNK_SIZE, AppConfig.DEDUP_AVG_CHUNK_SIZE,
+             AppConfig.DEDUP_MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a chunker.
+     * @param inputStream the stream to split.
+     * @param minSize the minimum chunk size; only the last chunk may be smaller.
+     * @param avgSize the average chunk size, rounded down to a power of two.
+     * @param maxSize the maximum chunk size.
+     */
+    public FastCdcChunker(final InputStream inputStream,
+                          final int minSize,
+                          final int avgSize,
+                          final int maxSize) {
+        if (minSize <= 0 || minSize > avgSize || avgSize > maxSize) {
+            throw new IllegalArgumentException("Invalid chunk sizes: " + minSize + " / " + avgSize + " / " + maxSize);
+        }
+        int bits = 31 - Integer.numberOfLeadingZeros(avgSize);
+        this.inputStream = inputStream;
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        this.strictMask = mask(bits + NORMALIZATION_BITS);
+        this.looseMask = mask(bits - NORMALIZATION_BITS);
+        this.buffer = new byte[maxSize];
+    }
+
+    /**
+     * Reads the next chunk of the stream.
+     * @return the chunk, or null at the end of the stream.
+     * @throws IOException if the stream could not be read.
+     */
+    public byte[] nextChunk() throws IOException {
+        fill();
+        int available = end - start;
+        if (available == 0) {
+            return null;
+        }
+        int length = cutPoint(start, available);
+        byte[] chunk = Arrays.copyOfRange(buffer, start, start + length);
+        start += length;
+        return chunk;
+    }
+
+    /**
+     * Tops the buffer up to a full maximum chunk, unless the stream has ended.
+     * @throws IOException if the stream could not be read.
+     */
+    private void fill() throws IOException {
+        if (endOfStream || end - start == buffer.length) {
+            return;
+        }
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        while (end < buffer.length) {
+            int read = inputStream.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                endOfStream = true;
+                return;
+            }
+            end += read;
+        }
+    }
+
+    /**
+     * Finds the end of the chunk starting at the given offset.
+     * @param offset the start of the chunk in the buffer.
+     * @param length the number of bytes available from the offset.
+     * @return the length of the chunk.
+     */
+    private int cutPoint(final int offset, final int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int normal = Math.min(avgSize, length);
+        int limit = Math.min(maxSize, length);
+        long hash = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[buffer[offset + i] & 0xFF];
+            if ((hash & strictMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i++) {
+            hash = (hash << 1) + GEAR[buffer[offset + i] & 0xFF];
+            if ((hash & looseMask) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Creates a mask of the given number of the most significant bits. The gear hash shifts left, so its
+     * high bits depend on the most bytes.
+     * @param bits the number of bits, clamped to the range of a long.
+     * @return the mask.
+     */
+    private static long mask(final int bits) {
+        int clamped = Math.max(1, Math.min(Long.SIZE, bits));
+        return -1L << (Long.SIZE - clamped);
+    }
+
+    /**
+     * Derives the gear table of random values from {@link AppConfig#DEDUP_GEAR_SEED}.
+     * @return one value per byte value.
+     */
+    private static long[] createGear() {
+        long[] gear = new long[256];
+        for (int i = 0; i < gear.length; i++) {
+            byte[] digest = Sha256.digest((AppConfig.DEDUP_GEAR_SEED + i).getBytes(StandardCharsets.UTF_8));
+            gear[i] = ByteBuffer.wrap(digest).getLong();
+        }
+        return gear;
+    }
+}
@@ -0,0 +1,111 @@
+package se.miun.dt133g.zkgitclient.dedup;
+
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Chunk store on the local file system, standing in for a chunk store on the server.
+ * Chunks are kept under {@link AppConfig#DEDUP_STORE_DIR} in directories named after the first two
+ * characters of their id, so that no single directory grows too large. Chunks are written to a temporary
+ * file and moved into place, so a chunk is either complete or absent even if the client is killed.
+ * @author Leif Rogell
+ */
+public final class LocalChunkStore implements ChunkStore {
+
+    private static volatile LocalChunkStore INSTANCE;
+    private static final Pattern CHUNK_ID = Pattern.compile("[0-9a-f]{64}");
+    private static final int FAN_OUT_LENGTH = 2;
+    private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
+    private final Path root;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private LocalChunkStore() {
+        this.root = Paths.get(AppConfig.DEDUP_STORE_DIR);
+    }
+
+    /**
+     * Returns the singleton instance of LocalChunkStore.
+     * @return the LocalChunkStore instance.
+     */
+    public static LocalChunkStore getInstance() {
+        if (INSTANCE == null) {
+            synchronized (LocalChunkStore.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new LocalChunkStore();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @Override
+    public Set<String> findMissing(final Collection<String> ids) throws IOException {
+        Set<String> missing = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (!Files.exists(resolve(id))) {
+                missing.add(id);
+            }
+        }
+        return missing;
+    }
+
+    @Override
+    public void put(final String id, final byte[] ciphertext) throws IOException {
+        Path target = resolve(id);
+        if (Files.exists(target)) {
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), AppConfig.TMP_PREFIX, null);
+        try {
+            Files.write(temp, ciphertext);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target);
+            }
+        } catch (FileAlreadyExistsException e) {
+            LOGGER.finest("Chunk " + id + " was stored concurrently");
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public byte[] get(final String id) throws IOException {
+        try {
+            return Files.readAllBytes(resolve(id));
+        } catch (NoSuchFileException e) {
+            throw new IOException("Missing chunk " + id, e);
+        }
+    }
+
+    /**
+     * Resolves the file of a chunk, rejecting ids that are not SHA-256 digests.
+     * @param id the id of the chunk.
+     * @return the path of the chunk file.
+     * @throws IOException if the id is malformed.
+     */
+    private Path resolve(final String id) throws IOException {
+        if (!CHUNK_ID.matcher(id).matches()) {
+            throw new IOException("Invalid chunk id: " + id);
+        }
+        return root.resolve(id.substring(0, FAN_OUT_LENGTH)).resolve(id);
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Provides client-side deduplication of repository archives.
+ *
+ * The {@link se.miun.dt133g.zkgitclient.dedup.FastCdcChunker} splits an archive into content-defined chunks,
+ * which are encrypted with {@link se.miun.dt133g.zkgitclient.crypto.ConvergentChunkCipher} so that equal
+ * chunks of an account always have the same id. The
+ * {@link se.miun.dt133g.zkgitclient.dedup.ChunkDeduplicator} stores only the chunks a
+ * {@link se.miun.dt133g.zkgitclient.dedup.ChunkStore} does not already hold and replaces the archive by a
+ * {@link se.miun.dt133g.zkgitclient.dedup.ChunkManifest}, which is pushed in its place.
+ *
+ * The server does not store chunks yet, so the {@link se.miun.dt133g.zkgitclient.dedup.LocalChunkStore}
+ * keeps them on the local file system. Deduplication is enabled with the {@code zkgit.dedup.enabled} system
+ * property; archives pushed without it are read as before.
+ */
+package se.miun.dt133g.zkgitclient.dedup;
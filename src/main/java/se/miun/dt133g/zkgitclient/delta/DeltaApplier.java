@@ -0,0 +1,163 @@
+package se.miun.dt133g.zkgitclient.delta;
+
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.FetchConnection;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.TransportBundleStream;
+import org.eclipse.jgit.transport.URIish;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Applies a sequence of delta bundles to a repository as a single atomic change of its refs.
+ * The objects of every bundle are added to the repository as the bundle is read; they are unreachable
+ * and thus invisible until the refs are moved. The refs of every bundle are kept under
+ * {@link AppConfig#DELTA_STAGING_REFS}, which makes them reachable for the prerequisites of the next
+ * bundle without touching the refs of the repository. {@link #commit()} then moves all refs to the state
+ * of the last bundle in one atomic batch. Closing an applier that has not been committed drops the staged
+ * refs and leaves the repository as it was.
+ * @author Leif Rogell
+ */
+public final class DeltaApplier implements AutoCloseable {
+
+    private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
+    private final Repository repository;
+    private final Map<String, ObjectId> stagingRefs = new LinkedHashMap<>();
+    private Map<String, ObjectId> refs = Collections.emptyMap();
+    private int applied;
+    private boolean committed;
+
+    /**
+     * Creates an applier.
+     * @param repository the repository to apply bundles to.
+     */
+    public DeltaApplier(final Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Reads a bundle, adds its objects to the repository and stages its refs.
+     * @param bundle the bundle, read to its end.
+     * @throws IOException if the bundle is malformed or its prerequisites are missing from the repository.
+     */
+    public void apply(final InputStream bundle) throws IOException {
+        Map<String, ObjectId> bundleRefs = new LinkedHashMap<>();
+        URIish uri = new URIish().setPath(AppConfig.STAGE_BUNDLE);
+        try (TransportBundleStream transport = new TransportBundleStream(repository, uri, bundle);
+             FetchConnection connection = transport.openFetch()) {
+            connection.fetch(NullProgressMonitor.INSTANCE, connection.getRefs(), Collections.emptySet());
+            for (Ref ref : connection.getRefs()) {
+                bundleRefs.put(ref.getName(), ref.getObjectId());
+            }
+        }
+
+        Map<String, ObjectId> staged = new LinkedHashMap<>();
+        bundleRefs.forEach((name, id) -> staged.put(AppConfig.DELTA_STAGING_REFS + applied + "/"
+                                                    + name.substring(Constants.R_REFS.length()), id));
+        List<ReceiveCommand> commands = new ArrayList<>();
+        staged.forEach((name, id) -> commands.add(new ReceiveCommand(ObjectId.zeroId(), id, name)));
+        execute(commands, false);
+        stagingRefs.putAll(staged);
+        refs = bundleRefs;
+        applied++;
+        LOGGER.fine("Staged delta bundle " + applied + " with " + bundleRefs.size() + " refs");
+    }
+
+    /**
+     * Moves the refs of the repository to the refs of the last bundle applied, deleting refs the bundle
+     * does not hold, and drops the staged refs, all in one atomic batch.
+     * @throws IOException if the refs could not be updated, in which case none of them are.
+     */
+    public void commit() throws IOException {
+        if (applied == 0) {
+            return;
+        }
+        Map<String, ObjectId> current = new HashMap<>();
+        for (Ref ref : repository.getRefDatabase().getRefsByPrefix(Constants.R_REFS)) {
+            if (!ref.isSymbolic() && ref.getObjectId() != null
+                && !ref.getName().startsWith(AppConfig.DELTA_STAGING_REFS)) {
+                current.put(ref.getName(), ref.getObjectId());
+            }
+        }
+
+        List<ReceiveCommand> commands = new ArrayList<>();
+        refs.forEach((name, id) -> {
+                ObjectId old = current.getOrDefault(name, ObjectId.zeroId());
+                if (!old.equals(id)) {
+                    commands.add(new ReceiveCommand(old, id, name));
+                }
+            });
+        current.forEach((name, id) -> {
+                if (!refs.containsKey(name)) {
+                    commands.add(new ReceiveCommand(id, ObjectId.zeroId(), name));
+                }
+            });
+        commands.addAll(dropStagingRefs());
+        execute(commands, true);
+        committed = true;
+        LOGGER.fine("Applied " + applied + " delta bundles, updated " + commands.size() + " refs");
+    }
+
+    /**
+     * Drops the staged refs. The objects of applied bundles stay in the repository until Git prunes them.
+     * @throws IOException if the staged refs could not be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!committed && !stagingRefs.isEmpty()) {
+            LOGGER.fine("Discarding " + applied + " staged delta bundles");
+            execute(dropStagingRefs(), false);
+        }
+    }
+
+    /**
+     * Creates the deletions of all staged refs.
+     * @return one deletion per staged ref.
+     */
+    private List<ReceiveCommand> dropStagingRefs() {
+        List<ReceiveCommand> commands = new ArrayList<>();
+        stagingRefs.forEach((name, id) -> commands.add(new ReceiveCommand(id, ObjectId.zeroId(), name)));
+        return commands;
+    }
+
+    /**
+     * Runs a batch of ref updates.
+     * @param commands the ref updates.
+     * @param atomic true if either all or none of the updates must be applied.
+     * @throws IOException if any of the updates failed.
+     */
+    private void execute(final List<ReceiveCommand> commands, final boolean atomic) throws IOException {
+        if (commands.isEmpty()) {
+            return;
+        }
+        BatchRefUpdate batch = repository.getRefDatabase().newBatchUpdate();
+        batch.setAllowNonFastForwards(true);
+        batch.setAtomic(atomic);
+        batch.addCommand(commands);
+        try (RevWalk walk = new RevWalk(repository)) {
+            batch.execute(walk, NullProgressMonitor.INSTANCE);
+        }
+        for (ReceiveCommand command : batch.getCommands()) {
+            if (command.getResult() != ReceiveCommand.Result.OK) {
+                throw new IOException("Could not update " + command.getRefName() + ": " + command.getResult());
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package se.miun.dt133g.zkgitclient.delta;
+
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.BundleWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Writes Git bundles holding only what changed in a repository since a given commit.
+ * A delta bundle contains every ref of the repository but only the objects not reachable from its base
+ * commit, so its size is proportional to the change rather than to the repository. The base commit is
+ * a prerequisite of the bundle: it can only be applied to a repository that already holds the base.
+ * @author Leif Rogell
+ */
+public final class DeltaBundle {
+
+    private static final Logger LOGGER = ZkGitLogger.getLogger(DeltaBundle.class);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private DeltaBundle() { }
+
+    /**
+     * Opens the Git repository of a directory, which is either a bare repository or a work tree.
+     * @param directory the repository directory.
+     * @return the repository, to be closed by the caller.
+     * @throws IOException if the directory is not a Git repository.
+     */
+    public static Repository open(final Path directory) throws IOException {
+        Path gitDir = directory.resolve(".git");
+        return new FileRepositoryBuilder()
+            .setGitDir((Files.isDirectory(gitDir) ? gitDir : directory).toFile())
+            .setMustExist(true)
+            .build();
+    }
+
+    /**
+     * Resolves the commit a delta can be based on.
+     * @param repository the local repository.
+     * @param signature the signature of the remote repository, expected to be a commit hash.
+     * @return the commit, or empty if the signature is not a commit of the local repository.
+     * @throws IOException if the repository could not be read.
+     */
+    public static Optional<ObjectId> resolveBase(final Repository repository,
+                                                 final String signature) throws IOException {
+        if (signature == null || !ObjectId.isId(signature.trim())) {
+            return Optional.empty();
+        }
+        ObjectId base = ObjectId.fromString(signature.trim());
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.parseCommit(base);
+            return Optional.of(base);
+        } catch (MissingObjectException | IllegalArgumentException e) {
+            LOGGER.fine("Remote signature " + signature + " is not a local commit");
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes a bundle of all refs of the repository, omitting the objects reachable from the base.
+     * @param repository the local repository.
+     * @param base the commit the receiver already holds.
+     * @param outputStream receives the bundle.
+     * @throws IOException if the repository could not be read or the bundle could not be written.
+     */
+    public static void write(final Repository repository,
+                             final ObjectId base,
+                             final OutputStream outputStream) throws IOException {
+        BundleWriter writer = new BundleWriter(repository);
+        int refCount = 0;
+        for (Ref ref : repository.getRefDatabase().getRefs()) {
+            if (!ref.isSymbolic() && ref.getObjectId() != null) {
+                writer.include(ref.getName(), ref.getObjectId());
+                refCount++;
+            }
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            writer.assume(walk.parseCommit(base));
+        }
+        writer.writeBundle(NullProgressMonitor.INSTANCE, outputStream);
+        outputStream.flush();
+        LOGGER.fine("Wrote delta bundle of " + refCount + " refs since " + base.name());
+    }
+}
@@ -0,0 +1,89 @@
+package se.miun.dt133g.zkgitclient.delta;
+
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The state of a repository on the server: a full snapshot followed by a chain of delta segments.
+ * Every segment is stored on the server as a repository file of its own, named after the repository, the
+ * snapshot and the signature it is based on, and carries the signature it leads to. Following the chain
+ * from the snapshot therefore leads to the current signature of the repository. Keying segments by their
+ * snapshot keeps segments of an earlier snapshot out of the chain once a new snapshot has been pushed.
+ * @author Leif Rogell
+ */
+public final class DeltaChain {
+
+    private final String repoName;
+    private final String snapshot;
+    private final List<String> signatures = new ArrayList<>();
+
+    /**
+     * Creates a chain that has no segments yet.
+     * @param repoName the name of the repository.
+     * @param snapshot the signature of the full snapshot.
+     */
+    public DeltaChain(final String repoName, final String snapshot) {
+        this.repoName = repoName;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Appends a segment to the chain.
+     * @param signature the signature the segment leads to.
+     */
+    public void addSegment(final String signature) {
+        signatures.add(signature);
+    }
+
+    /**
+     * Returns the signature of the full snapshot.
+     * @return the snapshot signature.
+     */
+    public String getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the signatures the segments lead to, in order.
+     * @return an unmodifiable list of signatures.
+     */
+    public List<String> getSegments() {
+        return Collections.unmodifiableList(signatures);
+    }
+
+    /**
+     * Returns the current signature of the repository.
+     * @return the signature of the last segment, or of the snapshot if there are no segments.
+     */
+    public String getTip() {
+        return signatures.isEmpty() ? snapshot : signatures.get(signatures.size() - 1);
+    }
+
+    /**
+     * Returns the name under which the segment based on the given signature is stored.
+     * @param base the signature the segment is based on.
+     * @return the repository file name of the segment.
+     */
+    public String segmentName(final String base) {
+        return repoName + AppConfig.DELTA_SEPARATOR + snapshot + AppConfig.DELTA_SEPARATOR + base;
+    }
+
+    /**
+     * Returns the name under which the next segment, based on the current tip, is stored.
+     * @return the repository file name of the next segment.
+     */
+    public String nextSegmentName() {
+        return segmentName(getTip());
+    }
+
+    /**
+     * Checks whether the chain is long enough that the next push should be a full snapshot.
+     * @return true if the chain has reached {@link AppConfig#DELTA_MAX_SEGMENTS} segments.
+     */
+    public boolean needsCompaction() {
+        return signatures.size() >= AppConfig.DELTA_MAX_SEGMENTS;
+    }
+}
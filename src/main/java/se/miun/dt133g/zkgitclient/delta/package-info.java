@@ -0,0 +1,12 @@
+/**
+ * Provides delta transfers of repositories.
+ *
+ * The server holds a full snapshot of every repository, followed by a
+ * {@link se.miun.dt133g.zkgitclient.delta.DeltaChain} of delta segments. Each segment is a Git bundle
+ * written by {@link se.miun.dt133g.zkgitclient.delta.DeltaBundle} holding the objects added since the
+ * signature the segment is based on. A push therefore costs in proportion to the change rather than to the
+ * repository, and a full snapshot is pushed again once the chain grows long, compacting it. A fetch
+ * downloads only the segments after the local signature and applies them with a
+ * {@link se.miun.dt133g.zkgitclient.delta.DeltaApplier}, which moves the refs only once all of them applied.
+ */
+package se.miun.dt133g.zkgitclient.delta;
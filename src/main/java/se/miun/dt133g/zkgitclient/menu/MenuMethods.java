@@ -4,6 +4,7 @@ import se.miun.dt133g.zkgitclient.connection.ConnectionManager;
 import se.miun.dt133g.zkgitclient.commands.CommandManager;
 import se.miun.dt133g.zkgitclient.crypto.EncryptionHandler;
 import se.miun.dt133g.zkgitclient.crypto.EncryptionFactory;
+import se.miun.dt133g.zkgitclient.crypto.RequestSigner;
 import se.miun.dt133g.zkgitclient.user.UserCredentials;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.Utils;
@@ -96,6 +97,26 @@ public abstract class MenuMethods {
                               ipVersion);
         }
 
+        RequestSigner signer = RequestSigner.getInstance();
+        if (signer.getSignCount() > 0) {
+            System.out.printf(format,
+                              MenuItems.STATUS_SIGNED_REQUESTS,
+                              String.format(MenuItems.FORMAT_SIGNED_REQUESTS,
+                                            signer.getSignCount(),
+                                            signer.getAverageLatencyMillis(),
+                                            signer.getMaxLatencyMillis()));
+        }
+
+        ConnectionManager connectionManager = ConnectionManager.INSTANCE;
+        if (connectionManager.getTlsCachedSessions() > 0 || connectionManager.getTlsHandshakes() > 0) {
+            System.out.printf(format,
+                              MenuItems.STATUS_TLS_SESSIONS,
+                              String.format(MenuItems.FORMAT_TLS_SESSIONS,
+                                            connectionManager.getTlsCachedSessions(),
+                                            connectionManager.getTlsHandshakes(),
+                                            connectionManager.getTlsResumedHandshakes()));
+        }
+
         return serverConnection;
     }
 
@@ -112,6 +133,14 @@ public abstract class MenuMethods {
                           socket
                           ? Integer.toString(port)
                           : MenuItems.STATUS_NONE);
+        if (socket) {
+            System.out.printf(format,
+                              MenuItems.STATUS_GIT_CONNECTIONS,
+                              Integer.toString(ConnectionManager.INSTANCE.getGitConnections()));
+            System.out.printf(format,
+                              MenuItems.STATUS_GIT_QUEUE_DEPTH,
+                              Integer.toString(ConnectionManager.INSTANCE.getGitQueueDepth()));
+        }
         return socket;
     }
 
@@ -309,7 +338,7 @@ public abstract class MenuMethods {
                                       MenuItems.COLUMN_WIDTH_REPONAME,
                                       MenuItems.COLUMN_WIDTH_SIZE);
         EncryptionHandler aesHandler =
-            EncryptionFactory.getEncryptionHandler(AppConfig.CRYPTO_AES);
+            EncryptionFactory.newEncryptionHandler(AppConfig.CRYPTO_AES);
         aesHandler.setAesKey(credentials.getAesKey());
 
         Map<String, String> repoList =
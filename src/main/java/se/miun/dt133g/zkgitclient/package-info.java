@@ -22,6 +22,12 @@
  * communication between the client and the server.</li>
  *   <li>{@link se.miun.dt133g.zkgitclient.crypto} - Provides encryption and
  * decryption mechanisms for securing communication.</li>
+ *   <li>{@link se.miun.dt133g.zkgitclient.compression} - Compression codecs
+ * for repository archives.</li>
+ *   <li>{@link se.miun.dt133g.zkgitclient.dedup} - Client-side deduplication
+ * of repository archives.</li>
+ *   <li>{@link se.miun.dt133g.zkgitclient.delta} - Delta transfers of the
+ * changes since the remote signature.</li>
  *   <li>{@link se.miun.dt133g.zkgitclient.user} - Handles user credentials
  * and user session information.</li>
  *   <li>{@link se.miun.dt133g.zkgitclient.logger} - Custom logging functionality
@@ -149,6 +149,195 @@ public final class AppConfig {
 
     public static final String REPO_SIGNATURE = "commithash";
 
+    public static final String STAGE_COMPRESS = "compress";
+
+    public static final String STAGE_ENCRYPT = "encrypt";
+
+    public static final String STAGE_UPLOAD = "upload";
+
+    public static final String STAGE_READ = "read";
+
+    public static final String STAGE_DOWNLOAD = "download";
+
+    public static final String STAGE_DECRYPT = "decrypt";
+
+    public static final String STAGE_DECOMPRESS = "decompress";
+
+    public static final int PIPELINE_BUFFER_SIZE = Integer.getInteger("zkgit.pipeline.bufferSize", 256 * 1024);
+
+    public static final int PIPELINE_QUEUE_DEPTH = Integer.getInteger("zkgit.pipeline.queueDepth", 8);
+
+    public static final String PIPELINE_THREAD_PREFIX = "zkgit-pipeline-";
+
+    // Compression
+    public static final String COMPRESSION_MAGIC = "ZKGA";
+
+    public static final int COMPRESSION_FORMAT_VERSION = 2;
+
+    public static final String COMPRESSION_STORE = "store";
+
+    public static final String COMPRESSION_GZIP = "gzip";
+
+    public static final String COMPRESSION_ZSTD = "zstd";
+
+    public static final int COMPRESSION_STORE_ID = 0;
+
+    public static final int COMPRESSION_GZIP_ID = 1;
+
+    public static final int COMPRESSION_ZSTD_ID = 2;
+
+    public static final String COMPRESSION_CODEC_PROPERTY = "zkgit.compression.codec";
+
+    public static final String COMPRESSION_CODEC = System.getProperty(COMPRESSION_CODEC_PROPERTY, COMPRESSION_ZSTD);
+
+    public static final int COMPRESSION_ZSTD_LEVEL = Integer.getInteger("zkgit.compression.zstd.level", 3);
+
+    public static final int COMPRESSION_ZSTD_WORKERS = Integer.getInteger("zkgit.compression.zstd.workers",
+                                                                          Runtime.getRuntime().availableProcessors());
+
+    public static final int COMPRESSION_ZSTD_WINDOW_LOG = Integer.getInteger("zkgit.compression.zstd.windowLog", 27);
+
+    public static final int COMPRESSION_ZSTD_MAX_WINDOW_LOG = 31;
+
+    public static final long COMPRESSION_ZSTD_WORKER_MIN_SIZE = 8L * 1024 * 1024;
+
+    public static final String COMPRESSION_PAX_CODEC = "ZKGIT.codec";
+
+    public static final String COMPRESSION_PAX_SIZE = "ZKGIT.size";
+
+    public static final int COMPRESSION_MIN_ENTRY_SIZE = Integer.getInteger("zkgit.compression.minEntrySize", 256);
+
+    public static final int COMPRESSION_PROBE_SIZE = 4096;
+
+    public static final double COMPRESSION_MAX_ENTROPY = 7.5;
+
+    public static final double COMPRESSION_MIN_SAVING = 0.05;
+
+    public static final int COMPRESSION_ENTRY_BUFFER_LIMIT = Integer.getInteger("zkgit.compression.entryBufferLimit",
+                                                                                16 * 1024 * 1024);
+
+    public static final int ARCHIVE_WORKER_THREADS = Integer.getInteger("zkgit.archive.workerThreads",
+                                                                        Runtime.getRuntime().availableProcessors());
+
+    public static final int ARCHIVE_MAX_IN_FLIGHT_ENTRIES = Integer.getInteger("zkgit.archive.maxInFlightEntries",
+                                                                               64 * ARCHIVE_WORKER_THREADS);
+
+    public static final long ARCHIVE_MAX_IN_FLIGHT_BYTES = Long.getLong("zkgit.archive.maxInFlightBytes",
+                                                                        64L * 1024 * 1024);
+
+    public static final String ARCHIVE_WORKER_THREAD_PREFIX = "zkgit-archive-worker-";
+
+    // Deduplication
+    public static final boolean DEDUP_ENABLED = Boolean.getBoolean("zkgit.dedup.enabled");
+
+    public static final int DEDUP_MIN_CHUNK_SIZE = Integer.getInteger("zkgit.dedup.minChunkSize", 16 * 1024);
+
+    public static final int DEDUP_AVG_CHUNK_SIZE = Integer.getInteger("zkgit.dedup.avgChunkSize", 64 * 1024);
+
+    public static final int DEDUP_MAX_CHUNK_SIZE = Integer.getInteger("zkgit.dedup.maxChunkSize", 256 * 1024);
+
+    public static final int DEDUP_BATCH_SIZE = Integer.getInteger("zkgit.dedup.batchSize", 256);
+
+    public static final String DEDUP_STORE_DIR = System.getProperty("zkgit.dedup.storeDir",
+                                                                    System.getProperty("user.home")
+                                                                    + "/.zkgit/chunks");
+
+    public static final String DEDUP_MANIFEST_MAGIC = "ZKGM";
+
+    public static final int DEDUP_MANIFEST_VERSION = 1;
+
+    public static final String DEDUP_GEAR_SEED = "zkgit-fastcdc-gear";
+
+    public static final String STAGE_DEDUP = "dedup";
+
+    public static final String STAGE_REASSEMBLE = "reassemble";
+
+    // Delta transfers
+    public static final boolean DELTA_PUSH_ENABLED = Boolean.getBoolean("zkgit.delta.push");
+
+    public static final int DELTA_MAX_SEGMENTS = Integer.getInteger("zkgit.delta.maxSegments", 16);
+
+    public static final boolean DELTA_FETCH_ENABLED =
+        Boolean.parseBoolean(System.getProperty("zkgit.delta.fetch", "true"));
+
+    public static final String DELTA_SEPARATOR = "@";
+
+    public static final String DELTA_STAGING_REFS = "refs/zkgit/staging/";
+
+    public static final String STAGE_BUNDLE = "bundle";
+
+    public static final String STAGE_APPLY = "apply";
+
+    public static final boolean FETCH_VIA_TEMP_FILE = Boolean.getBoolean("zkgit.fetch.tempFile");
+
+    // Ranged downloads
+    public static final boolean FETCH_RANGED = Boolean.getBoolean("zkgit.fetch.ranged");
+
+    public static final int FETCH_RANGE_WORKERS = Integer.getInteger("zkgit.fetch.rangeWorkers", 4);
+
+    public static final int FETCH_RANGE_SEGMENT_SIZE = Integer.getInteger("zkgit.fetch.rangeSegmentSize",
+                                                                          8 * 1024 * 1024);
+
+    public static final int FETCH_RANGE_READ_TIMEOUT = Integer.getInteger("zkgit.fetch.rangeReadTimeout", 120000);
+
+    public static final String FETCH_RANGE_THREAD_PREFIX = "zkgit-fetch-range-";
+
+    // Shared HTTP client
+    public static final String HTTP_THREAD_PREFIX = "zkgit-http-";
+
+    // TLS
+    public static final String TLS_PINS = System.getProperty("zkgit.tls.pins");
+
+    public static final String TLS_TRUST_STORE = System.getProperty("zkgit.tls.trustStore");
+
+    public static final String TLS_TRUST_STORE_PASSWORD = System.getProperty("zkgit.tls.trustStorePassword");
+
+    public static final int TLS_SESSION_CACHE_SIZE = Integer.getInteger("zkgit.tls.sessionCacheSize", 64);
+
+    public static final int TLS_SESSION_TIMEOUT = Integer.getInteger("zkgit.tls.sessionTimeout", 86400);
+
+    // Part uploads
+    public static final boolean UPLOAD_PARTS_ENABLED = Boolean.getBoolean("zkgit.upload.parts");
+
+    public static final int UPLOAD_PART_SIZE = Integer.getInteger("zkgit.upload.partSize", 8 * 1024 * 1024);
+
+    public static final int UPLOAD_PART_READ_TIMEOUT = Integer.getInteger("zkgit.upload.partReadTimeout", 120000);
+
+    public static final long UPLOAD_RETRY_BASE_DELAY = Long.getLong("zkgit.upload.retryBaseDelay", 500L);
+
+    public static final long UPLOAD_RETRY_MAX_DELAY = Long.getLong("zkgit.upload.retryMaxDelay", 30000L);
+
+    public static final String UPLOAD_ID = "UPLOAD_ID";
+
+    public static final String UPLOAD_PART_INDEX = "PART_INDEX";
+
+    public static final String UPLOAD_LAST_PART = "LAST_PART";
+
+    // Git socket
+    public static final int GIT_MAX_CONNECTIONS = Integer.getInteger("zkgit.git.maxConnections", 64);
+
+    public static final int GIT_WORKER_THREADS = Integer.getInteger("zkgit.git.workerThreads",
+                                                                    Runtime.getRuntime().availableProcessors());
+
+    public static final int GIT_MAX_LINE_LENGTH = SIXFIVE_KB;
+
+    public static final int GIT_MAX_PENDING = Integer.getInteger("zkgit.git.maxPending", 64);
+
+    public static final String GIT_WORKER_THREAD_PREFIX = "zkgit-git-worker-";
+
+    public static final String GIT_FRAME_MAGIC = "ZKGF";
+
+    public static final int GIT_FRAME_VERSION = 1;
+
+    public static final int GIT_MAX_IN_FLIGHT = Integer.getInteger("zkgit.git.maxInFlight", 8);
+
+    public static final boolean GIT_UNIX_SOCKET_ENABLED =
+        Boolean.parseBoolean(System.getProperty("zkgit.git.unixSocket.enabled", "true"));
+
+    public static final String GIT_UNIX_SOCKET_PATH = System.getProperty("zkgit.git.unixSocket",
+                                                                         System.getProperty("user.home")
+                                                                         + "/.zkgit/git.sock");
+
     // User Credentials Name
     public static final String CREDENTIAL_ACCOUNT_NR = "accountnr";
 
@@ -217,6 +406,8 @@ public final class AppConfig {
 
     public static final String CRYPTO_SSL = "SSL";
 
+    public static final String CRYPTO_TLS = "TLS";
+
     public static final int CRYPTO_PBKDF2_ITERATIONS = 100000;
 
     public static final int CRYPTO_PBKDF2_KEY_LENGTH = 256;
@@ -235,6 +426,8 @@ public final class AppConfig {
 
     public static final String CRYPTO_AES_STREAM = "AES_STREAM";
 
+    public static final String CRYPTO_AES_FILE = "fileAes";
+
     public static final String CRYPTO_AES_GCM = "AES/GCM/NoPadding";
 
     public static final int CRYPTO_AES_TAG_LENGTH = 128;
@@ -247,6 +440,8 @@ public final class AppConfig {
 
     public static final int CRYPTO_IV_LENGTH = 12;
 
+    public static final String CRYPTO_HMAC_SHA_256 = "HmacSHA256";
+
     public static final String CRYPTO_BASE32_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
 
     public static final int CRYPTO_TOTP_SECRET_LENGTH = 24;
@@ -257,6 +452,20 @@ public final class AppConfig {
 
     public static final String CRYPTO_SHA_256_FILE = "SHA-256_FILE";
 
+    public static final long CRYPTO_HASH_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    public static final int CRYPTO_CHUNK_SIZE = Integer.getInteger("zkgit.crypto.chunkSize", 1024 * 1024);
+
+    public static final int CRYPTO_MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    public static final int CRYPTO_WORKER_THREADS = Integer.getInteger("zkgit.crypto.workerThreads",
+                                                                       Runtime.getRuntime().availableProcessors());
+
+    public static final int CRYPTO_MAX_IN_FLIGHT_CHUNKS = Integer.getInteger("zkgit.crypto.maxInFlightChunks",
+                                                                             2 * CRYPTO_WORKER_THREADS);
+
+    public static final String CRYPTO_WORKER_THREAD_PREFIX = "zkgit-crypto-worker-";
+
     public static final String CRYPTO_MGF1 = "MGF1";
 
     public static final String RSA_N = "n";
@@ -382,6 +591,8 @@ public final class AppConfig {
 
     public static final String ERROR_DECRYPTION = "Error decryption";
 
+    public static final String ERROR_DELTA_SEGMENTS = "Could not apply the delta segments";
+
     // Regexes
     public static final String REGEX_ACCOUNT_NUMBER = "\\d{25}";
 
@@ -391,8 +602,6 @@ public final class AppConfig {
 
     public static final String REGEX_TOTP = "\\d{6}";
 
-    public static final String REGEX_COMMAND_RESPONSE = "^\\s*(\\w+)\\s*=\\s*(.*)\\s*$";
-
     public static final String REGEX_PASSWORD = "[a-zA-Z0-9!@#$%^&*()_+\\-={}:;\"'<>,.?/]{1,30}";
 
     // File names
@@ -0,0 +1,86 @@
+package se.miun.dt133g.zkgitclient.support;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Bounded pool of direct byte buffers of a fixed size.
+ * At most the configured number of buffers is ever allocated; {@link #acquire()} blocks until a buffer
+ * is released when all of them are in use. Direct buffers are allocated outside the heap and are reused
+ * for the lifetime of the pool, so a pool allocates at most its capacity no matter how many buffers pass
+ * through it. A {@link Pipeline} creates a pool per channel on every run, so its buffers are reused within
+ * a transfer, not across transfers.
+ * @author Leif Rogell
+ */
+public final class ByteBufferPool {
+
+    private final int bufferSize;
+    private final int capacity;
+    private final BlockingQueue<ByteBuffer> free = new LinkedBlockingQueue<>();
+    private int allocated;
+
+    /**
+     * Creates a pool.
+     * @param bufferSize the size of every buffer in bytes.
+     * @param capacity the maximum number of buffers.
+     */
+    public ByteBufferPool(final int bufferSize, final int capacity) {
+        if (bufferSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Invalid buffer pool size: " + bufferSize + " x " + capacity);
+        }
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, allocating one if the pool has not reached its capacity.
+     * @return a buffer ready to be written to.
+     * @throws IOException if the thread is interrupted while waiting for a buffer.
+     */
+    public ByteBuffer acquire() throws IOException {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            synchronized (this) {
+                if (allocated < capacity) {
+                    allocated++;
+                    return ByteBuffer.allocateDirect(bufferSize);
+                }
+            }
+            try {
+                buffer = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a buffer");
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     * @param buffer the buffer, which must have been acquired from this pool.
+     */
+    public void release(final ByteBuffer buffer) {
+        free.offer(buffer);
+    }
+
+    /**
+     * Returns the size of the buffers of the pool.
+     * @return the buffer size in bytes.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of buffers allocated so far.
+     * @return the number of allocated buffers.
+     */
+    public synchronized int getAllocated() {
+        return allocated;
+    }
+}
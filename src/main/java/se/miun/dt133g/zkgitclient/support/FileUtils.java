@@ -1,20 +1,33 @@
 package se.miun.dt133g.zkgitclient.support;
 
+import se.miun.dt133g.zkgitclient.compression.CompressionCodec;
+import se.miun.dt133g.zkgitclient.compression.CompressionFactory;
 import se.miun.dt133g.zkgitclient.user.UserCredentials;
 import se.miun.dt133g.zkgitclient.user.CurrentUserRepo;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
-import java.util.zip.GZIPOutputStream;
-import java.util.zip.ZipInputStream;
 
 /**
  * Utility class for handling file operations such as unzipping, zipping, saving files,
@@ -25,6 +38,8 @@ import java.util.zip.ZipInputStream;
 public final class FileUtils {
 
     private static FileUtils INSTANCE;
+    static final int PERMISSION_MASK = 0777;
+    static final int[] POSIX_MODE_BITS = {0400, 0200, 0100, 0040, 0020, 0010, 0004, 0002, 0001};
 
     private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
     private UserCredentials credentials = UserCredentials.getInstance();
@@ -51,69 +66,190 @@ public final class FileUtils {
     }
 
     /**
-     * Unzips a directory from an input stream and saves the extracted files to a temporary location.
-     * @param inputStream the input stream containing the zip data.
+     * Unpacks a repository archive from an input stream and saves the extracted files to a temporary location.
+     * @param inputStream the input stream containing the archive.
+     * @throws IOException if the data could not be read or the files could not be written.
+     */
+    public void unzipDirectoryStream(final InputStream inputStream) throws IOException {
+        unzipDirectoryStream(inputStream, currentRepo);
+    }
+
+    /**
+     * Unpacks a repository archive from an input stream into the temporary location of the given repository.
+     * The archive is a TAR stream; every entry carries its size and mode, so files are written by copying
+     * exactly their size from the stream. Entries are decompressed with the codec they record. The
+     * modification times of directories are restored after the last entry, deepest first, since writing
+     * their children changes them.
+     * @param inputStream the input stream containing the archive.
+     * @param repo the repository context the data belongs to.
+     * @throws IOException if the data could not be read, an entry points outside the target directory,
+     *         or the files could not be written.
      */
-    public void unzipDirectoryStream(final InputStream inputStream) {
-        String outputDir = System.getProperty(AppConfig.JAVA_TMP) + "/zkgit-tmp-" + currentRepo.getRepoName();
-        try (ZipInputStream zipIn = new ZipInputStream(inputStream)) {
+    public void unzipDirectoryStream(final InputStream inputStream,
+                                     final CurrentUserRepo repo) throws IOException {
+        Path outputDir = Paths.get(System.getProperty(AppConfig.JAVA_TMP),
+                                   AppConfig.TMP_PREFIX + repo.getRepoName()).normalize();
+        try (TarArchiveInputStream tarIn = new TarArchiveInputStream(CompressionFactory.openArchive(inputStream))) {
             LOGGER.fine("Starting decompression of repo");
-            ZipEntry entry;
-            while ((entry = zipIn.getNextEntry()) != null) {
-                Path filePath = Paths.get(outputDir, entry.getName());
+            Files.createDirectories(outputDir);
+            boolean posix = Files.getFileStore(outputDir).supportsFileAttributeView(PosixFileAttributeView.class);
+            byte[] buffer = new byte[AppConfig.SIXFIVE_KB];
+            int entries = 0;
+            Map<Path, FileTime> directoryTimes = new HashMap<>();
+            TarArchiveEntry entry;
+            while ((entry = tarIn.getNextEntry()) != null) {
+                Path filePath = outputDir.resolve(entry.getName()).normalize();
+                if (!filePath.startsWith(outputDir)) {
+                    throw new IOException("Archive entry outside of repo directory: " + entry.getName());
+                }
                 if (entry.isDirectory()) {
                     Files.createDirectories(filePath);
-                } else {
+                } else if (entry.isFile()) {
                     Files.createDirectories(filePath.getParent());
                     try (OutputStream fileOut = Files.newOutputStream(filePath)) {
-                        byte[] buffer = new byte[64 * AppConfig.ONE_KB];
-                        int bytesRead;
-                        while ((bytesRead = zipIn.read(buffer)) != -1) {
-                            fileOut.write(buffer, 0, bytesRead);
-                        }
+                        readFileEntry(tarIn, entry, fileOut, buffer);
                     }
+                } else {
+                    LOGGER.warning("Skipping unsupported archive entry: " + entry.getName());
+                    continue;
+                }
+                if (posix) {
+                    applyMode(filePath, entry.getMode());
                 }
-                zipIn.closeEntry();
+                FileTime modified = FileTime.from(entry.getModTime().toInstant());
+                if (entry.isDirectory()) {
+                    directoryTimes.put(filePath, modified);
+                } else {
+                    Files.setLastModifiedTime(filePath, modified);
+                }
+                entries++;
+            }
+            List<Path> directories = new ArrayList<>(directoryTimes.keySet());
+            directories.sort(Comparator.comparingInt(Path::getNameCount).reversed());
+            for (Path directory : directories) {
+                Files.setLastModifiedTime(directory, directoryTimes.get(directory));
             }
-            LOGGER.fine("Finished decompressing repo");
+            LOGGER.fine("Finished decompressing repo: " + entries + " entries");
         } catch (IOException e) {
-            LOGGER.severe("Could not decompress repo");
+            LOGGER.severe("Could not decompress repo: " + e.getMessage());
+            throw e;
         }
     }
 
     /**
-     * Compresses a directory into a GZIP stream and writes it to the given output stream.
+     * Packs a directory into a compressed TAR stream with the codec of the current repository.
      * @param sourceDirPath the path of the directory to compress.
      * @param outputStream the output stream to write the compressed data to.
+     * @throws IOException if a file could not be read or the compressed data could not be written.
      */
     public void zipDirectoryStream(final String sourceDirPath,
-                                   final OutputStream outputStream) {
-        Path sourceDir = Paths.get(sourceDirPath);
+                                   final OutputStream outputStream) throws IOException {
+        zipDirectoryStream(sourceDirPath, outputStream, CompressionFactory.resolveCodec(currentRepo));
+    }
 
-        try (GZIPOutputStream gzipOut = new GZIPOutputStream(outputStream)) {
+    /**
+     * Packs a directory into a TAR stream and writes it to the given output stream.
+     * Directories and regular files are archived with their relative path, size, mode and modification time.
+     * Files are read and compressed in parallel by {@link ParallelArchiveWriter}, each on its own and only
+     * when compression is expected to shrink it; the archive does not depend on the number of threads.
+     * @param sourceDirPath the path of the directory to compress.
+     * @param outputStream the output stream to write the compressed data to.
+     * @param codec the codec compressing the entries of the archive.
+     * @throws IOException if a file could not be read or the compressed data could not be written.
+     */
+    public void zipDirectoryStream(final String sourceDirPath,
+                                   final OutputStream outputStream,
+                                   final CompressionCodec codec) throws IOException {
+        try {
             LOGGER.fine("Starting repo compression: " + sourceDirPath);
-
-            Files.walk(sourceDir)
-                .filter(path -> !Files.isDirectory(path))
-                .forEach(path -> {
-                        String entryName = sourceDir.relativize(path).toString();
-                        try (InputStream fileInputStream = Files.newInputStream(path)) {
-                            gzipOut.write(("File: " + entryName + "\n").getBytes());
-                            byte[] buffer = new byte[AppConfig.SIXFIVE_KB];
-                            int bytesRead;
-                            while ((bytesRead = fileInputStream.read(buffer)) != -1) {
-                                gzipOut.write(buffer, 0, bytesRead);
-                            }
-                        } catch (IOException e) {
-                            LOGGER.severe("Could not compress file: " + path + " - " + e.getMessage());
-                        }
-                    });
+            ParallelArchiveWriter.write(Paths.get(sourceDirPath), outputStream, codec);
             LOGGER.fine("Finished repo compression");
         } catch (IOException e) {
             LOGGER.severe("Could not compress repo: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the content of a file entry, decompressing it with the codec recorded in the entry.
+     * @param tarIn the archive, positioned at the entry.
+     * @param entry the entry.
+     * @param outputStream receives the content of the file.
+     * @param buffer the buffer used for copying.
+     * @throws IOException if the entry could not be read or records an invalid codec or size.
+     */
+    private void readFileEntry(final TarArchiveInputStream tarIn,
+                               final TarArchiveEntry entry,
+                               final OutputStream outputStream,
+                               final byte[] buffer) throws IOException {
+        String codecName = entry.getExtraPaxHeader(AppConfig.COMPRESSION_PAX_CODEC);
+        if (codecName == null) {
+            copyExactly(tarIn, outputStream, entry.getSize(), buffer);
+            return;
+        }
+
+        CompressionCodec codec;
+        long size;
+        try {
+            codec = CompressionFactory.getCodec(codecName);
+            size = Long.parseLong(entry.getExtraPaxHeader(AppConfig.COMPRESSION_PAX_SIZE));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid compressed entry " + entry.getName() + ": " + e.getMessage(), e);
+        }
+        try (InputStream decompressed = codec.decompress(new FilterInputStream(tarIn) {
+                @Override
+                public void close() {
+                    // The archive stays open for the following entries.
+                }
+            })) {
+            copyExactly(decompressed, outputStream, size, buffer);
         }
     }
 
+    /**
+     * Copies exactly the given number of bytes between two streams.
+     * @param inputStream the stream to read from.
+     * @param outputStream the stream to write to.
+     * @param size the number of bytes to copy.
+     * @param buffer the buffer used for copying.
+     * @throws IOException if the input ends early, e.g. because a file changed while it was archived.
+     */
+    static void copyExactly(final InputStream inputStream,
+                            final OutputStream outputStream,
+                            final long size,
+                            final byte[] buffer) throws IOException {
+        long remaining = size;
+        while (remaining > 0) {
+            int bytesRead = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (bytesRead == -1) {
+                throw new EOFException("Unexpected end of data, " + remaining + " of " + size + " bytes missing");
+            }
+            outputStream.write(buffer, 0, bytesRead);
+            remaining -= bytesRead;
+        }
+    }
+
+    /**
+     * Applies the permission bits of a Unix mode to a file.
+     * @param path the file, on a file system with POSIX permissions.
+     * @param mode the Unix mode.
+     * @throws IOException if the permissions could not be set.
+     */
+    private void applyMode(final Path path, final int mode) throws IOException {
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (PosixFilePermission permission : PosixFilePermission.values()) {
+            if ((mode & POSIX_MODE_BITS[permission.ordinal()]) != 0) {
+                permissions.add(permission);
+            }
+        }
+        permissions.add(PosixFilePermission.OWNER_READ);
+        permissions.add(PosixFilePermission.OWNER_WRITE);
+        if (Files.isDirectory(path)) {
+            permissions.add(PosixFilePermission.OWNER_EXECUTE);
+        }
+        Files.setPosixFilePermissions(path, permissions);
+    }
+
     /**
      * Saves a string of data to a file in the system's temporary directory.
      * @param data the data to be saved to the file.
@@ -134,9 +270,17 @@ public final class FileUtils {
      * Cleans up temporary files related to the current repository by deleting specific files and directories.
      */
     public void cleanTmpFiles() {
+        cleanTmpFiles(currentRepo);
+    }
+
+    /**
+     * Cleans up temporary files related to the given repository by deleting specific files and directories.
+     * @param repo the repository context whose temporary files are removed.
+     */
+    public void cleanTmpFiles(final CurrentUserRepo repo) {
         try {
-            if (currentRepo != null) {
-                deleteFile(currentRepo.getEncFileName());
+            if (repo != null) {
+                deleteFile(repo.getEncFileName());
                 LOGGER.finest("Deleting current encrypted tmp repo");
             }
         } catch (Exception e) {
@@ -144,17 +288,28 @@ public final class FileUtils {
         }
 
         try {
-            if (currentRepo != null) {
-                deleteFile(currentRepo.getRepoName() + AppConfig.ZIP_SUFFIX);
+            if (repo != null) {
+                deleteFile(repo.getRepoName() + AppConfig.ZIP_SUFFIX);
                 LOGGER.finest("Deleting current tmp repo");
             }
         } catch (Exception e) {
             LOGGER.warning("Could not delete current tmp repo");
         }
 
+        try {
+            if (repo != null) {
+                String partialDownload = AppConfig.TMP_PREFIX + repo.getRepoName() + AppConfig.PART_SUFFIX;
+                deleteFile(partialDownload);
+                deleteFile(partialDownload + AppConfig.PARTS_SUFFIX);
+                LOGGER.finest("Deleting partial repo download");
+            }
+        } catch (Exception e) {
+            LOGGER.warning("Could not delete partial repo download");
+        }
+
         try {
             deleteDirectoryAndContents(Paths.get(System.getProperty(AppConfig.JAVA_TMP),
-                                                 (currentRepo != null ? currentRepo.getEncFileName()
+                                                 (repo != null ? repo.getEncFileName()
                                                   + AppConfig.PARTS_SUFFIX : "unknown")));
             LOGGER.finest("Deleting enc tmp directory");
         } catch (Exception e) {
@@ -163,8 +318,8 @@ public final class FileUtils {
 
         try {
             deleteDirectoryAndContents(Paths.get(System.getProperty(AppConfig.JAVA_TMP),
-                                                 (currentRepo != null ? AppConfig.TMP_PREFIX
-                                                  + currentRepo.getRepoName() : "unknown")));
+                                                 (repo != null ? AppConfig.TMP_PREFIX
+                                                  + repo.getRepoName() : "unknown")));
             LOGGER.finest("Deleting tmp directory");
         } catch (Exception e) {
             LOGGER.warning("Could not delete tmp directory");
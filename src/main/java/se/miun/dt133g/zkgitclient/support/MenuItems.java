@@ -224,6 +224,18 @@ public final class MenuItems {
 
     public static final String STATUS_GIT_SOCKET = "Git (localhost) Port:";
 
+    public static final String STATUS_GIT_CONNECTIONS = "Git Connections:";
+
+    public static final String STATUS_GIT_QUEUE_DEPTH = "Git Queue Depth:";
+
+    public static final String STATUS_SIGNED_REQUESTS = "Signed Requests:";
+
+    public static final String FORMAT_SIGNED_REQUESTS = "%d (%.1f ms avg, %.1f ms max)";
+
+    public static final String STATUS_TLS_SESSIONS = "TLS Sessions:";
+
+    public static final String FORMAT_TLS_SESSIONS = "%d cached (%d handshakes, %d resumed)";
+
     public static final String STATUS_LOGIN = "Active Login:";
 
     public static final String STATUS_ACCOUNT_NUMBER = "AccountNr:";
@@ -0,0 +1,460 @@
+package se.miun.dt133g.zkgitclient.support;
+
+import se.miun.dt133g.zkgitclient.compression.CompressionCodec;
+import se.miun.dt133g.zkgitclient.compression.CompressionFactory;
+import se.miun.dt133g.zkgitclient.compression.CompressionPolicy;
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Writes a directory as a repository archive using all cores.
+ * The directory tree is listed one level at a time with all directories of a level listed in parallel.
+ * Files are then read and compressed on a shared worker pool and written to the archive in the order of
+ * the walk. Children are ordered by name, so the archive is byte-identical regardless of the number of
+ * threads and of the order in which the file system lists directories. At most
+ * {@link AppConfig#ARCHIVE_MAX_IN_FLIGHT_ENTRIES} entries and about {@link AppConfig#ARCHIVE_MAX_IN_FLIGHT_BYTES}
+ * bytes of file content are prepared ahead of the writer.
+ * @author Leif Rogell
+ */
+public final class ParallelArchiveWriter {
+
+    private static volatile ExecutorService WORKERS;
+    private static final Logger LOGGER = ZkGitLogger.getLogger(ParallelArchiveWriter.class);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private ParallelArchiveWriter() { }
+
+    /**
+     * Returns the shared pool of archive worker threads, creating it on first use.
+     * @return the worker pool.
+     */
+    public static ExecutorService getWorkers() {
+        if (WORKERS == null) {
+            synchronized (ParallelArchiveWriter.class) {
+                if (WORKERS == null) {
+                    AtomicInteger threadCount = new AtomicInteger();
+                    WORKERS = Executors.newFixedThreadPool(Math.max(1, AppConfig.ARCHIVE_WORKER_THREADS),
+                                                           runnable -> {
+                                                               Thread thread = new Thread(runnable,
+                                                                   AppConfig.ARCHIVE_WORKER_THREAD_PREFIX
+                                                                   + threadCount.incrementAndGet());
+                                                               thread.setDaemon(true);
+                                                               return thread;
+                                                           });
+                }
+            }
+        }
+        return WORKERS;
+    }
+
+    /**
+     * Writes the directory as an archive. Directories and regular files are archived with their relative
+     * path, size, mode and modification time. Every file is compressed individually with the codec when
+     * {@link CompressionPolicy} expects it to shrink.
+     * @param sourceDir the directory to archive.
+     * @param outputStream receives the archive.
+     * @param codec the codec compressing the entries of the archive.
+     * @throws IOException if a file could not be read, the archive could not be written or the thread
+     *         is interrupted.
+     */
+    public static void write(final Path sourceDir,
+                             final OutputStream outputStream,
+                             final CompressionCodec codec) throws IOException {
+        ExecutorService workers = getWorkers();
+        boolean posix = Files.getFileStore(sourceDir).supportsFileAttributeView(PosixFileAttributeView.class);
+        List<WalkedFile> files = walk(sourceDir, posix, workers);
+        LOGGER.fine("Walked " + files.size() + " entries in " + sourceDir);
+
+        int maxInFlight = Math.max(1, AppConfig.ARCHIVE_MAX_IN_FLIGHT_ENTRIES);
+        Deque<Future<PreparedEntry>> inFlight = new ArrayDeque<>();
+        Deque<Long> inFlightSizes = new ArrayDeque<>();
+        long inFlightBytes = 0;
+        int compressedEntries = 0;
+
+        try (TarArchiveOutputStream tarOut = new TarArchiveOutputStream(
+                 CompressionFactory.createArchive(outputStream, codec))) {
+            tarOut.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tarOut.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            byte[] buffer = new byte[AppConfig.SIXFIVE_KB];
+
+            int next = 0;
+            while (next < files.size() || !inFlight.isEmpty()) {
+                while (next < files.size() && inFlight.size() < maxInFlight
+                       && (inFlight.isEmpty() || inFlightBytes < AppConfig.ARCHIVE_MAX_IN_FLIGHT_BYTES)) {
+                    WalkedFile file = files.get(next++);
+                    long size = file.bufferedSize();
+                    inFlight.add(workers.submit(() -> prepare(file, codec)));
+                    inFlightSizes.add(size);
+                    inFlightBytes += size;
+                }
+
+                PreparedEntry prepared = await(inFlight.poll());
+                inFlightBytes -= inFlightSizes.poll();
+                try {
+                    prepared.writeTo(tarOut, buffer);
+                } finally {
+                    prepared.release();
+                }
+                if (prepared.compressed) {
+                    compressedEntries++;
+                }
+            }
+            tarOut.finish();
+            LOGGER.fine("Archived " + files.size() + " entries, " + compressedEntries
+                        + " compressed with " + codec.getName());
+        } finally {
+            discard(inFlight);
+        }
+    }
+
+    /**
+     * Waits for the entries still being prepared when archiving fails and releases them. An entry may
+     * already be running and create its spill file even if its task is cancelled, so every task is waited
+     * for rather than cancelled.
+     * @param inFlight the entries being prepared.
+     */
+    private static void discard(final Deque<Future<PreparedEntry>> inFlight) {
+        boolean interrupted = false;
+        for (Future<PreparedEntry> pending : inFlight) {
+            while (true) {
+                try {
+                    pending.get().release();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | IOException e) {
+                    LOGGER.finest("Discarded entry: " + e.getMessage());
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Lists the directory tree, listing all directories of a level in parallel.
+     * @param sourceDir the root of the tree, which is not part of the result.
+     * @param posix whether the file system supports POSIX permissions.
+     * @param workers the pool listing the directories.
+     * @return the directories and regular files of the tree in depth-first order, children ordered by name.
+     * @throws IOException if a directory could not be listed.
+     */
+    private static List<WalkedFile> walk(final Path sourceDir,
+                                         final boolean posix,
+                                         final ExecutorService workers) throws IOException {
+        Map<Path, List<WalkedFile>> children = new HashMap<>();
+        List<Path> level = List.of(sourceDir);
+        while (!level.isEmpty()) {
+            List<Future<List<WalkedFile>>> listings = new ArrayList<>(level.size());
+            for (Path dir : level) {
+                listings.add(workers.submit(() -> list(sourceDir, dir, posix)));
+            }
+            List<Path> nextLevel = new ArrayList<>();
+            for (int i = 0; i < level.size(); i++) {
+                List<WalkedFile> listing = await(listings.get(i));
+                children.put(level.get(i), listing);
+                listing.stream()
+                    .filter(file -> file.attributes.isDirectory())
+                    .forEach(file -> nextLevel.add(file.path));
+            }
+            level = nextLevel;
+        }
+
+        List<WalkedFile> ordered = new ArrayList<>();
+        Deque<WalkedFile> stack = new ArrayDeque<>();
+        pushReversed(stack, children.get(sourceDir));
+        while (!stack.isEmpty()) {
+            WalkedFile file = stack.pop();
+            ordered.add(file);
+            if (file.attributes.isDirectory()) {
+                pushReversed(stack, children.get(file.path));
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Pushes files on a stack so that the first file is popped first.
+     * @param stack the stack.
+     * @param files the files.
+     */
+    private static void pushReversed(final Deque<WalkedFile> stack, final List<WalkedFile> files) {
+        for (int i = files.size() - 1; i >= 0; i--) {
+            stack.push(files.get(i));
+        }
+    }
+
+    /**
+     * Lists the directories and regular files of a directory with their attributes.
+     * @param sourceDir the root of the archived tree.
+     * @param dir the directory to list.
+     * @param posix whether the file system supports POSIX permissions.
+     * @return the children ordered by name.
+     * @throws IOException if the directory could not be listed.
+     */
+    private static List<WalkedFile> list(final Path sourceDir,
+                                         final Path dir,
+                                         final boolean posix) throws IOException {
+        Class<? extends BasicFileAttributes> attributeType = posix ? PosixFileAttributes.class
+            : BasicFileAttributes.class;
+        List<WalkedFile> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                BasicFileAttributes attributes = Files.readAttributes(path, attributeType, LinkOption.NOFOLLOW_LINKS);
+                if (!attributes.isDirectory() && !attributes.isRegularFile()) {
+                    LOGGER.warning("Skipping unsupported file: " + path);
+                    continue;
+                }
+                String entryName = sourceDir.relativize(path).toString().replace(path.getFileSystem().getSeparator(),
+                                                                                 "/");
+                files.add(new WalkedFile(path, entryName, attributes));
+            }
+        }
+        files.sort(Comparator.comparing(file -> file.entryName));
+        return files;
+    }
+
+    /**
+     * Reads and, if worthwhile, compresses one entry. Runs on a worker thread.
+     * @param file the file of the entry.
+     * @param codec the codec compressing the entries of the archive.
+     * @return the entry ready to be written.
+     * @throws IOException if the file could not be read or compressed.
+     */
+    private static PreparedEntry prepare(final WalkedFile file, final CompressionCodec codec) throws IOException {
+        BasicFileAttributes attributes = file.attributes;
+        TarArchiveEntry entry = new TarArchiveEntry(attributes.isDirectory() ? file.entryName + "/" : file.entryName);
+        entry.setModTime(attributes.lastModifiedTime());
+        entry.setMode(mode(attributes));
+        PreparedEntry prepared = new PreparedEntry(entry, file.path);
+        if (attributes.isDirectory()) {
+            return prepared;
+        }
+
+        long size = attributes.size();
+        entry.setSize(size);
+        byte[] content = null;
+        if (size <= AppConfig.COMPRESSION_ENTRY_BUFFER_LIMIT) {
+            content = Files.readAllBytes(file.path);
+            if (content.length != size) {
+                throw new IOException("File changed while it was archived: " + file.path);
+            }
+        }
+        boolean compress = codec.getId() != AppConfig.COMPRESSION_STORE_ID
+            && (content != null
+                ? CompressionPolicy.shouldCompress(file.entryName, content, size)
+                : CompressionPolicy.shouldCompress(file.entryName, file.path, size));
+        if (compress) {
+            try {
+                compress(prepared, content, codec, size);
+            } catch (IOException | RuntimeException e) {
+                prepared.release();
+                throw e;
+            }
+        }
+        if (!prepared.compressed) {
+            prepared.content = content;
+        }
+        return prepared;
+    }
+
+    /**
+     * Compresses the content of an entry in memory, or in a temporary file if the content is not buffered.
+     * The compressed data is kept only if it is sufficiently smaller than the content. A compressed entry
+     * records the codec and the original size in its PAX headers {@link AppConfig#COMPRESSION_PAX_CODEC} and
+     * {@link AppConfig#COMPRESSION_PAX_SIZE}; an entry without them is stored.
+     * @param prepared the entry.
+     * @param content the content of the file, or null if it is too large to be buffered.
+     * @param codec the codec compressing the entry.
+     * @param size the size of the file.
+     * @throws IOException if the file could not be read or compressed.
+     */
+    private static void compress(final PreparedEntry prepared,
+                                 final byte[] content,
+                                 final CompressionCodec codec,
+                                 final long size) throws IOException {
+        ByteArrayOutputStream memory = null;
+        if (content != null) {
+            memory = new ByteArrayOutputStream(content.length / 2);
+            try (OutputStream compressed = codec.compress(memory, size)) {
+                compressed.write(content);
+            }
+        } else {
+            prepared.spill = Files.createTempFile(AppConfig.TMP_PREFIX, ".entry");
+            try (OutputStream compressed = codec.compress(Files.newOutputStream(prepared.spill), size);
+                 InputStream fileInputStream = Files.newInputStream(prepared.source)) {
+                FileUtils.copyExactly(fileInputStream, compressed, size, new byte[AppConfig.SIXFIVE_KB]);
+            }
+        }
+
+        long compressedSize = memory != null ? memory.size() : Files.size(prepared.spill);
+        if (compressedSize > size * (1 - AppConfig.COMPRESSION_MIN_SAVING)) {
+            LOGGER.finest("Storing " + prepared.entry.getName() + ": compressed to " + compressedSize
+                          + " of " + size + " bytes");
+            prepared.release();
+            return;
+        }
+        prepared.entry.addPaxHeader(AppConfig.COMPRESSION_PAX_CODEC, codec.getName());
+        prepared.entry.addPaxHeader(AppConfig.COMPRESSION_PAX_SIZE, Long.toString(size));
+        prepared.entry.setSize(compressedSize);
+        prepared.content = memory != null ? memory.toByteArray() : null;
+        prepared.compressed = true;
+    }
+
+    /**
+     * Returns the Unix mode of a file, or the default mode on file systems without POSIX permissions.
+     * @param attributes the attributes of the file.
+     * @return the Unix mode including the file type bits.
+     */
+    private static int mode(final BasicFileAttributes attributes) {
+        int defaultMode = attributes.isDirectory() ? TarArchiveEntry.DEFAULT_DIR_MODE
+            : TarArchiveEntry.DEFAULT_FILE_MODE;
+        if (!(attributes instanceof PosixFileAttributes)) {
+            return defaultMode;
+        }
+        int mode = defaultMode & ~FileUtils.PERMISSION_MASK;
+        for (PosixFilePermission permission : ((PosixFileAttributes) attributes).permissions()) {
+            mode |= FileUtils.POSIX_MODE_BITS[permission.ordinal()];
+        }
+        return mode;
+    }
+
+    /**
+     * Waits for a task of the worker pool.
+     * @param <T> the result type of the task.
+     * @param future the task.
+     * @return the result of the task.
+     * @throws IOException if the task failed or the thread is interrupted.
+     */
+    private static <T> T await(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while archiving");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Archiving failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * A directory or regular file found by the walk.
+     */
+    private static final class WalkedFile {
+
+        private final Path path;
+        private final String entryName;
+        private final BasicFileAttributes attributes;
+
+        /**
+         * Creates a walked file.
+         * @param path the file.
+         * @param entryName the path of the file relative to the archived directory, separated by '/'.
+         * @param attributes the attributes of the file.
+         */
+        private WalkedFile(final Path path, final String entryName, final BasicFileAttributes attributes) {
+            this.path = path;
+            this.entryName = entryName;
+            this.attributes = attributes;
+        }
+
+        /**
+         * Returns the number of bytes of the file held in memory while it is prepared.
+         * @return the buffered size.
+         */
+        private long bufferedSize() {
+            return attributes.isRegularFile() && attributes.size() <= AppConfig.COMPRESSION_ENTRY_BUFFER_LIMIT
+                ? attributes.size() : 0;
+        }
+    }
+
+    /**
+     * An entry ready to be written, with its content in memory, in a temporary file or still in the source file.
+     */
+    private static final class PreparedEntry {
+
+        private final TarArchiveEntry entry;
+        private final Path source;
+        private byte[] content;
+        private Path spill;
+        private boolean compressed;
+
+        /**
+         * Creates a prepared entry.
+         * @param entry the archive entry.
+         * @param source the file of the entry.
+         */
+        private PreparedEntry(final TarArchiveEntry entry, final Path source) {
+            this.entry = entry;
+            this.source = source;
+        }
+
+        /**
+         * Writes the entry to the archive.
+         * @param tarOut the archive.
+         * @param buffer the buffer used for copying.
+         * @throws IOException if the entry could not be written or the source file changed.
+         */
+        private void writeTo(final TarArchiveOutputStream tarOut, final byte[] buffer) throws IOException {
+            tarOut.putArchiveEntry(entry);
+            if (content != null) {
+                tarOut.write(content);
+            } else if (spill != null) {
+                Files.copy(spill, tarOut);
+            } else if (entry.isFile()) {
+                try (InputStream fileInputStream = Files.newInputStream(source)) {
+                    FileUtils.copyExactly(fileInputStream, tarOut, entry.getSize(), buffer);
+                }
+            }
+            tarOut.closeArchiveEntry();
+        }
+
+        /**
+         * Releases the buffered content and deletes the temporary file of the entry.
+         * @throws IOException if the temporary file could not be deleted.
+         */
+        private void release() throws IOException {
+            content = null;
+            if (spill != null) {
+                Files.deleteIfExists(spill);
+                spill = null;
+            }
+        }
+    }
+}
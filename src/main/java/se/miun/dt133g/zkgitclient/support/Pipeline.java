@@ -0,0 +1,485 @@
+package se.miun.dt133g.zkgitclient.support;
+
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * A chain of stream processing stages running concurrently, such as compress, encrypt and upload.
+ * <p>
+ * Every stage reads the output of the previous stage and writes the input of the next. Stages are connected
+ * by a bounded queue of pooled direct byte buffers, so a fast stage blocks instead of buffering without limit
+ * and no stage ever polls. When a stage fails, every other stage is cancelled and {@link #run()} throws the
+ * first failure. The bytes produced and the running time of every stage are recorded in {@link StageMetrics}.
+ * The buffer pools of the channels are created per run and reused for all the data of that run.
+ * @author Leif Rogell
+ */
+public final class Pipeline {
+
+    private static volatile ExecutorService EXECUTOR;
+    private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
+
+    private final int bufferSize;
+    private final int queueDepth;
+    private final List<String> names = new ArrayList<>();
+    private final List<Stage> stages = new ArrayList<>();
+    private final List<StageMetrics> metrics = new ArrayList<>();
+    private final List<Channel> channels = new ArrayList<>();
+    private final List<Future<?>> futures = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * A stage of a pipeline.
+     */
+    @FunctionalInterface
+    public interface Stage {
+
+        /**
+         * Processes the output of the previous stage into the input of the next stage.
+         * The first stage gets an empty input and the output of the last stage is discarded.
+         * @param inputStream the output of the previous stage.
+         * @param outputStream the input of the next stage.
+         * @throws Exception if the stage fails.
+         */
+        void process(InputStream inputStream, OutputStream outputStream) throws Exception;
+    }
+
+    /**
+     * Creates a pipeline with the configured buffer size and queue depth.
+     */
+    public Pipeline() {
+        this(AppConfig.PIPELINE_BUFFER_SIZE, AppConfig.PIPELINE_QUEUE_DEPTH);
+    }
+
+    /**
+     * Creates a pipeline.
+     * @param bufferSize the size of the buffers passed between stages.
+     * @param queueDepth the number of filled buffers that may wait between two stages.
+     */
+    public Pipeline(final int bufferSize, final int queueDepth) {
+        this.bufferSize = bufferSize;
+        this.queueDepth = Math.max(1, queueDepth);
+    }
+
+    /**
+     * Appends a stage to the pipeline.
+     * @param name the name of the stage used in reports.
+     * @param stage the stage.
+     * @return this pipeline.
+     */
+    public Pipeline addStage(final String name, final Stage stage) {
+        names.add(name);
+        stages.add(stage);
+        metrics.add(new StageMetrics(name));
+        return this;
+    }
+
+    /**
+     * Runs all stages and waits for them to complete.
+     * @throws IOException the first failure of a stage, or an interruption of the calling thread.
+     */
+    public void run() throws IOException {
+        synchronized (this) {
+            if (!futures.isEmpty()) {
+                throw new IllegalStateException("Pipeline has already been run");
+            }
+            for (int i = 1; i < stages.size(); i++) {
+                channels.add(new Channel(new ByteBufferPool(bufferSize, queueDepth + 2), queueDepth));
+            }
+            for (int i = 0; i < stages.size(); i++) {
+                final int index = i;
+                futures.add(getExecutor().submit(() -> runStage(index)));
+            }
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(new InterruptedIOException("Pipeline interrupted"));
+        } catch (ExecutionException | CancellationException e) {
+            fail(e.getCause() != null ? e.getCause() : e);
+        }
+
+        Throwable cause = failure.get();
+        if (cause != null) {
+            awaitStages();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+        LOGGER.fine("Pipeline completed: " + report());
+    }
+
+    /**
+     * Cancels all stages. A running {@link #run()} throws an exception once the stages have stopped.
+     */
+    public void cancel() {
+        fail(new CancellationException("Pipeline cancelled"));
+    }
+
+    /**
+     * Returns the metrics of the stages, in stage order.
+     * @return the stage metrics.
+     */
+    public List<StageMetrics> getMetrics() {
+        return Collections.unmodifiableList(metrics);
+    }
+
+    /**
+     * Returns the throughput of all stages in one line.
+     * @return the report.
+     */
+    public String report() {
+        return metrics.stream().map(StageMetrics::toString).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Runs one stage with its input and output channels. The end of the stream is only signalled to the
+     * next stage when the stage completes normally; if it fails, the channels are cancelled instead, so the
+     * next stage never mistakes truncated data for a complete stream.
+     * @param index the position of the stage.
+     */
+    private void runStage(final int index) {
+        StageMetrics stageMetrics = metrics.get(index);
+        boolean last = index == stages.size() - 1;
+        InputStream input = index == 0 ? InputStream.nullInputStream() : channels.get(index - 1).input();
+        Channel.ChannelOutput channelOutput = last ? null : channels.get(index).output();
+        String threadName = Thread.currentThread().getName();
+        Thread.currentThread().setName(threadName + "-" + names.get(index));
+
+        stageMetrics.start();
+        InputStream in = last ? stageMetrics.count(input) : input;
+        try {
+            OutputStream out = last ? OutputStream.nullOutputStream() : stageMetrics.count(channelOutput);
+            stages.get(index).process(in, out);
+            out.close();
+            if (channelOutput != null) {
+                channelOutput.complete();
+            }
+        } catch (Throwable e) {
+            if (failure.get() == null) {
+                LOGGER.severe("Stage " + names.get(index) + " failed: " + e.getMessage());
+            }
+            fail(e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOGGER.finest("Could not close stage input: " + e.getMessage());
+            }
+            stageMetrics.finish();
+            Thread.currentThread().setName(threadName);
+        }
+    }
+
+    /**
+     * Records the first failure and cancels all channels and stages.
+     * @param cause the failure.
+     */
+    private void fail(final Throwable cause) {
+        if (!failure.compareAndSet(null, cause)) {
+            return;
+        }
+        synchronized (this) {
+            channels.forEach(channel -> channel.cancel(cause));
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Waits for cancelled stages to stop so that no stage outlives the pipeline.
+     */
+    private void awaitStages() {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | CancellationException e) {
+                LOGGER.finest("Stage stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the shared pool of pipeline threads, creating it on first use.
+     * @return the executor running the stages.
+     */
+    private static ExecutorService getExecutor() {
+        if (EXECUTOR == null) {
+            synchronized (Pipeline.class) {
+                if (EXECUTOR == null) {
+                    AtomicInteger threadCount = new AtomicInteger();
+                    EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+                            Thread thread = new Thread(runnable,
+                                                       AppConfig.PIPELINE_THREAD_PREFIX
+                                                       + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                }
+            }
+        }
+        return EXECUTOR;
+    }
+
+    /**
+     * The bounded connection between two stages. The writing stage fills pooled buffers and queues them;
+     * the reading stage takes them from the queue and returns them to the pool once read.
+     */
+    private static final class Channel {
+
+        private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+        private final ByteBufferPool pool;
+        private final BlockingQueue<ByteBuffer> filled;
+        private volatile Throwable cancelled;
+        private volatile boolean readerClosed;
+
+        /**
+         * Creates a channel.
+         * @param pool the pool providing the buffers.
+         * @param queueDepth the number of filled buffers that may wait in the channel.
+         */
+        private Channel(final ByteBufferPool pool, final int queueDepth) {
+            this.pool = pool;
+            this.filled = new ArrayBlockingQueue<>(queueDepth + 1);
+        }
+
+        /**
+         * Cancels the channel; blocked and later reads and writes fail.
+         * @param cause the reason for the cancellation.
+         */
+        private void cancel(final Throwable cause) {
+            cancelled = cause;
+            filled.clear();
+            filled.offer(END);
+        }
+
+        /**
+         * Throws if the channel has been cancelled.
+         * @throws IOException if the channel has been cancelled.
+         */
+        private void checkCancelled() throws IOException {
+            Throwable cause = cancelled;
+            if (cause != null) {
+                throw new IOException("Pipeline cancelled: " + cause.getMessage(), cause);
+            }
+        }
+
+        /**
+         * Returns buffers that will never be read to the pool once the reader has closed.
+         */
+        private void drain() {
+            ByteBuffer buffer;
+            while ((buffer = filled.poll()) != null) {
+                if (buffer != END) {
+                    pool.release(buffer);
+                }
+            }
+        }
+
+        /**
+         * Returns the writing end of the channel.
+         * @return the output stream of the writing stage.
+         */
+        private ChannelOutput output() {
+            return new ChannelOutput();
+        }
+
+        /**
+         * The writing end of the channel. Closing it only flushes the written bytes; the end of the stream
+         * is signalled by {@link #complete()} once the writing stage has completed normally.
+         */
+        private final class ChannelOutput extends OutputStream {
+
+            private ByteBuffer current;
+            private boolean closed;
+
+            @Override
+            public void write(final int b) throws IOException {
+                buffer().put((byte) b);
+                sendIfFull();
+            }
+
+            @Override
+            public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+                int position = offset;
+                int remaining = length;
+                while (remaining > 0) {
+                    ByteBuffer buffer = buffer();
+                    int count = Math.min(remaining, buffer.remaining());
+                    buffer.put(bytes, position, count);
+                    position += count;
+                    remaining -= count;
+                    sendIfFull();
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (current != null && current.position() > 0) {
+                    send();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                if (cancelled == null) {
+                    flush();
+                }
+                closed = true;
+            }
+
+            /**
+             * Closes the stream and signals the end of the stream to the reading stage.
+             * @throws IOException if the channel has been cancelled.
+             */
+            private void complete() throws IOException {
+                close();
+                put(END);
+            }
+
+            private ByteBuffer buffer() throws IOException {
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+                checkCancelled();
+                if (current == null) {
+                    if (readerClosed) {
+                        drain();
+                    }
+                    current = pool.acquire();
+                }
+                return current;
+            }
+
+            private void sendIfFull() throws IOException {
+                if (!current.hasRemaining()) {
+                    send();
+                }
+            }
+
+            private void send() throws IOException {
+                current.flip();
+                ByteBuffer buffer = current;
+                current = null;
+                put(buffer);
+            }
+
+            private void put(final ByteBuffer buffer) throws IOException {
+                checkCancelled();
+                if (readerClosed) {
+                    if (buffer != END) {
+                        pool.release(buffer);
+                    }
+                    return;
+                }
+                try {
+                    filled.put(buffer);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while writing to pipeline");
+                }
+            }
+        }
+
+        /**
+         * Returns the reading end of the channel.
+         * @return the input stream of the reading stage.
+         */
+        private InputStream input() {
+            return new InputStream() {
+                private ByteBuffer current;
+                private boolean end;
+
+                @Override
+                public int read() throws IOException {
+                    ByteBuffer buffer = buffer();
+                    return buffer == null ? -1 : buffer.get() & 0xFF;
+                }
+
+                @Override
+                public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+                    if (length == 0) {
+                        return 0;
+                    }
+                    ByteBuffer buffer = buffer();
+                    if (buffer == null) {
+                        return -1;
+                    }
+                    int count = Math.min(length, buffer.remaining());
+                    buffer.get(bytes, offset, count);
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return current == null ? 0 : current.remaining();
+                }
+
+                @Override
+                public void close() {
+                    readerClosed = true;
+                    if (current != null) {
+                        pool.release(current);
+                        current = null;
+                    }
+                    drain();
+                }
+
+                private ByteBuffer buffer() throws IOException {
+                    while (current == null || !current.hasRemaining()) {
+                        if (end) {
+                            return null;
+                        }
+                        if (current != null) {
+                            pool.release(current);
+                            current = null;
+                        }
+                        ByteBuffer next;
+                        try {
+                            next = filled.take();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted while reading from pipeline");
+                        }
+                        checkCancelled();
+                        if (next == END) {
+                            end = true;
+                            return null;
+                        }
+                        current = next;
+                    }
+                    return current;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package se.miun.dt133g.zkgitclient.support;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput measurement of one stage of a transfer, such as compression, encryption or upload.
+ * A stage counts the bytes it processes between {@link #start()} and {@link #finish()} and reports
+ * its throughput in MB/s. The counters may be updated from several threads.
+ * @author Leif Rogell
+ */
+public final class StageMetrics {
+
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    private final String name;
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLong startNanos = new AtomicLong();
+    private final AtomicLong endNanos = new AtomicLong();
+
+    /**
+     * Creates the metrics of a stage.
+     * @param name the name of the stage used in reports.
+     */
+    public StageMetrics(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Marks the start of the stage. Only the first call has an effect.
+     */
+    public void start() {
+        startNanos.compareAndSet(0, System.nanoTime());
+    }
+
+    /**
+     * Marks the end of the stage. Only the first call has an effect.
+     */
+    public void finish() {
+        start();
+        endNanos.compareAndSet(0, System.nanoTime());
+    }
+
+    /**
+     * Adds processed bytes to the stage.
+     * @param count the number of bytes.
+     */
+    public void addBytes(final long count) {
+        bytes.add(count);
+    }
+
+    /**
+     * Returns the name of the stage.
+     * @return the stage name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of bytes processed by the stage.
+     * @return the number of bytes.
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Returns the time the stage has been running, up to its end if it has finished.
+     * @return the elapsed time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        long start = startNanos.get();
+        if (start == 0) {
+            return 0;
+        }
+        long end = endNanos.get();
+        return (end == 0 ? System.nanoTime() : end) - start;
+    }
+
+    /**
+     * Returns the throughput of the stage.
+     * @return the throughput in MB/s.
+     */
+    public double getMegabytesPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed <= 0 ? 0 : getBytes() / BYTES_PER_MB / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Wraps an input stream so that the bytes read from it are counted by this stage.
+     * @param inputStream the stream to count.
+     * @return the counting stream.
+     */
+    public InputStream count(final InputStream inputStream) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                start();
+                int b = super.read();
+                if (b != -1) {
+                    addBytes(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                start();
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    addBytes(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Wraps an output stream so that the bytes written to it are counted by this stage.
+     * @param outputStream the stream to count.
+     * @return the counting stream.
+     */
+    public OutputStream count(final OutputStream outputStream) {
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(final int b) throws IOException {
+                start();
+                out.write(b);
+                addBytes(1);
+            }
+
+            @Override
+            public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+                start();
+                out.write(buffer, offset, length);
+                addBytes(length);
+            }
+        };
+    }
+
+    /**
+     * Returns a report of the stage, e.g. "encrypt: 512.0 MB in 2.10 s (243.8 MB/s)".
+     * @return the report.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s: %.1f MB in %.2f s (%.1f MB/s)",
+                             name,
+                             getBytes() / BYTES_PER_MB,
+                             getElapsedNanos() / (double) TimeUnit.SECONDS.toNanos(1),
+                             getMegabytesPerSecond());
+    }
+}
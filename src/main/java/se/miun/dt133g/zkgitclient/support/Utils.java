@@ -40,13 +40,16 @@ public final class Utils {
      }
 
     /**
-     * Converts a map to a string representation.
+     * Converts a map to a string representation in the command response format. Commas and backslashes
+     * in values are escaped with a backslash, so every value reads back as written.
      * @param map the map to convert.
      * @return a string representation of the map.
      */
     public String mapToString(final Map<String, String> map) {
         return map.entrySet().stream()
-            .map(entry -> entry.getKey() + "=" + entry.getValue())
+            .map(entry -> entry.getKey() + "=" + String.valueOf(entry.getValue())
+                 .replace("\\", "\\\\")
+                 .replace(AppConfig.COMMA_SEPARATOR, "\\" + AppConfig.COMMA_SEPARATOR))
             .collect(Collectors.joining(", ", AppConfig.FORWARD_CURLY_BRACKET, AppConfig.BACKWARD_CURLY_BRACKET));
     }
 
@@ -104,18 +107,18 @@ public final class Utils {
     }
 
     /**
-     * Converts a string representation of an integer array (e.g., "[1;2;3]") into a byte array.
+     * Converts a string representation of an integer array (e.g., "[1;2;3]" or "[1,2,3]") into a byte array.
      * @param ivArray the string representation of the integer array.
      * @return the resulting byte array.
      * @throws NumberFormatException if the string cannot be parsed as integers.
      */
     public byte[] ivArrayToByteArray(final String ivArray) throws NumberFormatException {
         String input = ivArray.replaceAll("[\\[\\] ]", "");
-        String[] byteStrings = input.split(";");
+        String[] byteStrings = input.split("[;,]");
         byte[] byteArray = new byte[byteStrings.length];
 
         for (int i = 0; i < byteStrings.length; i++) {
-            byteArray[i] = Byte.parseByte(byteStrings[i]);
+            byteArray[i] = (byte) Integer.parseInt(byteStrings[i]);
         }
 
         return byteArray;
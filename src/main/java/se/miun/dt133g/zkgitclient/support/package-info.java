@@ -6,6 +6,7 @@
  * <p>The classes in this package assist with tasks like:</p>
  * <ul>
  *   <li>File compression and decompression (e.g., using ZIP and GZIP formats)</li>
+ *   <li>Concurrent stream pipelines connected by pooled direct buffers</li>
  *   <li>Temporary file management for encrypted and regular files</li>
  *   <li>Reading and writing strings to files</li>
  *   <li>Application configuration constants</li>
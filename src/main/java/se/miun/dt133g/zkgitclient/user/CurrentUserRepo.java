@@ -2,39 +2,66 @@ package se.miun.dt133g.zkgitclient.user;
 
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
- * Singleton class representing the current user's repository information,
- * including repository details and associated encryption data.
+ * Repository context of a Git request, including repository details and associated encryption data.
+ * Each Git helper connection works on its own instance, so that requests for different repositories
+ * can be processed in parallel. The shared instance returned by {@link #getInstance()} is used by
+ * menu-driven commands that are not bound to a helper connection.
  * @author Leif Rogell
  */
 public final class CurrentUserRepo {
 
-    private static CurrentUserRepo INSTANCE;
+    private static volatile CurrentUserRepo INSTANCE;
     private final Logger LOGGER = ZkGitLogger.getLogger(this.getClass());
     private String encFileName;
     private String repoName;
     private String repoPath;
     private String repoSignature;
     private String iv;
+    private String compressionCodec;
+    private Consumer<String> progressListener;
 
     /**
-     * Private constructor to prevent instantiation.
+     * Creates an empty repository context for a single Git connection or request.
      */
-    private CurrentUserRepo() { }
+    public CurrentUserRepo() { }
 
     /**
-     * Returns the singleton instance of CurrentUserRepo.
-     * @return the CurrentUserRepo instance.
+     * Returns the shared instance of CurrentUserRepo used outside of Git connections.
+     * @return the shared CurrentUserRepo instance.
      */
     public static CurrentUserRepo getInstance() {
         if (INSTANCE == null) {
-            INSTANCE = new CurrentUserRepo();
+            synchronized (CurrentUserRepo.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new CurrentUserRepo();
+                }
+            }
         }
         return INSTANCE;
     }
 
+    /**
+     * Sets the listener informed about the progress of the request.
+     * @param progressListener receives a short description of every step, or null to drop progress.
+     */
+    public void setProgressListener(final Consumer<String> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Reports the progress of the request to the listener, if there is one.
+     * @param step a short description of the step starting.
+     */
+    public void reportProgress(final String step) {
+        if (progressListener != null) {
+            progressListener.accept(step);
+        }
+    }
+
     /**
      * Sets the initialization vector (IV) for the current repository.
      * @param iv the initialization vector.
@@ -44,6 +71,15 @@ public final class CurrentUserRepo {
         this.iv = iv;
     }
 
+    /**
+     * Sets the compression codec selected for the current repository.
+     * @param compressionCodec the codec name, or null to use the configured default.
+     */
+    public void setCompressionCodec(final String compressionCodec) {
+        LOGGER.finest("currentRepo (CompressionCodec): " + compressionCodec);
+        this.compressionCodec = compressionCodec;
+    }
+
     /**
      * Sets the path to the current repository.
      * @param repoPath the path to the repository.
@@ -119,4 +155,12 @@ public final class CurrentUserRepo {
     public String getEncFileName() {
         return encFileName;
     }
+
+    /**
+     * Gets the compression codec selected for the current repository.
+     * @return the codec name, or null if none has been selected.
+     */
+    public String getCompressionCodec() {
+        return compressionCodec;
+    }
 }
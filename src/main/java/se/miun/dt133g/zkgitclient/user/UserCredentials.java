@@ -1,5 +1,8 @@
 package se.miun.dt133g.zkgitclient.user;
 
+import se.miun.dt133g.zkgitclient.crypto.EncryptionFactory;
+import se.miun.dt133g.zkgitclient.crypto.RequestSigner;
+import se.miun.dt133g.zkgitclient.crypto.RsaKeyCache;
 import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
 import se.miun.dt133g.zkgitclient.support.AppConfig;
 
@@ -225,6 +228,9 @@ public final class UserCredentials {
         clearPbkdf2Hash();
         clearAesKey();
         clearAesKeyJson();
+        RsaKeyCache.getInstance().clear();
+        RequestSigner.getInstance().clear();
+        EncryptionFactory.clearThreadLocalEncryptionHandlers();
     }
 
     /**
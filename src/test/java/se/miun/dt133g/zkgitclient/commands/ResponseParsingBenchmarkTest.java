@@ -0,0 +1,103 @@
+package se.miun.dt133g.zkgitclient.commands;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares the single-pass {@link Response} tokenizer with the regular expression parser it replaced, on
+ * responses both read the same way. Only runs with {@code -Dzkgit.benchmark=true}.
+ * @author Leif Rogell
+ */
+@EnabledIfSystemProperty(named = "zkgit.benchmark", matches = "true")
+class ResponseParsingBenchmarkTest {
+
+    private static final int WARMUP = Integer.getInteger("zkgit.benchmark.warmup", 200000);
+    private static final int ITERATIONS = Integer.getInteger("zkgit.benchmark.iterations", 1000000);
+    private static final String REGEX_COMMAND_RESPONSE = "^\\s*(\\w+)\\s*=\\s*(.*)\\s*$";
+    private static final List<String> RESPONSES =
+        List.of("{SUCCESS=}",
+                "{COMMAND=VALIDATE_TOTP, SUCCESS=Account number and username valid}",
+                "{ERROR=Connection failure}",
+                "{commithash=3f2a9c41d0b7e65a8c9d1e2f3a4b5c6d7e8f9a0b, iv=q83vEjRWeJCrze8SNFZ4kA==, "
+                + "SUCCESS=, COMMAND=REQUEST, REPO_NAME_HASH=9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822c"
+                + "d15d6c15b0f00a08}");
+
+    @Test
+    void compareParsers() {
+        for (String response : RESPONSES) {
+            assertEquals(parseWithRegex(response), Response.parse(response).asMap());
+        }
+        double regex = measure(true);
+        double tokenizer = measure(false);
+        Logger.getAnonymousLogger().info(String.format("Response parsing over %d responses: regex %.0f ns, "
+                                                       + "tokenizer %.0f ns, %.1fx faster",
+                                                       ITERATIONS, regex, tokenizer, regex / tokenizer));
+        assertTrue(regex > 0 && tokenizer > 0);
+    }
+
+    /**
+     * Parses the sample responses in turn.
+     * @param regex whether to use the regular expression parser instead of the tokenizer.
+     * @return the mean time per response in nanoseconds, after the warmup.
+     */
+    private static double measure(final boolean regex) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += parse(regex, RESPONSES.get(i % RESPONSES.size()));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += parse(regex, RESPONSES.get(i % RESPONSES.size()));
+        }
+        double nanos = (System.nanoTime() - start) / (double) ITERATIONS;
+        assertTrue(sink > 0);
+        return nanos;
+    }
+
+    /**
+     * Parses a response with one of the parsers.
+     * @param regex whether to use the regular expression parser instead of the tokenizer.
+     * @param response the response.
+     * @return the number of pairs read.
+     */
+    private static int parse(final boolean regex, final String response) {
+        return regex ? parseWithRegex(response).size() : Response.parse(response).asMap().size();
+    }
+
+    /**
+     * The parser of {@code BaseCommand.extractResponseToMap} before {@link Response} replaced it.
+     * @param response the response.
+     * @return the pairs of the response.
+     */
+    private static Map<String, String> parseWithRegex(final String response) {
+        Pattern pattern = Pattern.compile(REGEX_COMMAND_RESPONSE);
+
+        return Stream.of(response)
+            .map(r -> r.startsWith("{") && r.endsWith("}")
+                 ? r.substring(1, r.length() - 1)
+                 : r)
+            .flatMap(r -> Stream.of(r.split(",")))
+            .map(String::trim)
+            .map(pair -> {
+                    Matcher matcher = pattern.matcher(pair);
+                    if (matcher.matches()) {
+                        return Map.entry(matcher.group(1), matcher.group(2));
+                    } else {
+                        return null;
+                    }
+                })
+            .filter(entry -> entry != null)
+            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+}
@@ -0,0 +1,100 @@
+package se.miun.dt133g.zkgitclient.commands;
+
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+import se.miun.dt133g.zkgitclient.support.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Tests the single-pass tokenizer of {@link Response}.
+ * @author Leif Rogell
+ */
+class ResponseTest {
+
+    @Test
+    void emptyInputHasNoPairs() {
+        assertTrue(Response.parse(null).asMap().isEmpty());
+        assertTrue(Response.parse("").asMap().isEmpty());
+        assertTrue(Response.parse("{}").asMap().isEmpty());
+        assertTrue(Response.parse("{ }").asMap().isEmpty());
+    }
+
+    @Test
+    void textWithoutPairsIsSkipped() {
+        assertTrue(Response.parse("not a response").asMap().isEmpty());
+        assertEquals(Map.of("KEY", "value"), Response.parse("noise, KEY=value").asMap());
+    }
+
+    @Test
+    void readsPairsInOrder() {
+        Response response = Response.parse("{SUCCESS=done, COMMAND=NEXT, ERROR=none}");
+        assertEquals(List.of("SUCCESS", "COMMAND", "ERROR"), List.copyOf(response.asMap().keySet()));
+        assertTrue(response.isSuccess());
+        assertEquals(Optional.of("NEXT"), response.nextCommand());
+        assertEquals(Optional.of("none"), response.error());
+    }
+
+    @Test
+    void emptyValueIsKept() {
+        Response response = Response.parse("{SUCCESS=}");
+        assertTrue(response.isSuccess());
+        assertEquals("", response.get(AppConfig.COMMAND_SUCCESS));
+    }
+
+    @Test
+    void trailingSeparatorEndsTheLastPair() {
+        assertEquals(Map.of("SUCCESS", ""), Response.parse("{SUCCESS=,}").asMap());
+        assertEquals(Map.of("SUCCESS", "done"), Response.parse("{SUCCESS=done, }").asMap());
+        assertEquals(Map.of("ERROR", "failed"), Response.parse("ERROR=failed,").asMap());
+    }
+
+    @Test
+    void commaNotFollowedByKeyIsPartOfTheValue() {
+        assertEquals("a, b", Response.parse("{LIST=a, b}").get("LIST"));
+        assertEquals("1,2", Response.parse("{LIST=1,2, NEXT=3}").get("LIST"));
+    }
+
+    @Test
+    void escapedCommaIsPartOfTheValue() {
+        Response response = Response.parse("{A=x\\, B=y, C=z}");
+        assertEquals("x, B=y", response.get("A"));
+        assertEquals("z", response.get("C"));
+        assertFalse(response.asMap().containsKey("B"));
+    }
+
+    @Test
+    void escapedBackslashDoesNotEscapeTheSeparator() {
+        Response response = Response.parse("{A=x\\\\, B=y}");
+        assertEquals("x\\", response.get("A"));
+        assertEquals("y", response.get("B"));
+    }
+
+    @Test
+    void backslashBeforeOtherCharactersIsKept() {
+        assertEquals("C:\\tmp", Response.parse("{PATH=C:\\tmp}").get("PATH"));
+    }
+
+    @Test
+    void lastValueOfRepeatedKeyWins() {
+        assertEquals("2", Response.parse("{A=1, A=2}").get("A"));
+    }
+
+    @Test
+    void readsBackWhatUtilsWrites() {
+        Map<String, String> written = new LinkedHashMap<>();
+        written.put("A", "x, B=y");
+        written.put("B", "ends with \\");
+        written.put("C", "\\,");
+        written.put("D", "");
+        assertEquals(written, Response.parse(Utils.getInstance().mapToString(written)).asMap());
+    }
+}
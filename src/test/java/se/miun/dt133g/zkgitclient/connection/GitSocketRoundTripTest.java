@@ -0,0 +1,109 @@
+package se.miun.dt133g.zkgitclient.connection;
+
+import se.miun.dt133g.zkgitclient.logger.ZkGitLogger;
+import se.miun.dt133g.zkgitclient.support.AppConfig;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures the per-request round trip of the Git helper socket over loopback TCP and over the Unix
+ * domain socket. Every request is a command line the server answers without contacting the API, so the
+ * difference between the two is the cost of the transport. The benchmark starts the Git server on
+ * {@link AppConfig#GIT_PORT} and only runs with {@code -Dzkgit.benchmark=true}.
+ * @author Leif Rogell
+ */
+@EnabledIfSystemProperty(named = "zkgit.benchmark", matches = "true")
+class GitSocketRoundTripTest {
+
+    private static final int WARMUP = Integer.getInteger("zkgit.benchmark.warmup", 5000);
+    private static final int REQUESTS = Integer.getInteger("zkgit.benchmark.requests", 20000);
+    private static final byte[] REQUEST = "NOPE x\n".getBytes(StandardCharsets.UTF_8);
+
+    private static Handler consoleHandler;
+    private static Level consoleLevel;
+
+    @BeforeAll
+    static void startServer() throws InterruptedException {
+        Handler[] handlers = ZkGitLogger.getLogger(GitSocketRoundTripTest.class).getHandlers();
+        consoleHandler = handlers[0];
+        consoleLevel = consoleHandler.getLevel();
+        consoleHandler.setLevel(Level.OFF);
+        assertNotNull(GitSocket.INSTANCE);
+        for (int i = 0; i < 50 && !Files.exists(Paths.get(AppConfig.GIT_UNIX_SOCKET_PATH)); i++) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+    }
+
+    @AfterAll
+    static void restoreLogging() {
+        consoleHandler.setLevel(consoleLevel);
+    }
+
+    @Test
+    void compareRoundTrips() throws IOException {
+        double tcp = measure(new InetSocketAddress(InetAddress.getLoopbackAddress(), AppConfig.GIT_PORT));
+        double unix = measure(UnixDomainSocketAddress.of(AppConfig.GIT_UNIX_SOCKET_PATH));
+        Logger.getAnonymousLogger().info(String.format("Git socket round trip over %d requests: TCP %.1f us, "
+                                                       + "Unix %.1f us, difference %.1f us (%.0f%%)",
+                                                       REQUESTS, tcp, unix, tcp - unix,
+                                                       (tcp - unix) / tcp * 100));
+        assertTrue(tcp > 0 && unix > 0);
+    }
+
+    /**
+     * Sends requests one at a time over one connection and waits for every response.
+     * @param address the address of the listener.
+     * @return the mean round trip in microseconds, after the warmup requests.
+     * @throws IOException if the connection fails.
+     */
+    private static double measure(final SocketAddress address) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            ByteBuffer response = ByteBuffer.allocate(AppConfig.FOUR_KB);
+            for (int i = 0; i < WARMUP; i++) {
+                roundTrip(channel, response);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < REQUESTS; i++) {
+                roundTrip(channel, response);
+            }
+            return (System.nanoTime() - start) / (double) REQUESTS / TimeUnit.MICROSECONDS.toNanos(1);
+        }
+    }
+
+    /**
+     * Sends one request and reads its response line.
+     * @param channel the connection.
+     * @param response the buffer to read the response into.
+     * @throws IOException if the connection fails or is closed by the server.
+     */
+    private static void roundTrip(final SocketChannel channel, final ByteBuffer response) throws IOException {
+        channel.write(ByteBuffer.wrap(REQUEST));
+        response.clear();
+        while (response.position() == 0 || response.get(response.position() - 1) != '\n') {
+            if (channel.read(response) == -1) {
+                throw new IOException("Connection closed by the server");
+            }
+        }
+    }
+}